@@ -0,0 +1,146 @@
+package info.marcobrandizi.rdfutils.jena;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.sparql.core.QuerySolutionBase;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.util.ModelUtils;
+
+/**
+ * A {@link org.apache.jena.query.QuerySolution} based on an array of nodes, used by {@link RowSnapshotMode#ARRAY}.
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>18 Oct 2026</dd></dl>
+ *
+ */
+class ArrayQuerySolution extends QuerySolutionBase
+{
+	/**
+	 * What's common to all the rows of a query: the variables, their positions and the model for the RDF values.
+	 */
+	static class Layout
+	{
+		private final Var[] vars;
+		private final Map<String, Integer> varIndexes;
+		private final Model model;
+
+		Layout ( List<String> resultVars, Model model )
+		{
+			this.vars = new Var [ resultVars.size () ];
+			this.varIndexes = new HashMap<> ( resultVars.size () * 2 );
+			for ( int i = 0; i < vars.length; i++ )
+			{
+				String varName = resultVars.get ( i );
+				vars [ i ] = Var.alloc ( varName );
+				varIndexes.put ( varName, i );
+			}
+			this.model = model;
+		}
+
+		ArrayQuerySolution snapshot ( Binding binding )
+		{
+			Node[] values = new Node [ vars.length ];
+			for ( int i = 0; i < vars.length; i++ )
+				values [ i ] = binding.get ( vars [ i ] );
+			return new ArrayQuerySolution ( this, values );
+		}
+	}
+
+	private final Layout layout;
+	private final Node[] values;
+
+	private ArrayQuerySolution ( Layout layout, Node[] values )
+	{
+		this.layout = layout;
+		this.values = values;
+	}
+
+	@Override
+	protected RDFNode _get ( String varName )
+	{
+		Node node = getNode ( varName );
+		return node == null ? null : ModelUtils.convertGraphNodeToRDFNode ( node, layout.model );
+	}
+
+	@Override
+	protected boolean _contains ( String varName )
+	{
+		return getNode ( varName ) != null;
+	}
+
+	private Node getNode ( String varName )
+	{
+		Integer idx = layout.varIndexes.get ( varName );
+		return idx == null ? null : values [ idx ];
+	}
+
+	/**
+	 * The bound variables only, as in the other {@link org.apache.jena.query.QuerySolution} implementations.
+	 */
+	@Override
+	public Iterator<String> varNames ()
+	{
+		return new Iterator<> ()
+		{
+			private int i = nextBound ( 0 );
+
+			@Override
+			public boolean hasNext () {
+				return i < values.length;
+			}
+
+			@Override
+			public String next ()
+			{
+				if ( !hasNext () ) throw new NoSuchElementException ( "No more variables in the query solution" );
+				String result = layout.vars [ i ].getVarName ();
+				i = nextBound ( i + 1 );
+				return result;
+			}
+		};
+	}
+
+	private int nextBound ( int from )
+	{
+		while ( from < values.length && values [ from ] == null ) from++;
+		return from;
+	}
+
+	/**
+	 * A rough estimate of the memory taken by this row, used by {@link QueryResultCache}.
+	 */
+	long estimateBytes ()
+	{
+		long bytes = 32 + 16 + 8L * values.length;
+		for ( Node value: values )
+		{
+			if ( value == null ) continue;
+			if ( value.isLiteral () )
+				bytes += 64 + 2L * value.getLiteralLexicalForm ().length () + 2L * value.getLiteralLanguage ().length ();
+			else
+				bytes += 48 + 2L * value.toString ().length ();
+		}
+		return bytes;
+	}
+
+	@Override
+	public String toString ()
+	{
+		StringBuilder sb = new StringBuilder ( "{" );
+		for ( int i = 0; i < values.length; i++ )
+		{
+			if ( values [ i ] == null ) continue;
+			if ( sb.length () > 1 ) sb.append ( ", " );
+			sb.append ( '?' ).append ( layout.vars [ i ].getVarName () ).append ( " = " ).append ( values [ i ] );
+		}
+		return sb.append ( '}' ).toString ();
+	}
+}
@@ -0,0 +1,57 @@
+package info.marcobrandizi.rdfutils.jena;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.jena.query.Dataset;
+import org.apache.jena.sparql.core.DatasetGraph;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * <p>Keeps a write generation for each {@link Dataset}, ie, a counter that is incremented every time some data are
+ * written into the dataset.</p>
+ *
+ * <p>This is used by the {@link QueryResultCache} of a {@link TDBEndPointHelper}, which is invalidated when
+ * the generation of its dataset changes. The writers in this library (eg,
+ * {@link info.marcobrandizi.rdfutils.jena.elt.TDBLoadingHandler TDBLoadingHandler}) call {@link #bump(Dataset)} after
+ * every commit, if you write a dataset by other means, you should do the same.</p>
+ *
+ * <p>Datasets are identified by their underlying {@link DatasetGraph}, so that different {@link Dataset} wrappers of the
+ * same TDB are recognised as the same dataset. The registry doesn't prevent the datasets from being garbage-collected.</p>
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>18 Oct 2026</dd></dl>
+ *
+ */
+public class DatasetWriteGenerations
+{
+	private static final Cache<DatasetGraph, AtomicLong> generations = CacheBuilder.newBuilder ().weakKeys ().build ();
+
+	private DatasetWriteGenerations () {}
+
+	/**
+	 * The current write generation of the dataset, 0 if it was never written by means of the writers that
+	 * call {@link #bump(Dataset)}.
+	 */
+	public static long get ( Dataset dataSet )
+	{
+		AtomicLong generation = generations.getIfPresent ( dataSet.asDatasetGraph () );
+		return generation == null ? 0 : generation.get ();
+	}
+
+	/**
+	 * Signals that the dataset was written, returning its new generation.
+	 */
+	public static long bump ( Dataset dataSet )
+	{
+		try {
+			return generations.get ( dataSet.asDatasetGraph (), () -> new AtomicLong ( 0 ) ).incrementAndGet ();
+		}
+		catch ( ExecutionException ex ) {
+			// Can't really happen with our initialiser
+			throw new IllegalStateException ( "Error while updating a dataset write generation: " + ex.getMessage (), ex );
+		}
+	}
+}
@@ -0,0 +1,327 @@
+package info.marcobrandizi.rdfutils.jena;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QuerySolutionMap;
+import org.apache.jena.rdf.model.RDFNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.machinezoo.noexception.throwing.ThrowingConsumer;
+
+/**
+ * <p>A persistent cache of query results, stored on the local disk, which can be attached to a
+ * {@link SparqlEndPointHelper} (see {@link SparqlEndPointHelper#setDiskResultCache(DiskQueryResultCache)}), so that
+ * the results of expensive queries survive JVM restarts.</p>
+ *
+ * <p>The results are cached for {@link SparqlEndPointHelper#processSelect(String, Query, java.util.function.Consumer, QuerySolutionMap) processSelect()}
+ * and {@link SparqlEndPointHelper#processConstruct(Query, java.util.function.Consumer, org.apache.jena.rdf.model.Model, QuerySolutionMap) processConstruct()}
+ * (and hence, {@code construct()}), using the RDF Thrift binary format. Every result is a file, named after a hash of
+ * the query, its parameters and the {@link SparqlEndPointHelper#getDatasetFingerprint() fingerprint} of the data the
+ * helper queries, so that the results are ignored when the data change. If the helper can't tell a fingerprint, its
+ * results aren't cached.</p>
+ *
+ * <p>The cached results are read back in a streaming fashion, that is, the SELECT rows are passed to the action as they're
+ * read from the file.</p>
+ *
+ * <p>The total size of the cache is bounded by {@link #getMaxBytes()}, when this is exceeded, the least recently used
+ * results are deleted. The file modification times are used to track the usage, so the cache directory should not
+ * be touched by other processes, except other instances of this cache.</p>
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>18 Oct 2026</dd></dl>
+ *
+ */
+public class DiskQueryResultCache
+{
+	private static final String RESULT_EXT = ".thrift";
+
+	private final Path cacheDir;
+	private final long maxBytes;
+
+	private final LongAdder hits = new LongAdder ();
+	private final LongAdder misses = new LongAdder ();
+	private final LongAdder evictions = new LongAdder ();
+
+	private Logger log = LoggerFactory.getLogger ( this.getClass () );
+
+	/**
+	 * @param cacheDir where the results are stored. It's created if it doesn't exist.
+	 * @param maxBytes the max size of the cached results.
+	 */
+	public DiskQueryResultCache ( Path cacheDir, long maxBytes )
+	{
+		if ( maxBytes < 1 ) throw new IllegalArgumentException ( "Can't set the disk query cache size to " + maxBytes );
+		try {
+			this.cacheDir = Files.createDirectories ( cacheDir );
+		}
+		catch ( IOException ex ) {
+			throw new UncheckedIOException ( String.format (
+				"Error while creating the disk query cache directory '%s': %s", cacheDir, ex.getMessage () ),
+				ex
+			);
+		}
+		this.maxBytes = maxBytes;
+	}
+
+
+	/**
+	 * The cache key for a query result. Returns null if the fingerprint is null, ie, the result can't be cached.
+	 */
+	String getKey ( String operation, Query query, QuerySolutionMap params, String datasetFingerprint )
+	{
+		if ( datasetFingerprint == null ) return null;
+
+		StringBuilder sb = new StringBuilder ( operation ).append ( '\n' )
+			.append ( query.serialize () ).append ( '\n' );
+		if ( params != null )
+		{
+			// Sorted, so that the key doesn't depend on the parameter order
+			TreeMap<String, String> sortedParams = new TreeMap<> ();
+			for ( Iterator<String> vars = params.varNames (); vars.hasNext (); )
+			{
+				String var = vars.next ();
+				RDFNode value = params.get ( var );
+				if ( value != null ) sortedParams.put ( var, value.asNode ().toString () );
+			}
+			sortedParams.forEach ( ( var, value ) -> sb.append ( var ).append ( '=' ).append ( value ).append ( '\n' ) );
+		}
+		sb.append ( datasetFingerprint );
+
+		return DigestUtils.sha256Hex ( sb.toString () );
+	}
+
+	/**
+	 * The cached result for the key, already opened, or null if there isn't any. The result is marked as used.
+	 * 
+	 * <p>The result is opened straight away, so that it can be read even if it's evicted by another thread in
+	 * the meantime.</p>
+	 */
+	InputStream get ( String key )
+	{
+		Path resultPath = cacheDir.resolve ( key + RESULT_EXT );
+		InputStream in;
+		try {
+			in = Files.newInputStream ( resultPath );
+		}
+		catch ( NoSuchFileException ex ) {
+			misses.increment ();
+			return null;
+		}
+		catch ( IOException ex ) {
+			throw new UncheckedIOException ( String.format (
+				"Error while accessing the disk query cache file '%s': %s", resultPath, ex.getMessage () ),
+				ex
+			);
+		}
+		
+		hits.increment ();
+		try {
+			Files.setLastModifiedTime ( resultPath, FileTime.fromMillis ( System.currentTimeMillis () ) );
+		}
+		catch ( NoSuchFileException ex ) {
+			// Evicted after we opened it, we can still read it
+		}
+		catch ( IOException ex ) {
+			log.warn ( "Error while marking the disk query cache file '{}' as used: {}", resultPath, ex.getMessage () );
+		}
+		return new BufferedInputStream ( in, 1 << 16 );
+	}
+
+	/**
+	 * Stores a new result, which the writer writes into an output stream. The result is written into a temporary
+	 * file first, which is moved to its final place at the end, so that other readers never see incomplete results.
+	 *
+	 * @return the new result, opened for reading. As for {@link #get(String)}, this is opened before any other 
+	 * thread can evict it. 
+	 */
+	InputStream put ( String key, ThrowingConsumer<OutputStream> writer )
+	{
+		Path resultPath = cacheDir.resolve ( key + RESULT_EXT );
+		Path tmpPath = null;
+		InputStream in;
+		try
+		{
+			tmpPath = Files.createTempFile ( cacheDir, key, ".tmp" );
+			try ( OutputStream out = new BufferedOutputStream ( Files.newOutputStream ( tmpPath ), 1 << 16 ) ) {
+				writer.accept ( out );
+			}
+			// Synchronised with evict(), so that the result can't be deleted before we open it 
+			synchronized ( this ) 
+			{
+				Files.move ( tmpPath, resultPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+				tmpPath = null;
+				in = Files.newInputStream ( resultPath );
+			}
+		}
+		catch ( IOException ex ) {
+			throw new UncheckedIOException ( String.format (
+				"Error while writing the disk query cache file '%s': %s", resultPath, ex.getMessage () ),
+				ex
+			);
+		}
+		catch ( RuntimeException ex ) {
+			throw ex;
+		}
+		catch ( Exception ex ) {
+			throw new RuntimeException ( String.format (
+				"Error while writing the disk query cache file '%s': %s", resultPath, ex.getMessage () ),
+				ex
+			);
+		}
+		finally {
+			if ( tmpPath != null ) deleteQuietly ( tmpPath );
+		}
+
+		evict ( resultPath );
+		return new BufferedInputStream ( in, 1 << 16 );
+	}
+
+	/**
+	 * Passes a result coming from {@link #get(String)} or {@link #put(String, ThrowingConsumer)} to a reader, 
+	 * closing it at the end. I/O errors are re-thrown as unchecked exceptions.
+	 */
+	<T> T read ( InputStream resultIn, Function<InputStream, T> reader )
+	{
+		try ( InputStream in = resultIn ) {
+			return reader.apply ( in );
+		}
+		catch ( IOException ex ) {
+			throw new UncheckedIOException ( String.format (
+				"Error while reading a disk query cache result from '%s': %s", cacheDir, ex.getMessage () ),
+				ex
+			);
+		}
+	}
+
+	/**
+	 * Deletes the least recently used results, until the cache size is within {@link #getMaxBytes()}. The
+	 * result that was just written is kept in any case.
+	 */
+	private synchronized void evict ( Path newResultPath )
+	{
+		record CachedResult ( Path path, long size, long lastUsed ) {}
+
+		List<CachedResult> results = new ArrayList<> ();
+		long totalSize = 0;
+		try ( Stream<Path> files = Files.list ( cacheDir ) )
+		{
+			for ( Iterator<Path> itr = files.iterator (); itr.hasNext (); )
+			{
+				Path path = itr.next ();
+				if ( !path.getFileName ().toString ().endsWith ( RESULT_EXT ) ) continue;
+				try {
+					CachedResult result = new CachedResult (
+						path, Files.size ( path ), Files.getLastModifiedTime ( path ).toMillis ()
+					);
+					results.add ( result );
+					totalSize += result.size ();
+				}
+				catch ( NoSuchFileException ex ) {
+					// Evicted by someone else in the meantime
+				}
+			}
+		}
+		catch ( IOException ex ) {
+			log.warn ( "Error while checking the disk query cache size: {}", ex.getMessage () );
+			return;
+		}
+
+		if ( totalSize <= maxBytes ) return;
+
+		results.sort ( Comparator.comparingLong ( CachedResult::lastUsed ) );
+		for ( CachedResult result: results )
+		{
+			if ( totalSize <= maxBytes ) break;
+			if ( result.path ().equals ( newResultPath ) ) continue;
+			if ( !deleteQuietly ( result.path () ) ) continue;
+			totalSize -= result.size ();
+			evictions.increment ();
+		}
+	}
+
+	private boolean deleteQuietly ( Path path )
+	{
+		try {
+			return Files.deleteIfExists ( path );
+		}
+		catch ( IOException ex ) {
+			log.warn ( "Error while deleting the disk query cache file '{}': {}", path, ex.getMessage () );
+			return false;
+		}
+	}
+
+	/**
+	 * Deletes all the cached results.
+	 */
+	public synchronized void clear ()
+	{
+		try ( Stream<Path> files = Files.list ( cacheDir ) ) {
+			files.filter ( p -> p.getFileName ().toString ().endsWith ( RESULT_EXT ) ).forEach ( this::deleteQuietly );
+		}
+		catch ( IOException ex ) {
+			throw new UncheckedIOException ( String.format (
+				"Error while clearing the disk query cache at '%s': %s", cacheDir, ex.getMessage () ),
+				ex
+			);
+		}
+	}
+
+
+	public Path getCacheDir ()
+	{
+		return cacheDir;
+	}
+
+	public long getMaxBytes ()
+	{
+		return maxBytes;
+	}
+
+	public long getHits ()
+	{
+		return hits.sum ();
+	}
+
+	public long getMisses ()
+	{
+		return misses.sum ();
+	}
+
+	/**
+	 * The results deleted to keep the cache within its max size.
+	 */
+	public long getEvictions ()
+	{
+		return evictions.sum ();
+	}
+
+	@Override
+	public String toString ()
+	{
+		return String.format (
+			"DiskQueryResultCache { dir: '%s', max bytes: %d, hits: %d, misses: %d, evictions: %d }",
+			cacheDir, maxBytes, getHits (), getMisses (), getEvictions ()
+		);
+	}
+}
@@ -8,6 +8,8 @@ import org.apache.jena.query.QueryExecutionFactory;
 import org.apache.jena.query.QuerySolutionMap;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
 
 /**
  * A {@link SparqlEndPointHelper} that is based on the plain {@link Model Jena Model}.
@@ -43,6 +45,12 @@ public class ModelEndPointHelper extends SparqlEndPointHelper
 			.build ();
 	}
 
+	@Override
+	protected DatasetGraph getLocalDatasetGraph ()
+	{
+		return DatasetGraphFactory.wrap ( model.getGraph () );
+	}
+
 	public Model getModel ()
 	{
 		return model;
@@ -0,0 +1,266 @@
+package info.marcobrandizi.rdfutils.jena;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QuerySolutionMap;
+import org.apache.jena.rdf.model.RDFNode;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+/**
+ * <p>An in-memory cache of query results, which can be attached to a {@link SparqlEndPointHelper} (see
+ * {@link SparqlEndPointHelper#setResultCache(QueryResultCache)}), to serve repeated queries without going back to the
+ * triple store.</p>
+ *
+ * <p>The results are cached for {@link SparqlEndPointHelper#processSelect(String, Query, java.util.function.Consumer, QuerySolutionMap) processSelect()}
+ * and {@link SparqlEndPointHelper#ask(Query, QuerySolutionMap) ask()}, using the query and its parameters as key.
+ * SELECT results with more than {@link #getMaxCachedRows()} rows aren't cached, since this is meant for lookup
+ * queries and not for big extractions.</p>
+ *
+ * <p>The cache is bounded either by the number of entries or by an estimate of their memory, and the entries can
+ * expire after some time from their creation. Moreover, every entry records the
+ * {@link SparqlEndPointHelper#getWriteGeneration() write generation} of the helper it was computed with, and it's
+ * ignored when the generation changes (the whole cache is dropped when a newer generation is seen), which, in the case of
+ * {@link TDBEndPointHelper}, happens when new data are committed into its dataset, by means of
+ * {@link DatasetWriteGenerations}. For the other helpers, which don't track the writes, the expiry time is the only way
+ * to renew the entries.</p>
+ *
+ * <p>A cache should be used with one helper only, since it's invalidated based on the helper write generation.
+ * This class is thread-safe.</p>
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>18 Oct 2026</dd></dl>
+ *
+ */
+public class QueryResultCache
+{
+	/**
+	 * The key for the cache entries, parameters are converted into plain nodes, since {@link QuerySolutionMap}
+	 * doesn't have any equality.
+	 */
+	static record Key ( String operation, Query query, Map<String, Node> params )
+	{
+		static Key of ( String operation, Query query, QuerySolutionMap params )
+		{
+			if ( params == null ) return new Key ( operation, query, Collections.emptyMap () );
+
+			Map<String, Node> paramNodes = new HashMap<> ();
+			for ( Iterator<String> vars = params.varNames (); vars.hasNext (); )
+			{
+				String var = vars.next ();
+				RDFNode value = params.get ( var );
+				if ( value != null ) paramNodes.put ( var, value.asNode () );
+			}
+			return new Key ( operation, query, Collections.unmodifiableMap ( paramNodes ) );
+		}
+	}
+
+	/**
+	 * A cached result, together with the write generation it was computed with. 
+	 */
+	private static record Entry ( long generation, Object result ) {}
+
+	/**
+	 * Roughly, what an entry costs, apart from its value.
+	 */
+	private static final int ENTRY_OVERHEAD_BYTES = 128;
+
+	private final Cache<Key, Entry> cache;
+	private final Duration expireAfterWrite;
+
+	private int maxCachedRows = 10000;
+
+	private final AtomicLong estimatedBytes = new AtomicLong ( 0 );
+	private final LongAdder invalidations = new LongAdder ();
+
+	/** The latest write generation seen, used to drop all the older entries in one go */
+	private volatile long generation = 0;
+
+	private QueryResultCache ( long maxSize, boolean isWeightBased, Duration expireAfterWrite )
+	{
+		if ( maxSize < 1 ) throw new IllegalArgumentException ( "Can't set the query result cache size to " + maxSize );
+
+		CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder ()
+			.recordStats ()
+			.removalListener ( n -> estimatedBytes.addAndGet ( -estimateBytes ( ( (Entry) n.getValue () ).result () ) ) );
+
+		if ( isWeightBased )
+			builder.maximumWeight ( maxSize ).weigher ( ( Key k, Entry v ) -> (int) Math.min ( Integer.MAX_VALUE, estimateBytes ( v.result () ) ) );
+		else
+			builder.maximumSize ( maxSize );
+
+		if ( expireAfterWrite != null ) builder.expireAfterWrite ( expireAfterWrite );
+
+		this.cache = builder.build ();
+		this.expireAfterWrite = expireAfterWrite;
+	}
+
+	/**
+	 * A cache bounded by the number of entries.
+	 *
+	 * @param expireAfterWrite how long the entries live after their creation, null means they don't expire.
+	 */
+	public static QueryResultCache ofMaxEntries ( long maxEntries, Duration expireAfterWrite )
+	{
+		return new QueryResultCache ( maxEntries, false, expireAfterWrite );
+	}
+
+	/**
+	 * A cache bounded by an estimate of the memory taken by the entries. Note that this is a rough estimate, which
+	 * doesn't consider the RDF nodes shared between entries.
+	 *
+	 * @param expireAfterWrite how long the entries live after their creation, null means they don't expire.
+	 */
+	public static QueryResultCache ofMaxBytes ( long maxBytes, Duration expireAfterWrite )
+	{
+		return new QueryResultCache ( maxBytes, true, expireAfterWrite );
+	}
+
+
+	/**
+	 * Returns the cached result, or null if there isn't any, or if it was computed with a different write generation.
+	 * When a newer generation is seen for the first time, all the entries are invalidated.
+	 */
+	Object get ( Key key, long currentGeneration )
+	{
+		checkGeneration ( currentGeneration );
+		Entry entry = cache.getIfPresent ( key );
+		if ( entry == null ) return null;
+		
+		// Can happen with a put() racing with a write, or with the generation going backward (eg, when the helper 
+		// is switched to another dataset). Guava has counted this as a hit, but it's rare enough.  
+		if ( entry.generation () != currentGeneration ) 
+		{
+			cache.asMap ().remove ( key, entry );
+			return null;
+		}
+		return entry.result ();
+	}
+
+	/**
+	 * Caches a result, unless the write generation changed since the result was computed (ie, the result might
+	 * be stale already). The result is stored with its generation, so that {@link #get(Key, long)} ignores it if 
+	 * it's stale anyway, because of a write happening after this check.
+	 *
+	 * @param queryGeneration the write generation at the time the query started
+	 */
+	void put ( Key key, Object result, long queryGeneration, long currentGeneration )
+	{
+		if ( queryGeneration != currentGeneration ) return;
+		if ( result instanceof List<?> rows && rows.size () > maxCachedRows ) return;
+
+		estimatedBytes.addAndGet ( estimateBytes ( result ) );
+		cache.put ( key, new Entry ( queryGeneration, result ) );
+	}
+
+	/**
+	 * Drops all the entries when a newer write generation is seen. This is just a way to free memory quickly, the
+	 * correctness is ensured by the generations in the entries. 
+	 */
+	private void checkGeneration ( long currentGeneration )
+	{
+		if ( currentGeneration <= generation ) return;
+		synchronized ( this )
+		{
+			if ( currentGeneration <= generation ) return;
+			generation = currentGeneration;
+			invalidateAll ();
+		}
+	}
+
+	public void invalidateAll ()
+	{
+		cache.invalidateAll ();
+		invalidations.increment ();
+	}
+
+	private static long estimateBytes ( Object result )
+	{
+		long bytes = ENTRY_OVERHEAD_BYTES;
+		if ( !( result instanceof List<?> rows ) ) return bytes;
+
+		bytes += 16 + 8L * rows.size ();
+		for ( Object row: rows )
+			if ( row instanceof ArrayQuerySolution arow ) bytes += arow.estimateBytes ();
+		return bytes;
+	}
+
+
+	/**
+	 * The max number of rows a SELECT result can have in order to be cached. Default is 10000.
+	 */
+	public int getMaxCachedRows ()
+	{
+		return maxCachedRows;
+	}
+
+	public void setMaxCachedRows ( int maxCachedRows )
+	{
+		if ( maxCachedRows < 0 ) throw new IllegalArgumentException (
+			"Can't set the max rows of the query result cache to " + maxCachedRows
+		);
+		this.maxCachedRows = maxCachedRows;
+	}
+
+	public Duration getExpireAfterWrite ()
+	{
+		return expireAfterWrite;
+	}
+
+	/**
+	 * The Guava statistics about hits, misses and evictions.
+	 */
+	public CacheStats getStats ()
+	{
+		return cache.stats ();
+	}
+
+	public double getHitRate ()
+	{
+		return cache.stats ().hitRate ();
+	}
+
+	public long size ()
+	{
+		return cache.size ();
+	}
+
+	/**
+	 * A rough estimate of the memory taken by the cached results.
+	 */
+	public long getEstimatedBytes ()
+	{
+		return estimatedBytes.get ();
+	}
+
+	/**
+	 * How many times the cache was invalidated, either explicitly or because of a new write generation.
+	 */
+	public long getInvalidations ()
+	{
+		return invalidations.sum ();
+	}
+
+	@Override
+	public String toString ()
+	{
+		CacheStats stats = getStats ();
+		return String.format (
+			"QueryResultCache { size: %d, estimated bytes: %d, hits: %d, misses: %d, hit rate: %.2f, evictions: %d, "
+			+ "invalidations: %d }",
+			size (), getEstimatedBytes (), stats.hitCount (), stats.missCount (), stats.hitRate (),
+			stats.evictionCount (), getInvalidations ()
+		);
+	}
+}
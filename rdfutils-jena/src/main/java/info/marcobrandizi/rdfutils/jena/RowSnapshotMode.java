@@ -0,0 +1,86 @@
+package info.marcobrandizi.rdfutils.jena;
+
+import java.util.List;
+import java.util.function.Function;
+
+import org.apache.jena.query.QuerySolution;
+import org.apache.jena.query.QuerySolutionMap;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.sparql.core.ResultBinding;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingBuilder;
+
+/**
+ * <p>How {@link SparqlEndPointHelper#processSelect(String, org.apache.jena.query.Query, java.util.function.Consumer, QuerySolutionMap) processSelect()}
+ * copies the result rows before passing them to the action.</p>
+ *
+ * <p>The copy is needed since the rows coming from TDB refer to the store internals, which aren't valid anymore
+ * when the read transaction is over (and keeping the transaction open for long causes timeouts). All the modes
+ * here return rows that are safe to use after the transaction.</p>
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>18 Oct 2026</dd></dl>
+ *
+ */
+public enum RowSnapshotMode
+{
+	/**
+	 * Copies the row into a new {@link QuerySolutionMap}. This is the original behaviour and the most expensive mode,
+	 * since every row costs a hash map, its entries and one {@link org.apache.jena.rdf.model.RDFNode} per value.
+	 */
+	CLONE
+	{
+		@Override
+		Function<Binding, QuerySolution> snapshotter ( List<String> resultVars, Model model )
+		{
+			return binding ->
+			{
+				var clonedRow = new QuerySolutionMap ();
+				clonedRow.addAll ( new ResultBinding ( model, binding ) );
+				return clonedRow;
+			};
+		}
+	},
+
+	/**
+	 * Copies the underlying ARQ {@link Binding} into a detached one (which resolves the values from the store),
+	 * wrapped by a {@link ResultBinding}. The binding is immutable and compact (up to a few variables, it doesn't
+	 * even use a map) and the RDF nodes are created only when they're accessed.
+	 */
+	BINDING
+	{
+		@Override
+		Function<Binding, QuerySolution> snapshotter ( List<String> resultVars, Model model )
+		{
+			return binding ->
+			{
+				BindingBuilder builder = Binding.builder ();
+				binding.forEach ( builder::add );
+				return new ResultBinding ( model, builder.build () );
+			};
+		}
+	},
+
+	/**
+	 * Copies the values into a plain array, indexed by the result variables, which are shared by all the rows of
+	 * the same query. This is the cheapest mode, one array per row, and the RDF nodes are created only when
+	 * they're accessed.
+	 */
+	ARRAY
+	{
+		@Override
+		Function<Binding, QuerySolution> snapshotter ( List<String> resultVars, Model model )
+		{
+			ArrayQuerySolution.Layout layout = new ArrayQuerySolution.Layout ( resultVars, model );
+			return layout::snapshot;
+		}
+	};
+
+	/**
+	 * The function that makes the row copies for a given query result.
+	 *
+	 * @param resultVars the query result variables.
+	 * @param model the model used to build the {@link org.apache.jena.rdf.model.RDFNode} values.
+	 */
+	abstract Function<Binding, QuerySolution> snapshotter ( List<String> resultVars, Model model );
+}
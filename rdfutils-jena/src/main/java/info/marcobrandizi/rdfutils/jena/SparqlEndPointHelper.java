@@ -1,9 +1,23 @@
 package info.marcobrandizi.rdfutils.jena;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
 
+import org.apache.jena.query.ARQ;
 import org.apache.jena.query.Query;
 import org.apache.jena.query.QueryException;
 import org.apache.jena.query.QueryExecution;
@@ -13,11 +27,32 @@ import org.apache.jena.query.QuerySolutionMap;
 import org.apache.jena.query.ResultSet;
 import org.apache.jena.query.Syntax;
 import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFFormat;
+import org.apache.jena.riot.ResultSetMgr;
+import org.apache.jena.riot.resultset.ResultSetLang;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFWriter;
+import org.apache.jena.sparql.algebra.Algebra;
+import org.apache.jena.sparql.algebra.Op;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.engine.Plan;
+import org.apache.jena.sparql.engine.QueryEngineRegistry;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.binding.BindingLib;
+import org.apache.jena.sparql.exec.RowSet;
+import org.apache.jena.sparql.util.Context;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
 import com.google.common.cache.LoadingCache;
 import com.machinezoo.noexception.throwing.ThrowingRunnable;
 import com.machinezoo.noexception.throwing.ThrowingSupplier;
@@ -37,28 +72,68 @@ public abstract class SparqlEndPointHelper
 {
 	/**
 	 * A SPARQL query cache. This stores queries that have already been parsed from their string representation. 
-	 * It is used in the data manager methods, to save some time about query parsing.  
+	 * It is used in the data manager methods, to save some time about query parsing. See 
+	 * {@link #configureQueryCache(long, Duration)}.
 	 * 
 	 */
-	private static LoadingCache<String, Query> queryCache;
+	private static volatile LoadingCache<String, Query> queryCache;
+	
+	/**
+	 * The second level of {@link #queryCache}, which stores the optimised algebra of the queries, see 
+	 * {@link #getCachedOp(Query)}. This is based on the query object identity, so that the entries go away 
+	 * together with the queries.
+	 */
+	private static volatile LoadingCache<Query, Op> opCache;
+	
+	/**
+	 * The reverse of {@link #queryCache}, based on the query object identity, used to report the cache key in 
+	 * {@link SparqlQueryEvent}.  
+	 */
+	private static Cache<Query, String> queryKeys = CacheBuilder.newBuilder ().weakKeys ().build ();
+	
+	private RowSnapshotMode rowSnapshotMode = RowSnapshotMode.CLONE;
+	private volatile QueryResultCache resultCache = null;
+	private volatile DiskQueryResultCache diskResultCache = null;
+	private String datasetFingerprint = null;
+	private boolean isUsingCachedOps = false;
 	
 	protected Logger log = LoggerFactory.getLogger ( this.getClass () );
 	private static Logger slog = LoggerFactory.getLogger ( SparqlEndPointHelper.class );
 	
 	static 
 	{
+		configureQueryCache ( 1000, null );
+	}
+
+	/**
+	 * <p>Sets up the query cache used by {@link #getCachedQuery(String)} and the algebra cache used by 
+	 * {@link #getCachedOp(Query)}. The default is 1000 entries, without expiry.</p>
+	 * 
+	 * <p>This re-creates the caches, so the current entries and statistics are lost.</p>
+	 * 
+	 * @param maxSize the max number of queries kept in the cache (and the max number of algebra entries). 
+	 * @param expireAfterAccess entries that aren't used for this time are removed. null means no expiry.
+	 */
+	public static synchronized void configureQueryCache ( long maxSize, Duration expireAfterAccess )
+	{
+		if ( maxSize < 0 ) throw new IllegalArgumentException ( "Can't set the SPARQL query cache size to " + maxSize );
+		
+		CacheBuilder<Object, Object> queryCacheBuilder = CacheBuilder.newBuilder ()
+			.maximumSize ( maxSize )
+			.recordStats ();
+		if ( expireAfterAccess != null ) queryCacheBuilder.expireAfterAccess ( expireAfterAccess );
+		
 		// Initialise the query cache with the QueryFactory-based generator.
 		//
-		queryCache = CacheBuilder
-		.newBuilder ()
-		.maximumSize ( 1000 )
-		.build ( new CacheLoader<String, Query> () 
+		queryCache = queryCacheBuilder.build ( new CacheLoader<String, Query> () 
 		{
 			@Override
 			public Query load ( String sparql )
 			{
 				try {
-					return QueryFactory.create ( sparql, Syntax.syntaxARQ );
+					Query query = QueryFactory.create ( sparql, Syntax.syntaxARQ );
+					queryKeys.put ( query, sparql );
+					return query;
 				}
 				catch ( QueryException ex ) {
 					slog.error ( "SPARQL Error in {}, query is:\n{}", SparqlEndPointHelper.class.getSimpleName (), sparql );
@@ -66,8 +141,37 @@ public abstract class SparqlEndPointHelper
 				}
 			}
 		});
+		
+		CacheBuilder<Object, Object> opCacheBuilder = CacheBuilder.newBuilder ()
+			.weakKeys ()
+			.maximumSize ( maxSize )
+			.recordStats ();
+		if ( expireAfterAccess != null ) opCacheBuilder.expireAfterAccess ( expireAfterAccess );
+
+		opCache = opCacheBuilder.build ( new CacheLoader<Query, Op> () 
+		{
+			@Override
+			public Op load ( Query query ) {
+				return Algebra.optimize ( Algebra.compile ( query ) );
+			}
+		});
+	}
+	
+	/**
+	 * Hits, misses and evictions of the {@link #getCachedQuery(String) query cache}.
+	 */
+	public static CacheStats getQueryCacheStats ()
+	{
+		return queryCache.stats ();
 	}
 
+	/**
+	 * Hits, misses and evictions of the {@link #getCachedOp(Query) algebra cache}.
+	 */
+	public static CacheStats getOpCacheStats ()
+	{
+		return opCache.stats ();
+	}
 	
 	
 	/**
@@ -75,8 +179,13 @@ public abstract class SparqlEndPointHelper
 	 */
 	public ResultSet select ( Query sparqlSelect, QuerySolutionMap params )
 	{
-		var qx = getQueryExecutor ( sparqlSelect, params );
-		return qx.execSelect ();
+		// The results are lazy, so we can only time the query start here
+		return recordQuery ( "select", sparqlSelect, () -> 
+		{
+			var qx = getQueryExecutor ( sparqlSelect, params );
+			return qx.execSelect ();
+		}, 
+		rs -> -1 );
 	}
 	
 	public ResultSet select ( Query sparqlSelect )
@@ -100,9 +209,27 @@ public abstract class SparqlEndPointHelper
 	 */
 	public boolean ask ( Query sparqlAsk, QuerySolutionMap params )
 	{
-		try ( var qx = getQueryExecutor ( sparqlAsk, params ) ) {
-			return qx.execAsk ();
-		}
+		return recordQuery ( "ask", sparqlAsk, () -> 
+		{
+			QueryResultCache cache = this.resultCache;
+			QueryResultCache.Key cacheKey = null;
+			long generation = 0;
+			if ( cache != null )
+			{
+				generation = getWriteGeneration ();
+				cacheKey = QueryResultCache.Key.of ( "ask", sparqlAsk, params );
+				Boolean cachedResult = (Boolean) cache.get ( cacheKey, generation );
+				if ( cachedResult != null ) return cachedResult;
+			}
+			
+			try ( var qx = getQueryExecutor ( sparqlAsk, params ) ) 
+			{
+				boolean result = qx.execAsk ();
+				if ( cache != null ) cache.put ( cacheKey, result, generation, getWriteGeneration () );
+				return result;
+			}
+		}, 
+		result -> result ? 1 : 0 );
 	}
 	
 	public boolean ask ( Query sparqlAsk )
@@ -158,28 +285,123 @@ public abstract class SparqlEndPointHelper
 	 * 
 	 * <p>Works out operations like getting the proper handler from TDB query or caching the SPARQL queries.</p>
 	 * 
+	 * <p>The rows are copies of the query results, see {@link #getRowSnapshotMode()}. If there is a 
+	 * {@link #getResultCache() result cache} or a {@link #getDiskResultCache() disk cache}, the results may come 
+	 * from there.</p>
+	 * 
 	 * @param logPrefix used in the progress log message
 	 */
 	public long processSelect ( String logPrefix, Query sparqlSelect, Consumer<QuerySolution> action, QuerySolutionMap params ) 
 	{	
-		try ( QueryExecution qx = getQueryExecutor ( sparqlSelect, params ) )
+		return recordQuery ( "processSelect", sparqlSelect, () -> 
 		{
-			if ( logPrefix == null ) logPrefix = "rdfutils";
-			var progress = new ProgressLogger ( logPrefix + ": {} SPARQL tuples read from RDF", 100000 );
-			progress.setIsThreadSafe ( true );
+			QueryResultCache cache = this.resultCache;
+			long generation = cache == null ? 0 : getWriteGeneration ();
+			QueryResultCache.Key cacheKey = cache == null ? null : QueryResultCache.Key.of ( "processSelect", sparqlSelect, params );
+			if ( cache != null )
+			{
+				@SuppressWarnings ( "unchecked" )
+				List<QuerySolution> cachedRows = (List<QuerySolution>) cache.get ( cacheKey, generation );
+				if ( cachedRows != null ) {
+					cachedRows.forEach ( action );
+					return (long) cachedRows.size ();
+				}
+			}
 			
-			qx.execSelect ().forEachRemaining ( row ->
+			DiskQueryResultCache diskCache = this.diskResultCache;
+			String diskKey = diskCache == null 
+				? null 
+				: diskCache.getKey ( "processSelect", sparqlSelect, params, getDatasetFingerprint () );
+			if ( diskKey != null )
 			{
-				// Doing a clone after having observed transaction timeouts with TDB
-				var clonedRow = new QuerySolutionMap ();
-				clonedRow.addAll ( row );
-				action.accept ( clonedRow );
-				
-				progress.updateWithIncrement ();
-			});
+				// New results are written to disk first and then read back like the cached ones, so that they're 
+				// always streamed from there
+				InputStream resultIn = diskCache.get ( diskKey );
+				if ( resultIn == null ) resultIn = diskCache.put ( diskKey, out -> 
+				{
+					execSelect ( sparqlSelect, params, rs -> {
+						ResultSetMgr.write ( out, rs, ResultSetLang.RS_Thrift );
+						return null;
+					});
+				});
+				return diskCache.read ( resultIn, in -> processSelectRows ( 
+					logPrefix, ResultSetMgr.read ( in, ResultSetLang.RS_Thrift ), action, cache, cacheKey, generation 
+				));
+			}
 			
-			return progress.getProgress ();
+			return execSelect ( 
+				sparqlSelect, params, rs -> processSelectRows ( logPrefix, rs, action, cache, cacheKey, generation ) 
+			);
+		}, 
+		rows -> rows );
+	}
+	
+	/**
+	 * Runs a SELECT and passes the results to the processor, either through a {@link #getQueryExecutor(Query, QuerySolutionMap) query executor}
+	 * or, if {@link #isUsingCachedOps()} is set and the helper has a {@link #getLocalDatasetGraph() local dataset},
+	 * through the {@link #getCachedOp(Query) cached algebra}.
+	 */
+	private <T> T execSelect ( Query sparqlSelect, QuerySolutionMap params, Function<ResultSet, T> resultsProcessor )
+	{
+		DatasetGraph dsg = isUsingCachedOps ? getLocalDatasetGraph () : null;
+		if ( dsg == null )
+		{
+			try ( QueryExecution qx = getQueryExecutor ( sparqlSelect, params ) ) {
+				return resultsProcessor.apply ( qx.execSelect () );
+			}
+		}
+		
+		Op op = getCachedOp ( sparqlSelect );
+		Context context = ARQ.getContext ().copy ();
+		// It's already optimised, don't waste time with it again
+		context.set ( ARQ.optimization, false );
+		Binding inputBinding = params == null ? BindingFactory.empty () : BindingLib.asBinding ( params );
+		
+		Plan plan = QueryEngineRegistry.findFactory ( op, dsg, context ).create ( op, dsg, inputBinding, context );
+		QueryIterator itr = plan.iterator ();
+		try {
+			return resultsProcessor.apply ( ResultSet.adapt ( RowSet.create ( itr, sparqlSelect.getProjectVars () ) ) );
+		}
+		finally {
+			itr.close ();
+		}
+	}
+	
+	/**
+	 * Used by {@link #processSelect(String, Query, Consumer, QuerySolutionMap)} to pass the results to the action, 
+	 * possibly collecting them for the {@link #getResultCache() result cache}.
+	 */
+	private long processSelectRows ( 
+		String logPrefix, ResultSet rs, Consumer<QuerySolution> action, 
+		QueryResultCache cache, QueryResultCache.Key cacheKey, long generation
+	)
+	{
+		String progressPrefix = logPrefix == null ? "rdfutils" : logPrefix;
+		var progress = new ProgressLogger ( progressPrefix + ": {} SPARQL tuples read from RDF", 100000 );
+		progress.setIsThreadSafe ( true );
+		
+		// The cached rows are shared, so they need to be immutable
+		var snapshotter = ( cache == null ? rowSnapshotMode : RowSnapshotMode.ARRAY )
+			.snapshotter ( rs.getResultVars (), rs.getResourceModel () );
+		List<QuerySolution> rowsToCache = cache == null ? null : new ArrayList<> ();
+		while ( rs.hasNext () )
+		{
+			// Doing a snapshot after having observed transaction timeouts with TDB
+			QuerySolution row = snapshotter.apply ( rs.nextBinding () );
+			if ( rowsToCache != null )
+			{
+				rowsToCache.add ( row );
+				if ( rowsToCache.size () > cache.getMaxCachedRows () ) rowsToCache = null;
+			}
+			action.accept ( row );
+			
+			progress.updateWithIncrement ();
 		}
+		
+		if ( rowsToCache != null ) 
+			cache.put ( cacheKey, Collections.unmodifiableList ( rowsToCache ), generation, getWriteGeneration () );
+		
+		return progress.getProgress ();
 	}
 	
 	public long processSelect ( String logPrefix, Query sparqlSelect, Consumer<QuerySolution> action )
@@ -218,19 +440,195 @@ public abstract class SparqlEndPointHelper
 	{
 		return processSelect ( sparqlSelect, action, null );
 	}
-	
+
+
+	/**
+	 * <p>A parallel variant of {@link #processSelect(String, Query, Consumer, QuerySolutionMap)}, which is useful when the
+	 * action is expensive (eg, it builds objects or calls other services).</p>
+	 *
+	 * <p>The result rows are still read by the calling thread (hence, the TDB read transaction stays there too), they're
+	 * grouped into batches of batchSize rows and each batch is passed to a pool of threads workers, which
+	 * call the action for each row. This means the action must be thread-safe and the rows aren't processed in
+	 * order.</p>
+	 *
+	 * <p>There are at most 2 * threads batches waiting for a worker. When this limit is reached, the reading
+	 * of results waits for the workers to catch up, so that the memory doesn't blow up with fast queries and slow
+	 * actions.</p>
+	 *
+	 * <p>If the action fails on some row, the reading stops, the pending batches are skipped, and the method
+	 * re-throws the first worker exception (or wraps it into a {@link RuntimeException} if it's checked).</p>
+	 *
+	 * @return the number of processed rows.
+	 */
+	public long processSelectParallel (
+		String logPrefix, Query sparqlSelect, Consumer<QuerySolution> action, QuerySolutionMap params,
+		int batchSize, int threads
+	)
+	{
+		if ( batchSize < 1 ) throw new IllegalArgumentException ( "Can't use a processSelect batch size of " + batchSize );
+		if ( threads < 1 ) throw new IllegalArgumentException ( "Can't use " + threads + " processSelect threads" );
+
+		return recordQuery ( "processSelectParallel", sparqlSelect, () ->
+		{
+			String progressPrefix = logPrefix == null ? "rdfutils" : logPrefix;
+			var progress = new ProgressLogger ( progressPrefix + ": {} SPARQL tuples processed from RDF", 100000 );
+			progress.setIsThreadSafe ( true );
+
+			ExecutorService workers = Executors.newFixedThreadPool ( threads );
+			Semaphore pendingBatches = new Semaphore ( 2 * threads );
+			AtomicReference<Throwable> workerError = new AtomicReference<> ();
+
+			Consumer<List<QuerySolution>> batchSubmitter = batch ->
+			{
+				try {
+					pendingBatches.acquire ();
+				}
+				catch ( InterruptedException ex ) {
+					Thread.currentThread ().interrupt ();
+					throw new RuntimeException ( "Interrupted while waiting for the processSelect workers", ex );
+				}
+				workers.submit ( () ->
+				{
+					try
+					{
+						// Something already went wrong, don't waste time with the rest
+						if ( workerError.get () != null ) return;
+						for ( QuerySolution row: batch ) {
+							action.accept ( row );
+							progress.updateWithIncrement ();
+						}
+					}
+					catch ( Throwable ex ) {
+						workerError.compareAndSet ( null, ex );
+					}
+					finally {
+						pendingBatches.release ();
+					}
+				});
+			};
+
+			try
+			{
+				execSelect ( sparqlSelect, params, rs -> 
+				{
+					var snapshotter = rowSnapshotMode.snapshotter ( rs.getResultVars (), rs.getResourceModel () );
+					List<QuerySolution> batch = new ArrayList<> ( batchSize );
+					while ( workerError.get () == null && rs.hasNext () )
+					{
+						// As in processSelect(), the rows must survive the iteration
+						batch.add ( snapshotter.apply ( rs.nextBinding () ) );
+	
+						if ( batch.size () < batchSize ) continue;
+						batchSubmitter.accept ( batch );
+						batch = new ArrayList<> ( batchSize );
+					}
+					if ( !batch.isEmpty () && workerError.get () == null ) batchSubmitter.accept ( batch );
+					return null;
+				});
+			}
+			finally
+			{
+				workers.shutdown ();
+				try {
+					while ( !workers.awaitTermination ( 5, TimeUnit.MINUTES ) )
+						log.info ( "Still waiting for the processSelect workers" );
+				}
+				catch ( InterruptedException ex ) {
+					Thread.currentThread ().interrupt ();
+					throw new RuntimeException ( "Interrupted while waiting for the processSelect workers", ex );
+				}
+			}
+
+			Throwable error = workerError.get ();
+			if ( error instanceof RuntimeException rex ) throw rex;
+			if ( error instanceof Error err ) throw err;
+			if ( error != null ) throw new RuntimeException (
+				"processSelect stopped, due to a worker error: " + error.getMessage (), error
+			);
+
+			return progress.getProgress ();
+		},
+		rows -> rows );
+	}
+
+	/**
+	 * Defaults to batches of 1000 rows and as many threads as the available processors.
+	 */
+	public long processSelectParallel (
+		String logPrefix, Query sparqlSelect, Consumer<QuerySolution> action, QuerySolutionMap params
+	)
+	{
+		return processSelectParallel (
+			logPrefix, sparqlSelect, action, params, 1000, Runtime.getRuntime ().availableProcessors ()
+		);
+	}
+
+	public long processSelectParallel (
+		String logPrefix, String sparqlSelect, Consumer<QuerySolution> action, QuerySolutionMap params,
+		int batchSize, int threads
+	)
+	{
+		return processSelectParallel ( logPrefix, getQuery ( sparqlSelect ), action, params, batchSize, threads );
+	}
+
+	public long processSelectParallel ( String logPrefix, String sparqlSelect, Consumer<QuerySolution> action )
+	{
+		return processSelectParallel ( logPrefix, getQuery ( sparqlSelect ), action, null );
+	}
+
+	public long processSelectParallel ( Query sparqlSelect, Consumer<QuerySolution> action )
+	{
+		return processSelectParallel ( null, sparqlSelect, action, null );
+	}
+
+	public long processSelectParallel ( String sparqlSelect, Consumer<QuerySolution> action )
+	{
+		return processSelectParallel ( null, sparqlSelect, action );
+	}
+
 	
 	
 	public Model processConstruct ( 
 		Query sparqlConstruct, Consumer<Model> action, Model initialModel, QuerySolutionMap params 
 	)
 	{
-		try ( QueryExecution qx = getQueryExecutor ( sparqlConstruct, params ) )
+		return recordQuery ( "construct", sparqlConstruct, () -> 
 		{
-			Model result = initialModel == null ? qx.execConstruct () : qx.execConstruct ( initialModel );
-			action.accept ( result );
-			return result;
-		}
+			DiskQueryResultCache diskCache = this.diskResultCache;
+			String diskKey = diskCache == null 
+				? null 
+				: diskCache.getKey ( "construct", sparqlConstruct, params, getDatasetFingerprint () );
+			if ( diskKey != null )
+			{
+				InputStream resultIn = diskCache.get ( diskKey );
+				if ( resultIn == null ) resultIn = diskCache.put ( diskKey, out -> 
+				{
+					try ( QueryExecution qx = getQueryExecutor ( sparqlConstruct, params ) ) 
+					{
+						StreamRDF writer = StreamRDFWriter.getWriterStream ( out, RDFFormat.RDF_THRIFT );
+						writer.start ();
+						qx.execConstructTriples ().forEachRemaining ( writer::triple );
+						writer.finish ();
+					}
+				});
+				
+				Model result = initialModel == null ? ModelFactory.createDefaultModel () : initialModel;
+				diskCache.read ( resultIn, in -> {
+					RDFDataMgr.read ( result, in, Lang.RDFTHRIFT );
+					return result;
+				});
+				action.accept ( result );
+				return result;
+			}
+			
+			try ( QueryExecution qx = getQueryExecutor ( sparqlConstruct, params ) )
+			{
+				Model result = initialModel == null ? qx.execConstruct () : qx.execConstruct ( initialModel );
+				action.accept ( result );
+				return result;
+			}
+		}, 
+		Model::size );
 	}
 	
 	public Model processConstruct ( Query sparqlConstruct, Consumer<Model> action, Model initialModel )
@@ -280,6 +678,15 @@ public abstract class SparqlEndPointHelper
 		return queryCache.getUnchecked ( sparql );
 	}
 	
+	/**
+	 * Gets the optimised algebra for a query, caching it. The cache is based on the query object identity, so it 
+	 * works best with the queries coming from {@link #getCachedQuery(String)}. See {@link #isUsingCachedOps()}.
+	 */
+	public static Op getCachedOp ( Query query )
+	{
+		return opCache.getUnchecked ( query );
+	}
+	
 	public QueryExecution getQueryExecutor ( Query query )
 	{
 		return getQueryExecutor ( query, null );
@@ -299,6 +706,158 @@ public abstract class SparqlEndPointHelper
 		return getQueryExecutor ( getQuery ( query ), params );
 	}	
 
+	/**
+	 * How {@link #processSelect(String, Query, Consumer, QuerySolutionMap) processSelect()} and 
+	 * {@link #processSelectParallel(String, Query, Consumer, QuerySolutionMap, int, int) processSelectParallel()}
+	 * copy the result rows. Default is {@link RowSnapshotMode#CLONE}, which is the most expensive, but keeps 
+	 * returning {@link QuerySolutionMap} rows, as in the past. For big or wide results, consider 
+	 * {@link RowSnapshotMode#ARRAY}.  
+	 */
+	public RowSnapshotMode getRowSnapshotMode ()
+	{
+		return rowSnapshotMode;
+	}
+
+	public void setRowSnapshotMode ( RowSnapshotMode rowSnapshotMode )
+	{
+		if ( rowSnapshotMode == null ) throw new IllegalArgumentException ( "The processSelect row snapshot mode can't be null" );
+		this.rowSnapshotMode = rowSnapshotMode;
+	}
+
+	/**
+	 * An optional cache for the results of {@link #processSelect(String, Query, Consumer, QuerySolutionMap) processSelect()}
+	 * and {@link #ask(Query, QuerySolutionMap) ask()}. Default is null, ie, no result caching.
+	 * 
+	 * <p>When the cache is set, processSelect() always uses the {@link RowSnapshotMode#ARRAY} rows, since they're 
+	 * immutable and can be shared between multiple invocations.</p>
+	 */
+	public QueryResultCache getResultCache ()
+	{
+		return resultCache;
+	}
+
+	public void setResultCache ( QueryResultCache resultCache )
+	{
+		this.resultCache = resultCache;
+	}
+
+	/**
+	 * An optional persistent cache for the results of 
+	 * {@link #processSelect(String, Query, Consumer, QuerySolutionMap) processSelect()} and 
+	 * {@link #processConstruct(Query, Consumer, Model, QuerySolutionMap) processConstruct()}, which is meant for 
+	 * expensive queries that are repeated across JVM restarts. Default is null, ie, no disk caching.
+	 * 
+	 * <p>The results are cached only if this helper has a {@link #getDatasetFingerprint() dataset fingerprint}.</p>
+	 */
+	public DiskQueryResultCache getDiskResultCache ()
+	{
+		return diskResultCache;
+	}
+
+	public void setDiskResultCache ( DiskQueryResultCache diskResultCache )
+	{
+		this.diskResultCache = diskResultCache;
+	}
+
+	/**
+	 * <p>A string that identifies the current state of the data behind this helper, used by the 
+	 * {@link #getDiskResultCache() disk result cache} to tell if a cached result is still valid.</p>
+	 * 
+	 * <p>If it was {@link #setDatasetFingerprint(String) set explicitly} (eg, to a data release number), it returns 
+	 * that value, else it uses {@link #computeDatasetFingerprint()}.</p>
+	 */
+	public String getDatasetFingerprint ()
+	{
+		return datasetFingerprint != null ? datasetFingerprint : computeDatasetFingerprint ();
+	}
+
+	public void setDatasetFingerprint ( String datasetFingerprint )
+	{
+		this.datasetFingerprint = datasetFingerprint;
+	}
+
+	/**
+	 * Computes the {@link #getDatasetFingerprint() dataset fingerprint} from the data. By default, it returns null, 
+	 * ie, the data state can't be computed and the results aren't cached on disk.
+	 */
+	protected String computeDatasetFingerprint ()
+	{
+		return null;
+	}
+
+	/**
+	 * <p>If true, {@link #processSelect(String, Query, Consumer, QuerySolutionMap) processSelect()} and 
+	 * {@link #processSelectParallel(String, Query, Consumer, QuerySolutionMap, int, int) processSelectParallel()}
+	 * run the {@link #getCachedOp(Query) cached algebra} of the query straight on the 
+	 * {@link #getLocalDatasetGraph() local dataset}, skipping the compilation and optimisation that 
+	 * a {@link QueryExecution} does every time. This is useful for many executions of short queries.</p>
+	 * 
+	 * <p>Default is false. It has no effect on the helpers that don't have a local dataset (eg, a remote endpoint).</p>
+	 */
+	public boolean isUsingCachedOps ()
+	{
+		return isUsingCachedOps;
+	}
+
+	public void setUsingCachedOps ( boolean isUsingCachedOps )
+	{
+		this.isUsingCachedOps = isUsingCachedOps;
+	}
+
+	/**
+	 * The dataset that this helper queries in the current JVM, used with {@link #isUsingCachedOps()}. By default, it's 
+	 * null, ie, the queries are always run through {@link #getQueryExecutor(Query, QuerySolutionMap)}.
+	 */
+	protected DatasetGraph getLocalDatasetGraph ()
+	{
+		return null;
+	}
+
+	/**
+	 * <p>Tells the current write generation of the data behind this helper, that is, a number that changes
+	 * every time new data are written. This is used to invalidate the {@link #getResultCache() result cache}.</p>
+	 * 
+	 * <p>By default, it returns always 0, which means the writes aren't tracked and only the cache expiry time 
+	 * can renew its entries.</p>
+	 */
+	public long getWriteGeneration ()
+	{
+		return 0;
+	}
+
+	/**
+	 * Runs a query task and records a {@link SparqlQueryEvent} about it, if JFR is recording such events.
+	 * 
+	 * @param resultsCounter gets the no. of results for the event from the task result.
+	 */
+	private <T> T recordQuery ( String operation, Query query, Supplier<T> task, ToLongFunction<T> resultsCounter )
+	{
+		SparqlQueryEvent event = new SparqlQueryEvent ();
+		event.begin ();
+		T result = null;
+		boolean isFailed = true;
+		try {
+			result = task.get ();
+			isFailed = false;
+			return result;
+		}
+		finally
+		{
+			event.end ();
+			if ( event.shouldCommit () )
+			{
+				String queryKey = queryKeys.getIfPresent ( query );
+				event.operation = operation;
+				event.endPoint = this.getClass ().getSimpleName ();
+				event.cached = queryKey != null;
+				event.queryKey = queryKey != null ? queryKey : String.valueOf ( query );
+				event.results = isFailed ? -1 : resultsCounter.applyAsLong ( result );
+				event.failed = isFailed;
+				event.commit ();
+			}
+		}
+	}
+	
 	/** 
 	 * A wrapper of {@link #wrapFun(ThrowingSupplier)} for procedures that don't need to return anything.  
 	 */
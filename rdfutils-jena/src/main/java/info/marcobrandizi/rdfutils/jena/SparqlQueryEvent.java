@@ -0,0 +1,43 @@
+package info.marcobrandizi.rdfutils.jena;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Java Flight Recorder event about a query run by a {@link SparqlEndPointHelper}.
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>18 Oct 2026</dd></dl>
+ *
+ */
+@Name ( "info.marcobrandizi.rdfutils.SparqlQuery" )
+@Label ( "SPARQL Query" )
+@Category ( { "rdfutils", "SPARQL" } )
+@Description ( "A SPARQL query run by a SparqlEndPointHelper" )
+public class SparqlQueryEvent extends Event
+{
+	@Label ( "Operation" )
+	@Description ( "The helper method, ie, select, ask, construct or processSelect" )
+	public String operation;
+	
+	@Label ( "End Point" )
+	@Description ( "The helper class" )
+	public String endPoint;
+	
+	@Label ( "Query Key" )
+	@Description ( "The query cache key, or the query serialisation if the query didn't come from the cache" )
+	public String queryKey;
+	
+	@Label ( "Cached Query" )
+	public boolean cached;
+	
+	@Label ( "Results" )
+	@Description ( "Rows for processSelect, triples for construct, 1/0 for ask, -1 if unknown (eg, select)" )
+	public long results;
+	
+	@Label ( "Failed" )
+	public boolean failed;
+}
@@ -1,7 +1,11 @@
 package info.marcobrandizi.rdfutils.jena;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.function.Consumer;
+import java.util.stream.Stream;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.jena.query.Dataset;
 import org.apache.jena.query.Query;
 import org.apache.jena.query.QueryExecution;
@@ -9,6 +13,7 @@ import org.apache.jena.query.QueryExecutionFactory;
 import org.apache.jena.query.QuerySolution;
 import org.apache.jena.query.QuerySolutionMap;
 import org.apache.jena.rdf.model.Model;
+import org.apache.jena.sparql.core.DatasetGraph;
 import org.apache.jena.system.Txn;
 import org.apache.jena.tdb2.TDB2Factory;
 
@@ -79,6 +84,26 @@ public class TDBEndPointHelper extends SparqlEndPointHelper implements AutoClose
 		return result [ 0 ];
 	}
 
+	/**
+	 * Wraps {@link SparqlEndPointHelper#processSelectParallel(String, Query, Consumer, QuerySolutionMap, int, int)}
+	 * into a TDB transaction. As explained there, the transaction is used by the current thread only, the workers
+	 * receive row copies.
+	 */
+	@Override
+	public long processSelectParallel (
+		String logPrefix, Query sparql, Consumer<QuerySolution> action, QuerySolutionMap params, int batchSize, int threads
+	)
+	{
+		Dataset ds = this.getDataSet ();
+
+		long result[] = { 0 };
+ 		Txn.executeRead (
+ 			ds,
+ 			() -> result [ 0 ] = super.processSelectParallel ( logPrefix, sparql, action, params, batchSize, threads )
+ 		);
+		return result [ 0 ];
+	}
+
 	
 	
 	/**
@@ -111,6 +136,52 @@ public class TDBEndPointHelper extends SparqlEndPointHelper implements AutoClose
 			.build ();
 	}
 
+	@Override
+	protected DatasetGraph getLocalDatasetGraph ()
+	{
+		return this.getDataSet ().asDatasetGraph ();
+	}
+
+	/**
+	 * Uses {@link DatasetWriteGenerations}, so the writes that don't signal themselves there aren't tracked.
+	 */
+	@Override
+	public long getWriteGeneration ()
+	{
+		return DatasetWriteGenerations.get ( this.getDataSet () );
+	}
+
+	/**
+	 * <p>Computes a fingerprint based on the TDB location and the names, sizes and modification times of its files, so 
+	 * that it changes when the TDB is written.</p>
+	 * 
+	 * <p>The lock and journal files are ignored, since they're changed when the TDB is opened, which would make the 
+	 * disk cache useless across JVM restarts.</p>
+	 */
+	@Override
+	protected String computeDatasetFingerprint ()
+	{
+		ensureOpen ();
+		Path tdbDir = Path.of ( tdbPath ).toAbsolutePath ().normalize ();
+		
+		return wrapFun ( () -> 
+		{
+			StringBuilder sb = new StringBuilder ( tdbDir.toString () ).append ( '\n' );
+			try ( Stream<Path> files = Files.walk ( tdbDir ) ) 
+			{
+				files.filter ( Files::isRegularFile )
+				.filter ( f -> !f.getFileName ().toString ().endsWith ( ".lock" ) )
+				.filter ( f -> !f.getFileName ().toString ().endsWith ( ".jrnl" ) )
+				.sorted ()
+				.map ( Path::toFile )
+				.forEach ( f -> sb.append ( String.format ( 
+					"%s\t%d\t%d\n", tdbDir.relativize ( f.toPath () ), f.length (), f.lastModified () 
+				)));
+			}
+			return DigestUtils.sha256Hex ( sb.toString () );
+		});
+	}
+
 	/**
 	 * This returns the Jena {@link Dataset} corresponding to the TDB triple store at {@link #getTdbPath()} that was 
 	 * opened by {@link #open(String)}. 
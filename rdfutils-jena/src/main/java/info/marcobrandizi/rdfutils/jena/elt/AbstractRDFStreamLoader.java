@@ -0,0 +1,1174 @@
+package info.marcobrandizi.rdfutils.jena.elt;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.riot.RDFParserBuilder;
+import org.apache.jena.riot.lang.LabelToNode;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.sparql.core.Quad;
+
+import uk.ac.ebi.utils.threading.batchproc.AbstractSizedBatchCollector;
+import uk.ac.ebi.utils.threading.batchproc.BatchProcessor;
+import uk.ac.ebi.utils.threading.batchproc.ItemizedBatchProcessor;
+
+/**
+ * <p>A multi-thread RDF importer based on {@link BatchProcessor} and {@link RDFBatchCollector}.</p>
+ * 
+ * <p>This class is a skeleton that parses an input in the {@link #process(InputStream, String, Lang) process() methods}
+ * below, sequentially splits it into multiple batches of type B and passes them to parallel
+ * {@link #getBatchJob() consumers}. Hence, you need to define something to do with the input RDF via such 
+ * {@link #setBatchJob(java.util.function.Consumer) consumer}.</p>
+ * 
+ * <p>How the RDF statements are added to the batches is defined by the {@link RDFBatchCollector batch collector}, 
+ * see {@link RDFStreamLoader} and {@link RDFDatasetStreamLoader} for concrete implementations.</p>
+ *
+ * <p>Note that this isn't an {@link ItemizedBatchProcessor}, because the input processing isn't based on an 
+ * item-by-item reading, but on {@link RDFDataMgr} sending triples to our own {@link StreamReader}.</p>
+ * 
+ * <p>Line-based formats (N-Triples, N-Quads) can also be parsed by multiple threads, see 
+ * {@link #processParallel(File, String, Lang)}, and so can be multiple files in a directory, see 
+ * {@link #process(Path, boolean, PathMatcher)}.</p>
+ * 
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>1 Dec 2017</dd></dl>
+ *
+ */
+public abstract class AbstractRDFStreamLoader<B, BC extends RDFBatchCollector<B>, BJ extends Consumer<B>> 
+	extends BatchProcessor<B, BC, BJ>
+{
+	/**
+	 * The statements that {@link AbstractRDFStreamLoader#getTriplePipeline() pipeline} stages are given in a 
+	 * single task, when {@link AbstractRDFStreamLoader#getPipelineThreads() pipeline threads} are used.
+	 */
+	public static final int PIPELINE_CHUNK_SIZE = 1000;
+	
+	/**
+	 * The result of the pipeline over a chunk of statements. Outputs are flattened, outputCounts has the number
+	 * of outputs of each input statement.
+	 */
+	private static record TransformedChunk ( List<Object> outputs, int[] outputCounts )
+	{
+		static TransformedChunk of ( List<Object> inputs, TriplePipeline pipeline )
+		{
+			List<Object> outputs = new ArrayList<> ( inputs.size () );
+			int[] outputCounts = new int [ inputs.size () ];
+			for ( int i = 0; i < outputCounts.length; i++ )
+			{
+				int nprev = outputs.size ();
+				if ( inputs.get ( i ) instanceof Triple triple ) pipeline.apply ( triple, outputs::add );
+				else pipeline.apply ( (Quad) inputs.get ( i ), outputs::add );
+				outputCounts [ i ] = outputs.size () - nprev;
+			}
+			return new TransformedChunk ( outputs, outputCounts );
+		}
+	}
+	
+	/**
+	 * This bridges ourselves to the Jena {@link RDFDataMgr data manager} (ie, the RDF reader).
+	 * As data are sent to this interface, we populate the {@link RDFBatchCollector#batchFactory() current destination batch}
+	 * and possibly {@link AbstractRDFStreamLoader#submitBatch(Object, RDFBatchInfo) submit a new processing thread}.
+	 */
+	private class StreamReader implements StreamRDF
+	{
+		private B batch;
+		private RDFBatchInfo batchInfo;
+		private RDFBatchCreationEvent creationEvent;
+		
+		/** The position of the next statement in the input, -1 if we don't track it */
+		private long ordinal = -1;
+		/** Statements before this ordinal are skipped, since they were already loaded */
+		private long skipUntil = 0;
+		
+		/** Used with {@link AbstractRDFStreamLoader#getPipelineThreads() pipeline threads}, statements waiting to be transformed */
+		private List<Object> pipelineChunk = new ArrayList<> ();
+		/** Transformations running in the pipeline threads, in input order */
+		private final Deque<Future<TransformedChunk>> pipelineResults = new ArrayDeque<> ();
+		
+		/**
+		 * Doesn't track the statement positions, which is what we need when multiple readers parse the same input.
+		 */
+		public StreamReader () {
+		}
+
+		/**
+		 * @param firstOrdinal the position in the input of the first statement that this reader receives.
+		 * @param skipUntil the statements before this position are ignored. This is used to resume a loading from a 
+		 * {@link RDFLoadCheckpoint checkpoint}.
+		 */
+		public StreamReader ( long firstOrdinal, long skipUntil ) 
+		{
+			this.ordinal = firstOrdinal;
+			this.skipUntil = skipUntil;
+		}
+
+		@Override
+		public void start () {
+			newBatch ( getBatchCollector ().batchFactory ().get () );
+		}
+
+		@Override
+		public void triple ( Triple triple ) {
+			accept ( triple );
+		}
+
+		@Override
+		public void quad ( Quad quad ) {
+			accept ( quad );
+		}
+		
+		/**
+		 * Sends the statement to the pipeline threads or, if there aren't any, directly to the current batch.
+		 */
+		private void accept ( Object statement )
+		{
+			if ( skip () ) return;
+			
+			if ( pipelinePool == null ) 
+			{
+				if ( triplePipeline == null ) addStatement ( statement );
+				else if ( statement instanceof Triple triple ) triplePipeline.apply ( triple, this::addStatement );
+				else triplePipeline.apply ( (Quad) statement, this::addStatement );
+				inputConsumed ();
+				return;
+			}
+
+			pipelineChunk.add ( statement );
+			if ( pipelineChunk.size () < PIPELINE_CHUNK_SIZE ) return;
+			submitPipelineChunk ();
+		}
+		
+		private void addStatement ( Object statement )
+		{
+			if ( statement instanceof Triple triple )
+			{
+				if ( duplicateFilter != null && !duplicateFilter.isNew ( triple ) ) return;
+				if ( nodeDictionary != null ) triple = nodeDictionary.intern ( triple );
+				if ( getBatchCollector ().addTriple ( this.batch, triple ) )
+					this.batchInfo.add ( 1, RDFSizeEstimator.estimate ( triple ) );
+				return;
+			}
+			Quad quad = (Quad) statement;
+			if ( duplicateFilter != null && !duplicateFilter.isNew ( quad ) ) return;
+			if ( nodeDictionary != null ) quad = nodeDictionary.intern ( quad );
+			// Eg, named graph quads in triple-based batches are ignored, they must not be counted
+			if ( getBatchCollector ().addQuad ( this.batch, quad ) )
+				this.batchInfo.add ( 1, RDFSizeEstimator.estimate ( quad ) );
+		}
+
+		@Override
+		public void base ( String base ) {}
+
+		/**
+		 * Populates the current batch with this prefix def.
+		 */
+		@Override
+		public void prefix ( String prefix, String iri )
+		{
+			getBatchCollector ().addPrefix ( this.batch, prefix, iri );
+		}
+
+		@Override
+		public void finish () 
+		{
+			if ( !pipelineChunk.isEmpty () ) submitPipelineChunk ();
+			while ( !pipelineResults.isEmpty () ) drainPipelineResult ();
+			checkBatch ( true );
+		}
+		
+		/**
+		 * Tracks the position of the current statement, returns true if it has to be skipped.
+		 */
+		private boolean skip ()
+		{
+			if ( ordinal < 0 || ordinal >= skipUntil ) return false;
+			ordinal++;
+			return true;
+		}
+		
+		/**
+		 * Called after an input statement has been added to the current batch, as zero or more statements. 
+		 * 
+		 * The statement is counted in the current batch, even when it's dropped by the pipeline or as a 
+		 * duplicate, so that the batches cover contiguous input ranges, as the checkpoint needs. For the same 
+		 * reason, a batch can only be submitted here, after all the outputs of an input statement.
+		 */
+		private void inputConsumed ()
+		{
+			if ( ordinal >= 0 )
+			{
+				if ( batchInfo.getFirstOrdinal () < 0 ) batchInfo.setFirstOrdinal ( ordinal );
+				batchInfo.addInputStatements ( 1 );
+				ordinal++;
+			}
+			checkBatch ( false );
+		}
+		
+		/**
+		 * Sends the current chunk to the pipeline threads. If too many chunks are pending, waits for the oldest
+		 * one first, which also limits the memory used by the pipeline.
+		 */
+		private void submitPipelineChunk ()
+		{
+			if ( pipelineResults.size () >= 2 * pipelineThreads ) drainPipelineResult ();
+			
+			List<Object> chunk = pipelineChunk;
+			pipelineChunk = new ArrayList<> ( PIPELINE_CHUNK_SIZE );
+			pipelineResults.add ( pipelinePool.submit ( () -> TransformedChunk.of ( chunk, triplePipeline ) ) );
+		}
+		
+		/**
+		 * Waits for the oldest pipeline chunk and adds its results to the batches.
+		 */
+		private void drainPipelineResult ()
+		{
+			TransformedChunk result;
+			try {
+				result = pipelineResults.poll ().get ();
+			}
+			catch ( InterruptedException ex ) {
+				Thread.currentThread ().interrupt ();
+				throw new RuntimeException ( "RDF loader interrupted while waiting for the triple pipeline", ex );
+			}
+			catch ( ExecutionException ex ) 
+			{
+				Throwable cause = ex.getCause ();
+				if ( cause instanceof RuntimeException rex ) throw rex;
+				if ( cause instanceof Error err ) throw err;
+				throw new RuntimeException ( "Error from the RDF triple pipeline: " + cause.getMessage (), cause );
+			}
+			
+			int outIdx = 0;
+			for ( int outCount: result.outputCounts () )
+			{
+				for ( int i = 0; i < outCount; i++ ) addStatement ( result.outputs ().get ( outIdx++ ) );
+				inputConsumed ();
+			}
+		}
+		
+		/**
+		 * Submits the current batch when it's ready, or when it's the last one. Empty batches are never submitted.
+		 */
+		private void checkBatch ( boolean isLast )
+		{
+			if ( batchInfo.getTriples () == 0 ) 
+			{
+				// Only dropped statements at the end, nothing to load, but the checkpoint must know they were processed
+				if ( isLast && checkpoint != null && batchInfo.getInputStatements () > 0 )
+					checkpoint.batchCompleted ( batchInfo.getFirstOrdinal (), batchInfo.getInputStatements () );
+				return;
+			}
+			if ( !( isLast || getBatchCollector ().isBatchReady ( batch, batchInfo ) ) ) return;
+			
+			creationEvent.end ();
+			if ( creationEvent.shouldCommit () ) {
+				creationEvent.set ( batchInfo );
+				creationEvent.commit ();
+			}
+			
+			B nextBatch = submitBatch ( batch, batchInfo );
+			if ( !isLast ) newBatch ( nextBatch );
+		}
+		
+		private void newBatch ( B batch )
+		{
+			this.batch = batch;
+			this.batchInfo = new RDFBatchInfo ();
+			this.creationEvent = new RDFBatchCreationEvent ();
+			this.creationEvent.begin ();
+		}
+	}
+	
+	private int parserThreads = Runtime.getRuntime ().availableProcessors ();
+	
+	private InFlightLimiter inFlightLimiter = new InFlightLimiter ();
+	
+	private AdaptiveBatchSizeController batchSizeController = null;
+	
+	private RDFLoadCheckpoint checkpoint = null;
+	
+	private DuplicateTripleFilter duplicateFilter = null;
+	
+	private NodeDictionary nodeDictionary = null;
+	
+	private TriplePipeline triplePipeline = null;
+	
+	private int pipelineThreads = 0;
+	
+	/** Created by {@link #runLoad(Runnable)} when {@link #getPipelineThreads()} is used */
+	private ExecutorService pipelinePool = null;
+	
+	private int virtualThreadJobs = 0;
+	
+	/** Created by {@link #runLoad(Runnable)} when {@link #getVirtualThreadJobs()} is used */
+	private ExecutorService virtualJobExecutor = null;
+	private Semaphore virtualJobPermits = null;
+	private final AtomicReference<Throwable> virtualJobError = new AtomicReference<> ();
+	
+	/** The sequence number of the next submitted batch, see {@link RDFBatchInfo#getSequence()} */
+	private long nextBatchSequence = 0;
+	private final Object batchSequenceLock = new Object ();
+	
+	private final RDFLoaderMetrics metrics = new RDFLoaderMetrics ( this );
+	
+	/**
+	 * The batches submitted to the batch job and not yet picked by it, used to pass their info to the job.
+	 */
+	private final Map<B, RDFBatchInfo> submittedBatches = Collections.synchronizedMap ( new IdentityHashMap<> () );
+	
+		
+	protected AbstractRDFStreamLoader ( BJ batchJob, BC batchCollector ) {
+		super ( batchJob, batchCollector );
+	}
+	
+
+	public void process ( InputStream rdfInput, Object... opts )
+	{
+		String base = null;
+		Lang lang = null;
+
+		if ( opts != null )
+		{
+			if ( opts.length > 0 && opts [ 0 ] != null )
+			{
+				if ( !( opts [ 0 ] instanceof String ) ) 
+					throw new IllegalArgumentException ( String.format (
+						"base param wrong type %s RDFStreamLoader accepts String base and Lang lang as parameters, " +
+						"check the documentation",
+						opts [ 0 ].getClass ().getName ()
+					));
+				base = (String) opts [ 0 ];
+			}
+			if ( opts.length > 1 && opts [ 1 ] != null )
+			{
+				if ( !( opts [ 1 ] instanceof Lang ) ) 
+					throw new IllegalArgumentException ( String.format (
+						"base param wrong type %s RDFStreamLoader accepts String base and Lang lang as parameters, " +
+						"check the documentation",
+						opts [ 0 ].getClass ().getName ()
+					));
+				lang = (Lang) opts [ 1 ];
+			}
+		}
+		
+		process ( rdfInput, base, lang );
+	}
+	
+	/**
+	 * Uses the {@link RDFDataMgr} to parse the input and send chunks of it to {@link #getBatchJob() processors}.
+	 * base and hintLang are the usual Jena parameters accepted by the 
+	 * {@link RDFDataMgr#parse(StreamRDF, InputStream, String, Lang) RDF parsers}. 
+	 * 
+	 * @see {@link JenaIoUtils#getLangOrFormat(String)}, to convert a string to a {@link Lang} object.
+	 * 
+	 */
+	public void process ( InputStream rdfInput, String base, Lang hintLang )
+	{
+		if ( checkpoint == null ) {
+			runLoad ( () -> parse ( rdfInput, base, hintLang, 0, 0, null ) );
+			return;
+		}
+		
+		// The batch job might have been changed after setCheckpoint()
+		checkCheckpointJob ( checkpoint, getBatchJob () );
+		
+		// We can't seek an anonymous stream, so we skip what was already loaded
+		checkpoint.start ( null, null );
+		long skipUntil = checkpoint.getCommittedTriples ();
+		if ( skipUntil > 0 ) log.info ( "Resuming the RDF loading, skipping {} statement(s) already loaded", skipUntil );
+		runLoad ( () -> parse ( rdfInput, base, hintLang, 0, skipUntil, checkpoint.getBnodeSeed () ) );
+	}
+	
+	/**
+	 * Sends the input to a new {@link StreamReader}, without any {@link #runLoad(Runnable) set up or waiting}.
+	 * 
+	 * @param firstOrdinal see {@link StreamReader#StreamReader(long, long)}.
+	 * @param skipUntil see {@link StreamReader#StreamReader(long, long)}.
+	 * @param bnodeSeed if not null, blank nodes are generated from this seed, see {@link RDFLoadCheckpoint#getBnodeSeed()}.   
+	 */
+	private void parse ( 
+		InputStream rdfInput, String base, Lang hintLang, long firstOrdinal, long skipUntil, UUID bnodeSeed 
+	)
+	{
+		StreamReader streamReader = new StreamReader ( firstOrdinal, skipUntil );
+		// This is as suggested by previously-deprecated method in RDFStreamLoader
+		RDFParserBuilder parser = RDFParser.source ( metrics.countingInputStream ( rdfInput ) ).lang ( hintLang ).base ( base );
+		if ( bnodeSeed != null ) parser.labelToNode ( LabelToNode.createScopeByDocumentHash ( bnodeSeed ) );
+		parser.parse ( streamReader );
+	}
+	
+	/**
+	 * Loads a file, which is {@link JenaIoUtils#openInputStream(Path) decompressed} if needed. 
+	 * 
+	 * @param hintLang if null, it's guessed from the file name, ignoring compression extensions (see 
+	 * {@link JenaIoUtils#guessLang(String)}).
+	 */
+	public void process ( File rdfFile, String base, Lang hintLang )
+	{
+		if ( hintLang == null ) hintLang = JenaIoUtils.guessLang ( rdfFile.getName () );
+		
+		try ( InputStream in = JenaIoUtils.openInputStream ( rdfFile.toPath () ) ) 
+		{
+			if ( checkpoint == null ) this.process ( in, base, hintLang );
+			else processFromCheckpoint ( rdfFile, in, base, hintLang );
+		}
+		catch ( IOException ex ) {
+			throw new UncheckedIOException ( String.format ( 
+				"Error while reading file '%s': %s",
+				Optional.ofNullable ( rdfFile ).map ( File::getAbsolutePath ).orElse ( "<null>" ),
+				ex.getMessage () ), 
+				ex 
+			);
+		}
+	}
+	
+	/**
+	 * Resumes a file loading from the {@link #getCheckpoint() checkpoint}. For line-based formats, this seeks the 
+	 * input to the first statement not loaded yet, for the other formats, the already-loaded statements are skipped 
+	 * while parsing.
+	 */
+	private void processFromCheckpoint ( File rdfFile, InputStream rdfInput, String base, Lang lang ) throws IOException
+	{
+		String inputLabel = rdfFile.getAbsolutePath ();
+		checkCheckpointJob ( checkpoint, getBatchJob () );
+		checkpoint.checkInput ( inputLabel );
+		long committedTriples = checkpoint.getCommittedTriples ();
+		
+		if ( !LineBasedChunker.isLineBased ( lang ) ) 
+		{
+			checkpoint.start ( inputLabel, null );
+			if ( committedTriples > 0 ) log.info ( 
+				"Resuming the loading of '{}', skipping {} statement(s) already loaded", inputLabel, committedTriples 
+			);
+			runLoad ( () -> parse ( rdfInput, base, lang, 0, committedTriples, checkpoint.getBnodeSeed () ) );
+			return;
+		}
+		
+		// Line-based, use the offset, or find it by scanning lines, which is much faster than parsing
+		// The checkpoint uses a second scanner to track the offsets of what's loaded next.
+		long offset = checkpoint.getCommittedOffset ();
+		LineBasedChunker.StatementScanner offsetScanner = null;
+		if ( JenaIoUtils.isCompressed ( rdfFile.toPath () ) )
+		{
+			// Tracking the offsets of a compressed file would mean decompressing it twice, so we only scan 
+			// up to the resuming point, and the next resume will have to do it again.
+			if ( committedTriples == 0 ) offset = 0;
+			else if ( offset < 0 ) 
+			{
+				try ( var scanner = new LineBasedChunker.StatementScanner ( JenaIoUtils.openInputStream ( rdfFile.toPath () ) ) ) {
+					offset = scanner.advanceTo ( committedTriples );
+				}
+			}
+		}
+		else if ( committedTriples > 0 && offset >= 0 ) 
+		{
+			InputStream scannerIn = JenaIoUtils.openInputStream ( rdfFile.toPath () );
+			scannerIn.skipNBytes ( offset );
+			offsetScanner = new LineBasedChunker.StatementScanner ( scannerIn, offset, committedTriples );
+		}
+		else 
+		{
+			offsetScanner = new LineBasedChunker.StatementScanner ( JenaIoUtils.openInputStream ( rdfFile.toPath () ) );
+			offset = offsetScanner.advanceTo ( committedTriples );
+		}
+		
+		try {
+			rdfInput.skipNBytes ( offset );
+			checkpoint.start ( inputLabel, offsetScanner );
+		}
+		catch ( IOException | RuntimeException ex ) {
+			if ( offsetScanner != null ) offsetScanner.close ();
+			throw ex;
+		}
+		
+		if ( committedTriples > 0 ) log.info ( 
+			"Resuming the loading of '{}' from statement #{}, byte offset {}", inputLabel, committedTriples, offset 
+		);
+		runLoad ( () -> parse ( rdfInput, base, lang, committedTriples, 0, checkpoint.getBnodeSeed () ) );
+	}
+	
+	public void process ( File rdfFile ) {
+		this.process ( rdfFile, null, null );
+	}
+
+	
+	public void process ( String rdfFilePath, String base, Lang hintLang ) {
+		this.process ( new File ( rdfFilePath ), base, hintLang );
+	}
+	
+	public void process ( String rdfFilePath ) {
+		this.process ( rdfFilePath, null, null );
+	}
+
+	
+	/**
+	 * <p>Parses a line-based RDF file (N-Triples or N-Quads) using multiple {@link #getParserThreads() parser threads}.</p>
+	 * 
+	 * <p>The file is split into {@link LineBasedChunker newline-aligned byte ranges}, each range is memory-mapped and 
+	 * parsed by its own {@link StreamReader}, which sends its own batches to the {@link #getBatchJob() batch job}.
+	 * Blank node labels are resolved the same way across all the ranges, so that the same label in two different
+	 * ranges yields the same blank node, as it happens when the file is parsed sequentially.</p>
+	 * 
+	 * <p>Since the ranges are parsed independently, the batches don't follow the input order.</p>
+	 * 
+	 * <p>Compressed files can't be split this way, so they're loaded with {@link #process(File, String, Lang)}, 
+	 * which decompresses them in parallel with parsing. This is checked by {@link JenaIoUtils#isCompressed(Path)},
+	 * so it works with compressed files that don't have a compression extension too.</p>
+	 * 
+	 * @param lang must be {@link LineBasedChunker#isLineBased(Lang) line-based}. If it's null, it's guessed from
+	 * the file name.
+	 */
+	public void processParallel ( File rdfFile, String base, Lang lang )
+	{
+		if ( lang == null ) lang = JenaIoUtils.guessLang ( rdfFile.getName () );
+		if ( !LineBasedChunker.isLineBased ( lang ) ) throw new IllegalArgumentException ( String.format ( 
+			"Can't parse '%s' in parallel, the RDF format %s isn't line-based", rdfFile.getAbsolutePath (), lang
+		));
+		
+		if ( isCompressed ( rdfFile ) )
+		{
+			log.warn ( "Can't split the compressed file '{}', parsing it sequentially", rdfFile.getAbsolutePath () );
+			process ( rdfFile, base, lang );
+			return;
+		}
+		if ( checkpoint != null )
+		{
+			log.warn ( 
+				"Checkpoints need sequential parsing, parsing '{}' sequentially", rdfFile.getAbsolutePath () 
+			);
+			process ( rdfFile, base, lang );
+			return;
+		}
+		final Lang flang = lang;
+		
+		runLoad ( () -> parseParallel ( rdfFile, base, flang ) );
+	}
+	
+	/**
+	 * Uses {@link JenaIoUtils#isCompressed(Path)}, so that compressed files without a compression extension
+	 * aren't split.
+	 */
+	private static boolean isCompressed ( File rdfFile )
+	{
+		try {
+			return JenaIoUtils.isCompressed ( rdfFile.toPath () );
+		}
+		catch ( IOException ex ) {
+			throw new UncheckedIOException ( String.format ( 
+				"Error while reading file '%s': %s", rdfFile.getAbsolutePath (), ex.getMessage () ), 
+				ex 
+			);
+		}
+	}
+	
+	private void parseParallel ( File rdfFile, String base, Lang lang )
+	{
+		try ( FileChannel channel = FileChannel.open ( rdfFile.toPath (), StandardOpenOption.READ ) )
+		{
+			// All the ranges need to use the same label -> bnode mapping, a fixed seed does it, without having 
+			// to share any label table.
+			UUID bnodeSeed = UUID.randomUUID ();
+			
+			List<Callable<Void>> parseTasks = new ArrayList<> ();
+			for ( LineBasedChunker.Chunk chunk: LineBasedChunker.split ( channel, parserThreads ) )
+				parseTasks.add ( () -> 
+				{
+					MappedByteBuffer buf = channel.map ( FileChannel.MapMode.READ_ONLY, chunk.start (), chunk.size () );
+					RDFParser.source ( metrics.countingInputStream ( LineBasedChunker.asInputStream ( buf ) ) )
+						.lang ( lang )
+						.base ( base )
+						.labelToNode ( LabelToNode.createScopeByDocumentHash ( bnodeSeed ) )
+						.parse ( new StreamReader () );
+					return null;
+				});
+			
+			runParsers ( parseTasks, "'" + rdfFile.getAbsolutePath () + "'" );
+		}
+		catch ( IOException ex ) {
+			throw new UncheckedIOException ( String.format ( 
+				"Error while reading file '%s': %s", rdfFile.getAbsolutePath (), ex.getMessage () ), 
+				ex 
+			);
+		}
+	}
+	
+	/**
+	 * Runs parsing tasks using {@link #getParserThreads()} threads and waits for all of them. If one of them
+	 * fails, the others are stopped and the error is re-thrown.
+	 * 
+	 * @param inputLabel used for error messages.
+	 */
+	private void runParsers ( List<Callable<Void>> parseTasks, String inputLabel )
+	{
+		ExecutorService parsers = Executors.newFixedThreadPool ( parserThreads );
+		try 
+		{
+			List<Future<Void>> results = new ArrayList<> ();
+			for ( Callable<Void> parseTask: parseTasks ) results.add ( parsers.submit ( parseTask ) );
+			for ( Future<Void> result: results ) result.get ();
+		}
+		catch ( InterruptedException ex ) {
+			Thread.currentThread ().interrupt ();
+			throw new RuntimeException ( "Parallel RDF parsing interrupted", ex );
+		}
+		catch ( ExecutionException ex ) 
+		{
+			Throwable cause = ex.getCause ();
+			if ( cause instanceof RuntimeException rex ) throw rex;
+			if ( cause instanceof Error err ) throw err;
+			throw new RuntimeException ( String.format ( 
+				"Error while parsing %s in parallel: %s", inputLabel, cause.getMessage () ),
+				cause
+			);
+		}
+		finally {
+			parsers.shutdownNow ();
+		}
+	}
+	
+	public void processParallel ( String rdfFilePath, String base, Lang lang ) {
+		this.processParallel ( new File ( rdfFilePath ), base, lang );
+	}
+
+	public void processParallel ( String rdfFilePath ) {
+		this.processParallel ( rdfFilePath, null, null );
+	}
+
+	
+	/**
+	 * <p>Loads all the RDF files in a directory, parsing up to {@link #getParserThreads()} files at the same time.
+	 * This is similar to Virtuoso's <code>ld_dir()</code> and <code>ld_dir_all()</code>, all the files send their 
+	 * batches to the same {@link #getBatchJob() batch job}.</p>
+	 * 
+	 * <p>The RDF format of every file is guessed from its extension and the files with unknown extensions are 
+	 * skipped, with a warning.</p>
+	 * 
+	 * @param recursive if true, the sub-directories are loaded too.
+	 * @param filter if not null, only the files matching it are considered. The filter is tried both against the 
+	 *        path relative to dir and against the file name, so that both "glob:*.nt" and "glob:&#42;&#42;/foo/*.nt"
+	 *        work as expected.
+	 */
+	public void process ( Path dir, boolean recursive, PathMatcher filter )
+	{
+		if ( checkpoint != null ) throw new IllegalStateException ( 
+			"RDFStreamLoader, checkpoints aren't supported when loading a directory" 
+		);
+		
+		List<Path> rdfFiles = listRDFFiles ( dir, recursive, filter );
+		log.info ( "Loading {} RDF file(s) from '{}'", rdfFiles.size (), dir.toAbsolutePath () );
+		
+		List<Callable<Void>> parseTasks = new ArrayList<> ();
+		for ( Path rdfFile: rdfFiles )
+			parseTasks.add ( () -> 
+			{
+				log.info ( "Loading '{}'", rdfFile );
+				Lang lang = JenaIoUtils.guessLang ( rdfFile.getFileName ().toString () );
+				try ( InputStream in = JenaIoUtils.openInputStream ( rdfFile ) ) {
+					parse ( in, null, lang, 0, 0, null );
+				}
+				return null;
+			});
+		
+		runLoad ( () -> runParsers ( parseTasks, "the directory '" + dir.toAbsolutePath () + "'" ) );
+	}
+	
+	public void process ( Path dir, boolean recursive ) {
+		process ( dir, recursive, null );
+	}
+	
+	/**
+	 * Used by {@link #process(Path, boolean, PathMatcher)}.
+	 */
+	private List<Path> listRDFFiles ( Path dir, boolean recursive, PathMatcher filter )
+	{
+		try ( Stream<Path> paths = Files.walk ( dir, recursive ? Integer.MAX_VALUE : 1 ) ) 
+		{
+			return paths
+				.filter ( Files::isRegularFile )
+				.filter ( path -> filter == null 
+					|| filter.matches ( dir.relativize ( path ) ) || filter.matches ( path.getFileName () ) 
+				)
+				.filter ( path -> 
+				{
+					if ( JenaIoUtils.guessLang ( path.getFileName ().toString () ) != null ) return true;
+					log.warn ( "Skipping '{}', can't guess its RDF format", path );
+					return false;
+				})
+				.sorted ()
+				.toList ();
+		}
+		catch ( IOException ex ) {
+			throw new UncheckedIOException ( String.format ( 
+				"Error while listing the directory '%s': %s", dir.toAbsolutePath (), ex.getMessage () ), 
+				ex 
+			);
+		}
+	}
+
+	
+	/**
+	 * <p>Runs the parsing code in the parameter, which is expected to send data to one or more stream readers, 
+	 * then waits for the batch jobs to finish. All the process() methods are based on this.</p>
+	 * 
+	 * <p>During the execution, the {@link #getBatchJob() batch job} is temporarily replaced by a 
+	 * {@link #decorateBatchJob(Consumer) wrapper}, which does operations like the {@link #getInFlightLimiter() 
+	 * flow control}.</p>
+	 */
+	protected void runLoad ( Runnable parser )
+	{
+		// Before anything else, since it might reject the configuration
+		if ( batchSizeController != null ) batchSizeController.reset ();
+		
+		// Before the limiter reset, see RDFLoaderMetrics.loadStarted()
+		metrics.loadStarted ();
+		inFlightLimiter.reset ();
+		submittedBatches.clear ();
+		nextBatchSequence = 0;
+		
+		BJ batchJob = this.getBatchJob ();
+		if ( batchJob instanceof SequencedBatchJob<?> sequencedJob ) sequencedJob.loadStarted ();
+		this.setBatchJob ( decorateBatchJob ( batchJob ) );
+		if ( triplePipeline != null && pipelineThreads > 0 ) 
+			pipelinePool = Executors.newFixedThreadPool ( pipelineThreads );
+		if ( virtualThreadJobs > 0 )
+		{
+			virtualJobExecutor = Executors.newVirtualThreadPerTaskExecutor ();
+			virtualJobPermits = new Semaphore ( virtualThreadJobs );
+			virtualJobError.set ( null );
+		}
+		try 
+		{
+			parser.run ();
+			if ( virtualJobExecutor == null ) this.waitExecutor ( "Waiting for all RDF import jobs to finish" );
+			else waitVirtualJobs ();
+			// Before the checkpoint is finished, so that it can record the last batches
+			if ( batchJob instanceof AsyncBatchJob<?> asyncJob ) asyncJob.flush ();
+		}
+		finally 
+		{
+			if ( pipelinePool != null ) {
+				pipelinePool.shutdownNow ();
+				pipelinePool = null;
+			}
+			if ( virtualJobExecutor != null ) 
+			{
+				virtualJobExecutor.shutdownNow ();
+				virtualJobExecutor = null;
+				virtualJobPermits = null;
+			}
+			this.setBatchJob ( batchJob );
+			submittedBatches.clear ();
+			if ( checkpoint != null ) checkpoint.finish ();
+			metrics.loadFinished ();
+		}
+		
+		log.info ( "RDF import terminated" );
+		log.info ( "RDF import statistics: {}", metrics );
+		if ( inFlightLimiter.getStalls () > 0 ) log.info ( 
+			"The RDF parser was stalled {} time(s), waiting for batch jobs, for a total of {} ms",
+			inFlightLimiter.getStalls (), inFlightLimiter.getStallTime ( TimeUnit.MILLISECONDS )
+		);
+		if ( batchSizeController != null ) batchSizeController.logSummary ();
+		if ( duplicateFilter != null ) log.info ( "RDF duplicate filter, cumulative statistics: {}", duplicateFilter );
+		if ( nodeDictionary != null ) log.info ( "RDF node dictionary, cumulative statistics: {}", nodeDictionary );
+	}
+	
+	/**
+	 * Sends a batch to the batch job, after having waited for the {@link #getInFlightLimiter() flow control}.
+	 * 
+	 * @return a new batch to be filled by the caller.
+	 */
+	private B submitBatch ( B batch, RDFBatchInfo batchInfo )
+	{
+		try {
+			inFlightLimiter.acquire ( batchInfo.getEstimatedBytes () );
+		}
+		catch ( InterruptedException ex ) {
+			Thread.currentThread ().interrupt ();
+			throw new RuntimeException ( "RDF loader interrupted while waiting for batch jobs", ex );
+		}
+		
+		try 
+		{
+			// The sequence must reflect the order in which the jobs are handed to the executor, else, with 
+			// multiple parsers, an ordered job might wait for a batch that isn't started yet
+			synchronized ( batchSequenceLock ) 
+			{
+				batchInfo.setSequence ( nextBatchSequence++ );
+				if ( getBatchCollector () instanceof AbstractSizedBatchCollector<?> sizedCollector )
+					batchInfo.setMaxBatchSize ( sizedCollector.getMaxBatchSize () );
+				submittedBatches.put ( batch, batchInfo );
+				metrics.batchCreated ( batchInfo );
+				if ( virtualJobExecutor == null ) return handleNewBatch ( batch, true );
+				return submitVirtualJob ( batch );
+			}
+		}
+		catch ( RuntimeException ex ) 
+		{
+			submittedBatches.remove ( batch );
+			inFlightLimiter.release ( batchInfo.getEstimatedBytes () );
+			releaseBatch ( batch );
+			throw ex;
+		}
+	}
+	
+	/**
+	 * The {@link #getVirtualThreadJobs() virtual thread} variant of {@link #handleNewBatch(Object, boolean)}, which
+	 * waits for a free permit and then starts the batch job in a new virtual thread. 
+	 */
+	private B submitVirtualJob ( B batch )
+	{
+		Throwable jobError = virtualJobError.get ();
+		if ( jobError != null ) throw new RuntimeException ( 
+			"RDF loader stopped, due to a batch job error: " + jobError.getMessage (), jobError 
+		);
+		
+		try {
+			virtualJobPermits.acquire ();
+		}
+		catch ( InterruptedException ex ) {
+			Thread.currentThread ().interrupt ();
+			throw new RuntimeException ( "RDF loader interrupted while waiting for batch jobs", ex );
+		}
+		
+		Consumer<B> batchJob = this.getBatchJob ();
+		try 
+		{
+			virtualJobExecutor.execute ( () -> 
+			{
+				try {
+					batchJob.accept ( batch );
+				}
+				catch ( RuntimeException | Error ex ) 
+				{
+					log.error ( "Error while running an RDF batch job: " + ex.getMessage (), ex );
+					virtualJobError.compareAndSet ( null, ex );
+				}
+				finally {
+					virtualJobPermits.release ();
+				}
+			});
+		}
+		catch ( RuntimeException ex ) {
+			virtualJobPermits.release ();
+			throw ex;
+		}
+		return getBatchCollector ().batchFactory ().get ();
+	}
+	
+	/**
+	 * The {@link #getVirtualThreadJobs() virtual thread} variant of {@link #waitExecutor(String)}. If a job failed,
+	 * re-throws its exception.
+	 */
+	private void waitVirtualJobs ()
+	{
+		log.info ( "Waiting for all RDF import jobs to finish" );
+		virtualJobExecutor.shutdown ();
+		try {
+			while ( !virtualJobExecutor.awaitTermination ( 1, TimeUnit.MINUTES ) ) 
+				log.info ( "Still waiting for {} RDF import job(s)", virtualThreadJobs - virtualJobPermits.availablePermits () );
+		}
+		catch ( InterruptedException ex ) {
+			Thread.currentThread ().interrupt ();
+			throw new RuntimeException ( "RDF loader interrupted while waiting for batch jobs", ex );
+		}
+		
+		Throwable jobError = virtualJobError.get ();
+		if ( jobError instanceof RuntimeException rex ) throw rex;
+		if ( jobError instanceof Error err ) throw err;
+	}
+	
+	/**
+	 * Wraps the batch job with the operations that the loader needs to do around every batch, such as 
+	 * {@link InFlightLimiter#release(long) releasing} the batch from the flow control, or reporting its 
+	 * latency to the {@link #getBatchSizeController() batch size controller}.
+	 * 
+	 * The result is a {@link Consumer} that is cast to BJ. This is safe as long as the batch processing 
+	 * infrastructure only needs it as a consumer.   
+	 */
+	@SuppressWarnings ( "unchecked" )
+	private BJ decorateBatchJob ( BJ batchJob )
+	{
+		RDFLoadCheckpoint checkpoint = this.checkpoint;
+		Consumer<B> result = batch ->
+		{
+			RDFBatchInfo batchInfo = submittedBatches.remove ( batch );
+			Runnable onCompletion = checkpoint == null || batchInfo == null 
+				? () -> {}
+				: () -> checkpoint.batchCompleted ( batchInfo.getFirstOrdinal (), batchInfo.getInputStatements () );
+			RDFBatchJobEvent jobEvent = new RDFBatchJobEvent ();
+			jobEvent.begin ();
+			long start = System.nanoTime ();
+			boolean isFailed = true;
+			try 
+			{
+				if ( batchJob instanceof AsyncBatchJob<?> )
+					// It will tell the checkpoint when the batch is really done
+					( (AsyncBatchJob<B>) batchJob ).accept ( batch, onCompletion );
+				else 
+				{
+					if ( batchJob instanceof SequencedBatchJob<?> && batchInfo != null )
+						( (SequencedBatchJob<B>) batchJob ).accept ( batch, batchInfo.getSequence () );
+					else
+						batchJob.accept ( batch );
+					onCompletion.run ();
+				}
+				isFailed = false;
+			}
+			finally 
+			{
+				if ( batchInfo != null ) 
+				{
+					jobEvent.end ();
+					if ( jobEvent.shouldCommit () ) 
+					{
+						jobEvent.set ( batchInfo );
+						jobEvent.failed = isFailed;
+						jobEvent.commit ();
+					}
+					metrics.batchCompleted ( System.nanoTime () - start, isFailed );
+					inFlightLimiter.release ( batchInfo.getEstimatedBytes () );
+					if ( batchSizeController != null ) 
+						batchSizeController.batchCompleted ( batchInfo, System.nanoTime () - start );
+				}
+				releaseBatch ( batch );
+			}
+		};
+		return (BJ) result;
+	}
+	
+	/**
+	 * Called after the batch job has finished with a batch (successfully or not), or if the batch couldn't be 
+	 * submitted. This is for batch types that hold resources, which should be released deterministically, such 
+	 * as {@link OffHeapTripleBatch}. Does nothing by default. 
+	 */
+	protected void releaseBatch ( B batch ) {
+	}
+
+	
+	/**
+	 * The number of threads used by the parallel parsing methods, such as 
+	 * {@link #processParallel(File, String, Lang)}. Defaults to the number of available processors.
+	 */
+	public int getParserThreads ()
+	{
+		return parserThreads;
+	}
+
+	public void setParserThreads ( int parserThreads )
+	{
+		if ( parserThreads < 1 ) throw new IllegalArgumentException ( 
+			"RDFStreamLoader, can't set the parser threads to " + parserThreads 
+		);
+		this.parserThreads = parserThreads;
+	}
+
+	/**
+	 * The flow control between the parser and the batch jobs. Use this to set limits on the batches in flight, 
+	 * eg, <code>loader.getInFlightLimiter ().setMaxBatches ( 10 )</code>, and to know how much the parser 
+	 * was stalled by them. By default, there are no limits.
+	 */
+	public InFlightLimiter getInFlightLimiter ()
+	{
+		return inFlightLimiter;
+	}
+
+	public void setInFlightLimiter ( InFlightLimiter inFlightLimiter )
+	{
+		this.inFlightLimiter = inFlightLimiter;
+	}
+
+	/**
+	 * If set, this adapts the batch size during the loading, based on the performance of the batch jobs.  
+	 * Default is null, ie, the batch size is fixed. 
+	 */
+	public AdaptiveBatchSizeController getBatchSizeController ()
+	{
+		return batchSizeController;
+	}
+
+	public void setBatchSizeController ( AdaptiveBatchSizeController batchSizeController )
+	{
+		this.batchSizeController = batchSizeController;
+	}
+
+	/**
+	 * Metrics about the current or last loading, which can also be published via JMX or Micrometer, see 
+	 * {@link RDFLoaderMetrics}.
+	 */
+	public RDFLoaderMetrics getMetrics ()
+	{
+		return metrics;
+	}
+	
+	/**
+	 * The batches submitted to the executor and not yet picked by the batch job, used by {@link RDFLoaderMetrics}.
+	 */
+	long getQueuedBatches ()
+	{
+		return submittedBatches.size ();
+	}
+	
+	/**
+	 * If set, the loader records its progress in this checkpoint and, if the checkpoint already has some progress, 
+	 * it resumes the loading from there. This works with the sequential process() methods only, 
+	 * {@link #processParallel(File, String, Lang)} falls back to sequential parsing when there is a checkpoint. 
+	 * Default is null.
+	 * 
+	 * <p>A batch is recorded as done when the batch job returns or, for an {@link AsyncBatchJob}, when the job 
+	 * reports it. A checkpoint can't be used with a {@link DeferredBatchJob}, see the 
+	 * {@link RDFLoadCheckpoint} warnings.</p> 
+	 */
+	public RDFLoadCheckpoint getCheckpoint ()
+	{
+		return checkpoint;
+	}
+
+	public void setCheckpoint ( RDFLoadCheckpoint checkpoint )
+	{
+		checkCheckpointJob ( checkpoint, this.getBatchJob () );
+		this.checkpoint = checkpoint;
+	}
+	
+	/**
+	 * @throws IllegalArgumentException if there is a {@link #getCheckpoint() checkpoint} and the batch job
+	 * is a {@link DeferredBatchJob}, which would make the checkpoint to record batches that aren't loaded yet.
+	 */
+	private static void checkCheckpointJob ( RDFLoadCheckpoint checkpoint, Consumer<?> batchJob )
+	{
+		if ( checkpoint == null || !( batchJob instanceof DeferredBatchJob ) ) return;
+		throw new IllegalArgumentException ( String.format ( 
+			"The batch job %s completes its batches only when it's closed, it can't be used with an RDF load checkpoint",
+			batchJob.getClass ().getSimpleName ()
+		));
+	}
+
+	/**
+	 * <p>If set, the statements that the filter recognises as duplicates are dropped before they reach the batches. 
+	 * Default is null, ie, all the statements are loaded.</p>
+	 * 
+	 * <p>The filter isn't reset between loadings, so that it can remove duplicates across multiple inputs. With 
+	 * a {@link #getCheckpoint() checkpoint}, the dropped statements count as processed, but the filter state 
+	 * isn't saved, so, after resuming, the duplicates of already-loaded statements aren't recognised. This is 
+	 * usually harmless with targets like TDB, which ignore duplicates anyway.</p>
+	 */
+	public DuplicateTripleFilter getDuplicateFilter ()
+	{
+		return duplicateFilter;
+	}
+
+	public void setDuplicateFilter ( DuplicateTripleFilter duplicateFilter )
+	{
+		this.duplicateFilter = duplicateFilter;
+	}
+
+	/**
+	 * <p>If &gt; 0, the batch jobs are run in virtual threads, with at most this many jobs running at the same time,
+	 * instead of the executor inherited from {@link BatchProcessor}. When the limit is reached, the parser waits 
+	 * for a job to finish.</p>
+	 * 
+	 * <p>This is useful with I/O-bound jobs (eg, writing to a database or calling a web service), which can then
+	 * run with a high concurrency (hundreds of jobs), without the memory and scheduling cost of as many platform 
+	 * threads. It isn't useful for CPU-bound jobs, and jobs that hold locks (<code>synchronized</code> blocks, in 
+	 * particular) while doing I/O might pin the carrier threads.</p>
+	 * 
+	 * <p>If a job fails, the loading is stopped and the error is re-thrown by the process() method. 
+	 * Default is 0, ie, the inherited executor is used.</p>
+	 */
+	public int getVirtualThreadJobs ()
+	{
+		return virtualThreadJobs;
+	}
+
+	public void setVirtualThreadJobs ( int virtualThreadJobs )
+	{
+		if ( virtualThreadJobs < 0 ) throw new IllegalArgumentException ( 
+			"RDFStreamLoader, can't set the virtual thread jobs to " + virtualThreadJobs 
+		);
+		this.virtualThreadJobs = virtualThreadJobs;
+	}
+
+	/**
+	 * If set, the nodes of the statements added to the batches are interned by this dictionary, so that repeated
+	 * IRIs (and, optionally, literals) aren't duplicated in memory. As for the 
+	 * {@link #getDuplicateFilter() duplicate filter}, the dictionary is kept across loadings and it can be shared 
+	 * with the batch jobs (eg, to get node ids). Default is null.
+	 */
+	public NodeDictionary getNodeDictionary ()
+	{
+		return nodeDictionary;
+	}
+
+	public void setNodeDictionary ( NodeDictionary nodeDictionary )
+	{
+		this.nodeDictionary = nodeDictionary;
+	}
+
+	/**
+	 * If set, every parsed statement goes through this pipeline, and its results are added to the batches, 
+	 * (then {@link #getDuplicateFilter() deduplicated}, if a filter is set). Default is null, ie, the statements
+	 * are loaded as they are. 
+	 */
+	public TriplePipeline getTriplePipeline ()
+	{
+		return triplePipeline;
+	}
+
+	public void setTriplePipeline ( TriplePipeline triplePipeline )
+	{
+		this.triplePipeline = triplePipeline;
+	}
+
+	/**
+	 * <p>If &gt; 0, the {@link #getTriplePipeline() triple pipeline} runs in a pool of this many threads, which 
+	 * receive chunks of {@link #PIPELINE_CHUNK_SIZE} parsed statements, so that expensive transformations don't 
+	 * slow down the parser. The results are added to the batches in the input order.</p> 
+	 * 
+	 * <p>Default is 0, ie, the pipeline runs in the parser thread(s), which is enough for cheap transformations, 
+	 * or when the parsing is already parallel (see {@link #processParallel(File, String, Lang)}).</p>
+	 */
+	public int getPipelineThreads ()
+	{
+		return pipelineThreads;
+	}
+
+	public void setPipelineThreads ( int pipelineThreads )
+	{
+		if ( pipelineThreads < 0 ) throw new IllegalArgumentException ( 
+			"RDFStreamLoader, can't set the pipeline threads to " + pipelineThreads 
+		);
+		this.pipelineThreads = pipelineThreads;
+	}
+
+}
@@ -0,0 +1,259 @@
+package info.marcobrandizi.rdfutils.jena.elt;
+
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.ac.ebi.utils.threading.batchproc.AbstractSizedBatchCollector;
+
+/**
+ * <p>Adapts the {@link AbstractSizedBatchCollector#setMaxBatchSize(long) max batch size} of a collector while an 
+ * {@link AbstractRDFStreamLoader RDF loader} is running, based on the observed job latency and triple throughput.</p>
+ * 
+ * <p>This works in a way similar to TCP congestion control. Every {@link #getWindowSize() window} of completed 
+ * batches, the throughput in triples/sec is computed. If the average job latency went beyond 
+ * {@link #getMaxLatencyMs() the max latency}, the batch size is cut by {@link #getDecreaseFactor()}. Otherwise, 
+ * if the throughput didn't get worse, the batch size is additively increased by {@link #getIncreaseStep()}, 
+ * while, if the throughput dropped, the size is cut like in the case of high latency. The size is always kept 
+ * between {@link #getMinBatchSize()} and {@link #getMaxBatchSize()}.</p>
+ * 
+ * <p>After a size change, the batches still in flight were built with the old size, so they're ignored, 
+ * based on their {@link RDFBatchInfo#getMaxBatchSize() size stamp}, and the next window has only batches of the 
+ * new size. Without this, the windows would mix the two sizes and the controller would oscillate.</p>
+ * 
+ * <p>Size changes are logged, and the size that gave the best throughput is logged when the load ends, so 
+ * that it can be pinned in later runs.</p>
+ * 
+ * <p>This controller can't be used with a {@link ModelBatchCollector} that has a 
+ * {@link ModelBatchCollector#getMaxBatchBytes() byte budget}: when the byte budget is the one that closes the 
+ * batches, changing the max number of triples has no effect on them, and the controller would keep increasing 
+ * it up to the max. Hence, this combination is refused.</p>
+ * 
+ * <p>The controller is used via {@link AbstractRDFStreamLoader#setBatchSizeController(AdaptiveBatchSizeController)}.</p>
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>18 Oct 2026</dd></dl>
+ *
+ */
+public class AdaptiveBatchSizeController
+{
+	private final AbstractSizedBatchCollector<?> batchCollector;
+	
+	private long minBatchSize;
+	private long maxBatchSize;
+	private long increaseStep;
+	private double decreaseFactor = 0.5;
+	private long maxLatencyMs = 0;
+	private int windowSize = 8;
+	
+	/** Tolerance on throughput fluctuations, before considering it a drop */
+	private static final double THROUGHPUT_TOLERANCE = 0.95;
+	
+	private int windowBatches = 0;
+	private long windowTriples = 0;
+	private long windowLatencyNs = 0;
+	private long windowStartNs = -1;
+	
+	private double lastThroughput = 0;
+	private double bestThroughput = 0;
+	private long bestBatchSize = 0;
+	
+	private Logger log = LoggerFactory.getLogger ( this.getClass () );
+	
+	
+	/**
+	 * @param batchCollector the collector to control, typically the loader's 
+	 *        {@link AbstractRDFStreamLoader#getBatchCollector() one}. The initial batch size is the one it already has.
+	 * @param minBatchSize the lower bound for the batch size
+	 * @param maxBatchSize the upper bound for the batch size 
+	 */
+	public AdaptiveBatchSizeController ( 
+		AbstractSizedBatchCollector<?> batchCollector, long minBatchSize, long maxBatchSize 
+	)
+	{
+		if ( minBatchSize < 1 || maxBatchSize < minBatchSize ) throw new IllegalArgumentException ( String.format ( 
+			"Invalid bounds for the adaptive batch size: [%d, %d]", minBatchSize, maxBatchSize 
+		));
+		
+		this.batchCollector = batchCollector;
+		this.minBatchSize = minBatchSize;
+		this.maxBatchSize = maxBatchSize;
+		this.increaseStep = Math.max ( 1, minBatchSize / 2 );
+		checkCollector ();
+	}
+	
+	/**
+	 * @throws IllegalArgumentException if the collector is sized by byte budget, see above.
+	 */
+	private void checkCollector ()
+	{
+		if ( !( batchCollector instanceof ModelBatchCollector modelCollector ) ) return;
+		if ( modelCollector.getMaxBatchBytes () <= 0 ) return;
+		throw new IllegalArgumentException ( 
+			"The adaptive batch size can't be used with a batch collector that has a max batch bytes budget" 
+		);
+	}
+
+	
+	/**
+	 * Clears the statistics, used by the loader when a new load starts.
+	 */
+	public synchronized void reset ()
+	{
+		// The collector might have been changed after our creation
+		checkCollector ();
+		resetWindow ();
+		lastThroughput = 0;
+		bestThroughput = 0;
+		bestBatchSize = batchCollector.getMaxBatchSize ();
+	}
+	
+	/**
+	 * Used by the loader every time a batch job is completed.
+	 */
+	public synchronized void batchCompleted ( RDFBatchInfo batchInfo, long latencyNs )
+	{
+		// Built before the last resize, not representative of the current size
+		long batchSize = batchInfo.getMaxBatchSize ();
+		if ( batchSize != -1 && batchSize != batchCollector.getMaxBatchSize () ) return;
+		
+		long now = System.nanoTime ();
+		if ( windowStartNs == -1 ) windowStartNs = now - latencyNs;
+		
+		windowBatches++;
+		windowTriples += batchInfo.getTriples ();
+		windowLatencyNs += latencyNs;
+		
+		if ( windowBatches < windowSize ) return;
+		
+		double elapsedSecs = Math.max ( now - windowStartNs, 1 ) / 1E9;
+		double throughput = windowTriples / elapsedSecs;
+		long avgLatencyMs = TimeUnit.NANOSECONDS.toMillis ( windowLatencyNs / windowBatches );
+		
+		long currentSize = batchCollector.getMaxBatchSize ();
+		if ( throughput > bestThroughput ) 
+		{
+			bestThroughput = throughput;
+			bestBatchSize = currentSize;
+		}
+
+		long newSize;
+		if ( maxLatencyMs > 0 && avgLatencyMs > maxLatencyMs ) 
+			newSize = (long) ( currentSize * decreaseFactor );
+		else if ( throughput >= lastThroughput * THROUGHPUT_TOLERANCE )
+			newSize = currentSize + increaseStep;
+		else
+			newSize = (long) ( currentSize * decreaseFactor );
+		
+		newSize = Math.max ( minBatchSize, Math.min ( maxBatchSize, newSize ) );
+		
+		if ( newSize != currentSize )
+		{
+			log.info ( 
+				"Adaptive batch size: {} -> {}, throughput: {} triples/s, avg job latency: {} ms", 
+				currentSize, newSize, Math.round ( throughput ), avgLatencyMs 
+			);
+			batchCollector.setMaxBatchSize ( newSize );
+		}
+		
+		lastThroughput = throughput;
+		resetWindow ();
+	}
+	
+	/**
+	 * Logs the best batch size found. Used by the loader at the end of a load.
+	 */
+	public synchronized void logSummary ()
+	{
+		if ( bestThroughput == 0 ) return;
+		log.info ( 
+			"Adaptive batch size, best throughput of {} triples/s was with a batch size of {}",
+			Math.round ( bestThroughput ), bestBatchSize
+		);
+	}
+	
+	private void resetWindow ()
+	{
+		windowBatches = 0;
+		windowTriples = 0;
+		windowLatencyNs = 0;
+		windowStartNs = -1;
+	}
+
+	
+	/**
+	 * The batch size that gave the best throughput so far.
+	 */
+	public synchronized long getBestBatchSize ()
+	{
+		return bestBatchSize;
+	}
+
+	public long getMinBatchSize ()
+	{
+		return minBatchSize;
+	}
+
+	public long getMaxBatchSize ()
+	{
+		return maxBatchSize;
+	}
+
+	/**
+	 * How much the batch size is increased when the throughput improves, default is half the min batch size.
+	 */
+	public long getIncreaseStep ()
+	{
+		return increaseStep;
+	}
+
+	public synchronized void setIncreaseStep ( long increaseStep )
+	{
+		if ( increaseStep < 1 ) throw new IllegalArgumentException ( "Invalid batch size increase step: " + increaseStep );
+		this.increaseStep = increaseStep;
+	}
+
+	/**
+	 * How much the batch size is cut when the latency is too high or the throughput drops, default is 0.5.
+	 */
+	public double getDecreaseFactor ()
+	{
+		return decreaseFactor;
+	}
+
+	public synchronized void setDecreaseFactor ( double decreaseFactor )
+	{
+		if ( decreaseFactor <= 0 || decreaseFactor >= 1 ) throw new IllegalArgumentException ( 
+			"Invalid batch size decrease factor: " + decreaseFactor 
+		);
+		this.decreaseFactor = decreaseFactor;
+	}
+
+	/**
+	 * The average job latency over which the batch size is cut. 0 (default) means the latency isn't considered.
+	 */
+	public long getMaxLatencyMs ()
+	{
+		return maxLatencyMs;
+	}
+
+	public synchronized void setMaxLatencyMs ( long maxLatencyMs )
+	{
+		this.maxLatencyMs = maxLatencyMs;
+	}
+
+	/**
+	 * How many completed batches are observed before adjusting the size, default is 8.
+	 */
+	public int getWindowSize ()
+	{
+		return windowSize;
+	}
+
+	public synchronized void setWindowSize ( int windowSize )
+	{
+		if ( windowSize < 1 ) throw new IllegalArgumentException ( "Invalid window size: " + windowSize );
+		this.windowSize = windowSize;
+	}
+}
@@ -0,0 +1,44 @@
+package info.marcobrandizi.rdfutils.jena.elt;
+
+import java.util.function.Consumer;
+
+/**
+ * <p>A batch job whose {@link #accept(Object)} can return before a batch is done, ie, before its data are
+ * durable or have been sent downstream, and which can report when that happens. {@link TDBGroupCommitWriter}
+ * is an example.</p>
+ * 
+ * <p>An {@link AbstractRDFStreamLoader} recognises this interface and calls {@link #accept(Object, Runnable)}, so 
+ * that its {@link AbstractRDFStreamLoader#getCheckpoint() checkpoint} records a batch only when it's really done. 
+ * At the end of every loading, the loader also calls {@link #flush()}, so that all the batches are done when 
+ * a process() method returns.</p>
+ * 
+ * <p>See {@link DeferredBatchJob} for the jobs that can't report the completion of a batch before they're 
+ * closed.</p>
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>18 Oct 2026</dd></dl>
+ *
+ */
+public interface AsyncBatchJob<B> extends Consumer<B>
+{
+	/**
+	 * Processes the batch and calls onCompletion when it's done. onCompletion can be called by any thread, even
+	 * before this method returns, and it isn't called if the batch fails.
+	 */
+	void accept ( B batch, Runnable onCompletion );
+	
+	/**
+	 * Waits until all the batches accepted so far are done.
+	 * 
+	 * @throws RuntimeException if some batch failed.
+	 */
+	void flush ();
+	
+	/**
+	 * Processes the batch without completion notifications.
+	 */
+	@Override
+	default void accept ( B batch ) {
+		accept ( batch, () -> {} );
+	}
+}
@@ -0,0 +1,109 @@
+package info.marcobrandizi.rdfutils.jena.elt;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>A {@link DuplicateTripleFilter} based on a Bloom filter.</p>
+ * 
+ * <p>This never lets a duplicate pass (except when two threads check the same statement at the same time), 
+ * but it drops a unique statement with the probability given by {@link #getFalsePositiveRate()}, which grows 
+ * with the statements added. Use it when losing such a fraction of the data is acceptable, or to pre-filter
+ * data that are deduplicated downstream anyway.</p>
+ * 
+ * <p>The filter is kept on the heap, as an array of longs, with lock-free updates.</p>
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>18 Oct 2026</dd></dl>
+ *
+ */
+public class BloomDuplicateFilter extends DuplicateTripleFilter
+{
+	private final AtomicLongArray bits;
+	private final long nbits;
+	private final int nhashes;
+	
+	/**
+	 * @param memoryBytes the memory used by the filter, which can't be more than 16GB.
+	 * @param expectedTriples used to decide the number of hash functions which is optimal for this number of 
+	 *        statements and the given memory.
+	 */
+	public BloomDuplicateFilter ( long memoryBytes, long expectedTriples )
+	{
+		if ( memoryBytes < 8 ) throw new IllegalArgumentException ( 
+			"The memory for a Bloom duplicate filter must be at least 8 bytes" 
+		);
+		if ( expectedTriples < 1 ) throw new IllegalArgumentException ( 
+			"The expected triples for a Bloom duplicate filter must be positive" 
+		);
+
+		long nwords = memoryBytes / 8;
+		if ( nwords > Integer.MAX_VALUE ) throw new IllegalArgumentException (  
+			"The memory for a Bloom duplicate filter can't be more than 16GB" 
+		);
+		
+		this.bits = new AtomicLongArray ( (int) nwords );
+		this.nbits = nwords * 64;
+		this.nhashes = (int) Math.max ( 1, Math.min ( 16, Math.round ( (double) nbits / expectedTriples * Math.log ( 2 ) ) ) );
+	}
+
+	/**
+	 * Uses double hashing to get {@link #getHashFunctions()} bit positions from the statement hash.
+	 */
+	@Override
+	protected boolean add ( long hash )
+	{
+		// Re-mixing makes the positions independent even when the hashes have some structure
+		long h1 = mix ( hash );
+		long h2 = mix ( h1 ^ 0x9E3779B97F4A7C15L ) | 1; // odd, so that it never degenerates to a single position 
+		
+		boolean isNew = false;
+		for ( int i = 0; i < nhashes; i++ )
+		{
+			long bitIdx = Math.floorMod ( h1 + i * h2, nbits );
+			int wordIdx = (int) ( bitIdx >>> 6 );
+			long mask = 1L << ( bitIdx & 63 );
+			
+			if ( ( bits.get ( wordIdx ) & mask ) != 0 ) continue;
+			long old = bits.getAndAccumulate ( wordIdx, mask, ( w, m ) -> w | m );
+			if ( ( old & mask ) == 0 ) isNew = true;
+		}
+		return isNew;
+	}
+
+	@Override
+	public void reset ()
+	{
+		for ( int i = 0; i < bits.length (); i++ ) bits.set ( i, 0 );
+		super.reset ();
+	}
+
+	@Override
+	public long getMemoryBytes ()
+	{
+		return nbits / 8;
+	}
+	
+	public int getHashFunctions ()
+	{
+		return nhashes;
+	}
+	
+	/**
+	 * The current probability to drop a unique statement, based on the statements added so far.
+	 */
+	public double getFalsePositiveRate ()
+	{
+		long added = getChecked () - getDropped ();
+		return Math.pow ( 1 - Math.exp ( - (double) nhashes * added / nbits ), nhashes );
+	}
+	
+	@Override
+	public String toString ()
+	{
+		return String.format ( 
+			"%s { memory: %d bytes, hashes: %d, checked: %d, dropped: %d, false positive rate: %.2e }", 
+			this.getClass ().getSimpleName (), getMemoryBytes (), nhashes, getChecked (), getDropped (), 
+			getFalsePositiveRate ()
+		);
+	}
+}
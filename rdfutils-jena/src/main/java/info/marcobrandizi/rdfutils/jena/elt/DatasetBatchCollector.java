@@ -0,0 +1,100 @@
+package info.marcobrandizi.rdfutils.jena.elt;
+
+import java.util.Iterator;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sparql.core.Quad;
+
+import info.marcobrandizi.rdfutils.namespaces.NamespaceUtils;
+import uk.ac.ebi.utils.threading.batchproc.AbstractSizedBatchCollector;
+
+/**
+ * <p>Similarly to {@link ModelBatchCollector}, collects batches of RDF quads into {@link DatasetGraph} instances, 
+ * each having one graph per named graph found in the input, plus the default graph, where plain triples go.</p>
+ * 
+ * <p>The size of a batch is the total number of quads in all its graphs.</p>
+ * 
+ * @see RDFDatasetStreamLoader
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>18 Oct 2026</dd></dl>
+ *
+ */
+public class DatasetBatchCollector 
+	extends AbstractSizedBatchCollector<DatasetGraph> implements RDFBatchCollector<DatasetGraph>
+{
+	public DatasetBatchCollector ( long maxBatchSize ) {
+		super ( maxBatchSize );
+	}
+
+	/**
+	 * Defaults to 10000.
+	 */
+	public DatasetBatchCollector () {
+		this ( 10000 );
+	}
+
+	/**
+	 * Uses {@link DatasetGraphFactory#create()}, so that each graph is a separated in-memory graph, which makes 
+	 * both the {@link #batchSizer() size computation} and the copy to the final destination faster.
+	 */
+	@Override
+	public Supplier<DatasetGraph> batchFactory ()
+	{
+		return () -> 
+		{
+			DatasetGraph dsg = DatasetGraphFactory.create ();
+			dsg.prefixes ().putAll ( NamespaceUtils.getNamespaces () );
+			return dsg;
+		};
+	}
+
+	@Override
+	public Function<DatasetGraph, Long> batchSizer ()
+	{
+		return dsg -> 
+		{
+			long result = dsg.getDefaultGraph ().size ();
+			for ( Iterator<Node> graphNodes = dsg.listGraphNodes (); graphNodes.hasNext (); )
+				result += dsg.getGraph ( graphNodes.next () ).size ();
+			return result;
+		};
+	}
+
+	/**
+	 * The batch is ready when it reaches {@link #getMaxBatchSize()} quads, as counted by the loader. This avoids
+	 * the {@link #batchSizer()}, which walks all the graphs of the batch at every new quad.
+	 */
+	@Override
+	public boolean isBatchReady ( DatasetGraph batch, RDFBatchInfo batchInfo ) {
+		return batchInfo.getTriples () >= getMaxBatchSize ();
+	}
+
+	/**
+	 * Triples go to the default graph.
+	 */
+	@Override
+	public boolean addTriple ( DatasetGraph batch, Triple triple )
+	{
+		batch.getDefaultGraph ().add ( triple );
+		return true;
+	}
+
+	@Override
+	public boolean addQuad ( DatasetGraph batch, Quad quad ) 
+	{
+		if ( quad.isDefaultGraph () ) return addTriple ( batch, quad.asTriple () );
+		batch.getGraph ( quad.getGraph () ).add ( quad.asTriple () );
+		return true;
+	}
+
+	@Override
+	public void addPrefix ( DatasetGraph batch, String prefix, String iri ) {
+		batch.prefixes ().add ( prefix, iri );
+	}
+}
@@ -0,0 +1,20 @@
+package info.marcobrandizi.rdfutils.jena.elt;
+
+/**
+ * <p>A marker for the batch jobs that complete the batches they receive only when they're closed, after the
+ * loading. For instance, {@link TDB2BulkLoadingHandler} makes the data durable only at the end of the bulk load
+ * and {@link ExternalTripleSorter} can't send anything downstream before having seen the whole input.</p>
+ * 
+ * <p>These jobs can't be used with an {@link RDFLoadCheckpoint}, since it would record as loaded batches that are 
+ * lost if the loading fails, so {@link AbstractRDFStreamLoader} refuses such combination. Note that this 
+ * can't be detected if the job is wrapped by another consumer.</p>
+ * 
+ * <p>See {@link AsyncBatchJob} for the jobs that can report when a batch is done.</p>
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>18 Oct 2026</dd></dl>
+ *
+ */
+public interface DeferredBatchJob
+{
+}
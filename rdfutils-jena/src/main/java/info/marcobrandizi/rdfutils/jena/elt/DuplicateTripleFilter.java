@@ -0,0 +1,174 @@
+package info.marcobrandizi.rdfutils.jena.elt;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.sparql.core.Quad;
+
+/**
+ * <p>A filter that drops duplicate statements before they reach the batches of an {@link AbstractRDFStreamLoader}, 
+ * see {@link AbstractRDFStreamLoader#setDuplicateFilter(DuplicateTripleFilter)}.</p>
+ * 
+ * <p>Statements are reduced to 64-bit hashes, which are stored in a structure of fixed size, decided by a 
+ * memory budget. Two implementations are available:</p>
+ * 
+ * <ul>
+ *   <li>{@link BloomDuplicateFilter}, a Bloom filter, which can deal with any input size, but drops a small 
+ *   fraction of the unique statements too (the false positives)</li>
+ *   <li>{@link OffHeapDuplicateFilter}, an exact set of hashes, kept off-heap, which only drops the duplicates
+ *   (barring 64-bit hash collisions), but has a capacity limited by the memory budget.</li>
+ * </ul>
+ * 
+ * <p>Filters are thread-safe and they're not reset between loadings, so that they can be used to remove 
+ * duplicates across multiple files.</p>
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>18 Oct 2026</dd></dl>
+ *
+ */
+public abstract class DuplicateTripleFilter
+{
+	private final LongAdder checked = new LongAdder ();
+	private final LongAdder dropped = new LongAdder ();
+	
+	
+	/**
+	 * A {@link BloomDuplicateFilter} that uses memoryBytes and is sized for expectedTriples.
+	 */
+	public static DuplicateTripleFilter bloom ( long memoryBytes, long expectedTriples ) {
+		return new BloomDuplicateFilter ( memoryBytes, expectedTriples );
+	}
+
+	/**
+	 * An {@link OffHeapDuplicateFilter} that uses memoryBytes.
+	 */
+	public static DuplicateTripleFilter exact ( long memoryBytes ) {
+		return new OffHeapDuplicateFilter ( memoryBytes );
+	}
+	
+	
+	/**
+	 * true if the triple wasn't seen before. The triple is recorded as seen.
+	 */
+	public boolean isNew ( Triple triple ) {
+		return record ( hash ( triple ) );
+	}
+
+	/**
+	 * The same triple in two different graphs are two different quads.
+	 */
+	public boolean isNew ( Quad quad ) {
+		return record ( hash ( quad ) );
+	}
+
+	private boolean record ( long hash ) 
+	{
+		checked.increment ();
+		if ( add ( hash ) ) return true;
+		dropped.increment ();
+		return false;
+	}
+	
+	/**
+	 * Adds the hash to the filter, returning false if it was (or, for probabilistic filters, it looks) 
+	 * already there. This must be thread-safe.
+	 */
+	protected abstract boolean add ( long hash );
+	
+	/**
+	 * Forgets all the recorded statements and resets the counters.
+	 */
+	public void reset () 
+	{
+		checked.reset ();
+		dropped.reset ();
+	}
+
+	/**
+	 * The memory used by the filter structure.
+	 */
+	public abstract long getMemoryBytes ();
+	
+	/**
+	 * The statements that were checked by {@link #isNew(Triple)}.
+	 */
+	public long getChecked ()
+	{
+		return checked.sum ();
+	}
+
+	/**
+	 * The statements that were dropped, ie, for which {@link #isNew(Triple)} returned false.
+	 */
+	public long getDropped ()
+	{
+		return dropped.sum ();
+	}
+	
+	@Override
+	public String toString ()
+	{
+		return String.format ( 
+			"%s { memory: %d bytes, checked: %d, dropped: %d }", 
+			this.getClass ().getSimpleName (), getMemoryBytes (), getChecked (), getDropped () 
+		);
+	}
+
+	
+	/**
+	 * A 64-bit hash of a triple, based on the node values, not on the Jena object identities or 32-bit hashes.
+	 */
+	public static long hash ( Triple triple ) 
+	{
+		long h = hash ( triple.getSubject (), 0x9E3779B97F4A7C15L );
+		h = hash ( triple.getPredicate (), h );
+		return mix ( hash ( triple.getObject (), h ) );
+	}
+	
+	public static long hash ( Quad quad ) 
+	{
+		long h = quad.isDefaultGraph () ? 0x9E3779B97F4A7C15L : hash ( quad.getGraph (), 0x632BE59BD9B4E019L );
+		h = hash ( quad.getSubject (), h );
+		h = hash ( quad.getPredicate (), h );
+		return mix ( hash ( quad.getObject (), h ) );
+	}
+	
+	private static long hash ( Node node, long seed )
+	{
+		if ( node.isURI () ) return hash ( node.getURI (), seed * 31 + 1 );
+		if ( node.isBlank () ) return hash ( node.getBlankNodeLabel (), seed * 31 + 2 );
+		if ( node.isLiteral () ) 
+		{
+			long h = hash ( node.getLiteralLexicalForm (), seed * 31 + 3 );
+			h = hash ( node.getLiteralDatatypeURI (), h );
+			return hash ( node.getLiteralLanguage (), h );
+		}
+		return hash ( node.toString (), seed * 31 + 4 );
+	}
+	
+	/**
+	 * A simple multiply-and-mix hash, the strings are already well distributed and we {@link #mix(long)} at the end. 
+	 */
+	private static long hash ( String s, long seed )
+	{
+		long h = mix ( seed );
+		if ( s == null ) return h;
+		for ( int i = 0; i < s.length (); i++ )
+			h = ( h ^ s.charAt ( i ) ) * 0x100000001B3L;
+		return h ^ s.length ();
+	}
+	
+	/**
+	 * The finaliser of MurmurHash3, to spread the bits. 
+	 */
+	static long mix ( long h )
+	{
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
@@ -0,0 +1,583 @@
+package info.marcobrandizi.rdfutils.jena.elt;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.Model;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>A batch job that sorts all the triples it receives by subject (then predicate and object), using the disk
+ * for the data that don't fit the memory, and then sends them, in order, to another batch job.</p>
+ *
+ * <p>This is meant to pre-order the triples sent to a TDB (see {@link TDBLoadingHandler#sortingWriter(Path)}):
+ * when a dataset is bigger than the RAM, inserting the triples in the parsing order causes random accesses
+ * to the index pages, while ordered insertions have a much better locality.</p>
+ *
+ * <p>The triples are collected in memory up to {@link #getRunSize()}, then they're sorted and spilled to
+ * a temporary file (a sorted run), using the {@link NodeCodec} binary encoding. When this sorter is
+ * {@link #close() closed}, the runs are merged and the result is sent to the downstream job in batches of
+ * {@link #getOutputBatchSize()} triples. Duplicated triples are removed during the merge, which
+ * comes for free after the sorting.</p>
+ *
+ * <p>At most {@link #getMaxFanIn()} runs are read at the same time. If there are more runs, they're merged in 
+ * groups into bigger intermediate runs, in one or more passes, until they're few enough for the final merge.
+ * This bounds the open files and the memory used by the read buffers, at the cost of re-writing the data.</p>
+ *
+ * <p>Hence, nothing reaches the downstream job until {@link #close()}, which you <b>must</b> call after the
+ * loader has finished, and this is a {@link DeferredBatchJob}, which can't be used with a
+ * {@link RDFLoadCheckpoint}. This class is thread-safe, so it can receive batches from multiple loader jobs. A run
+ * is sorted and written without holding the lock, so the other jobs aren't blocked in the meantime (but this
+ * means there can be up to one full run in memory per job).</p>
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>18 Oct 2026</dd></dl>
+ *
+ */
+public class ExternalTripleSorter implements Consumer<TripleBatch>, DeferredBatchJob, AutoCloseable
+{
+	/**
+	 * The order used by this sorter: subject, predicate, object, comparing the node kinds first (blank nodes,
+	 * IRIs, literals), then their labels.
+	 */
+	public static final Comparator<Triple> TRIPLE_ORDER = ( t1, t2 ) ->
+	{
+		int c = compareNodes ( t1.getSubject (), t2.getSubject () );
+		if ( c != 0 ) return c;
+		c = compareNodes ( t1.getPredicate (), t2.getPredicate () );
+		if ( c != 0 ) return c;
+		return compareNodes ( t1.getObject (), t2.getObject () );
+	};
+
+	private final Consumer<TripleBatch> downstream;
+	private final Path tempDir;
+
+	private int runSize = 1000000;
+	private int outputBatchSize = 100000;
+	private int maxFanIn = 64;
+
+	private List<Triple> buffer = new ArrayList<> ();
+	private final List<Path> runs = new ArrayList<> ();
+	private boolean isClosed = false;
+	private int pendingSpills = 0;
+	private RuntimeException spillError = null;
+
+	private long inputTriples = 0;
+	private long outputTriples = 0;
+	private long spillTimeNs = 0;
+	private long mergeTimeNs = 0;
+	private int mergePasses = 0;
+
+	private Logger log = LoggerFactory.getLogger ( this.getClass () );
+
+	/**
+	 * A sorted run being read during the merge.
+	 */
+	private static class RunReader implements AutoCloseable
+	{
+		private final DataInputStream in;
+		private long remaining;
+		private Triple current;
+
+		RunReader ( Path runPath ) throws IOException
+		{
+			this.in = new DataInputStream ( new BufferedInputStream ( Files.newInputStream ( runPath ), 1 << 16 ) );
+			this.remaining = in.readLong ();
+		}
+
+		boolean advance () throws IOException
+		{
+			if ( remaining == 0 ) {
+				current = null;
+				return false;
+			}
+			current = NodeCodec.readTriple ( null, in );
+			remaining--;
+			return true;
+		}
+
+		@Override
+		public void close () throws IOException {
+			in.close ();
+		}
+	}
+	
+	/**
+	 * Merges a group of sorted runs, returning their triples in order, duplicates included.
+	 */
+	private class RunMerger implements Iterator<Triple>, AutoCloseable
+	{
+		private final List<RunReader> readers = new ArrayList<> ();
+		private final PriorityQueue<RunReader> queue;
+		private long size = 0;
+		
+		RunMerger ( List<Path> runPaths ) throws IOException
+		{
+			queue = new PriorityQueue<> (
+				Math.max ( 1, runPaths.size () ), ( r1, r2 ) -> TRIPLE_ORDER.compare ( r1.current, r2.current )
+			);
+			try
+			{
+				for ( Path run: runPaths )
+				{
+					RunReader reader = new RunReader ( run );
+					readers.add ( reader );
+					size += reader.remaining;
+					if ( reader.advance () ) queue.add ( reader );
+				}
+			}
+			catch ( IOException | RuntimeException ex ) {
+				close ();
+				throw ex;
+			}
+		}
+
+		@Override
+		public boolean hasNext () {
+			return !queue.isEmpty ();
+		}
+
+		@Override
+		public Triple next ()
+		{
+			RunReader reader = queue.poll ();
+			Triple result = reader.current;
+			try {
+				if ( reader.advance () ) queue.add ( reader );
+			}
+			catch ( IOException ex ) {
+				throw new UncheckedIOException ( "Error while reading a sorted run: " + ex.getMessage (), ex );
+			}
+			return result;
+		}
+		
+		/**
+		 * The total no. of triples in the merged runs.
+		 */
+		long size () {
+			return size;
+		}
+
+		@Override
+		public void close ()
+		{
+			for ( RunReader reader: readers )
+			{
+				try {
+					reader.close ();
+				}
+				catch ( IOException ex ) {
+					log.warn ( "Error while closing a sorted run: " + ex.getMessage (), ex );
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param downstream the job that receives the sorted triples.
+	 * @param tempDir where the sorted runs are written. If null, the system default temporary directory is used.
+	 */
+	public ExternalTripleSorter ( Consumer<TripleBatch> downstream, Path tempDir )
+	{
+		this.downstream = downstream;
+		this.tempDir = tempDir;
+	}
+
+	public ExternalTripleSorter ( Consumer<TripleBatch> downstream ) {
+		this ( downstream, null );
+	}
+
+
+	@Override
+	public void accept ( TripleBatch batch ) {
+		add ( batch );
+	}
+
+	/**
+	 * A variant of this sorter for {@link RDFStreamLoader}.
+	 */
+	public Consumer<Model> forModels ()
+	{
+		return model -> {
+			List<Triple> triples = model.getGraph ().find ().toList ();
+			add ( triples );
+		};
+	}
+
+	private void add ( Iterable<Triple> triples )
+	{
+		for ( Iterator<Triple> itr = triples.iterator (); itr.hasNext (); )
+		{
+			List<Triple> toSpill;
+			Path runPath;
+			synchronized ( this )
+			{
+				if ( isClosed ) throw new IllegalStateException ( "Can't add triples to a closed external sorter" );
+				while ( itr.hasNext () && buffer.size () < runSize )
+				{
+					buffer.add ( itr.next () );
+					inputTriples++;
+				}
+				if ( buffer.size () < runSize ) return;
+
+				// Swap the full buffer, the other threads can go on with a new one while we sort and write it
+				toSpill = buffer;
+				buffer = new ArrayList<> ();
+				runPath = newRun ();
+			}
+			spill ( toSpill, runPath );
+		}
+	}
+
+	/**
+	 * Creates and registers a new run file. This must be called while holding the lock, and must be followed by
+	 * {@link #spill(List, Path)}.
+	 */
+	private Path newRun ()
+	{
+		Path runPath = createRunFile ();
+		runs.add ( runPath );
+		pendingSpills++;
+		return runPath;
+	}
+	
+	private Path createRunFile ()
+	{
+		try
+		{
+			return tempDir == null
+				? Files.createTempFile ( "rdf-sort-run-", ".bin" )
+				: Files.createTempFile ( tempDir, "rdf-sort-run-", ".bin" );
+		}
+		catch ( IOException ex ) {
+			throw new UncheckedIOException ( "Error while creating a sorted run: " + ex.getMessage (), ex );
+		}
+	}
+
+	/**
+	 * Sorts the triples and writes them to the run. This doesn't need the lock, so that the other threads can 
+	 * keep adding triples in the meantime. 
+	 */
+	private void spill ( List<Triple> runTriples, Path runPath )
+	{
+		long start = System.nanoTime ();
+		try
+		{
+			Triple[] triples = runTriples.toArray ( Triple[]::new );
+			Arrays.parallelSort ( triples, TRIPLE_ORDER );
+			writeRun ( runPath, triples.length, Arrays.asList ( triples ).iterator () );
+			log.debug ( "External sorter, {} triple(s) spilled to '{}'", triples.length, runPath );
+		}
+		catch ( IOException ex ) 
+		{
+			UncheckedIOException uex = new UncheckedIOException ( String.format (
+				"Error while writing the sorted run '%s': %s", runPath, ex.getMessage () ),
+				ex
+			);
+			spillFailed ( uex );
+			throw uex;
+		}
+		catch ( RuntimeException ex ) {
+			spillFailed ( ex );
+			throw ex;
+		}
+		finally 
+		{
+			synchronized ( this ) 
+			{
+				spillTimeNs += System.nanoTime () - start;
+				pendingSpills--;
+				notifyAll ();
+			}
+		}
+	}
+
+	/**
+	 * Writes a run file: the no. of triples, followed by the sorted triples.
+	 */
+	private static void writeRun ( Path runPath, long size, Iterator<Triple> sortedTriples ) throws IOException
+	{
+		try ( DataOutputStream out = new DataOutputStream (
+			new BufferedOutputStream ( Files.newOutputStream ( runPath ), 1 << 16 ) )
+		)
+		{
+			out.writeLong ( size );
+			while ( sortedTriples.hasNext () ) NodeCodec.writeTriple ( sortedTriples.next (), null, out );
+		}
+	}
+
+	/**
+	 * The run is incomplete, so {@link #close()} can't merge anything.
+	 */
+	private synchronized void spillFailed ( RuntimeException ex ) {
+		if ( spillError == null ) spillError = ex;
+	}
+
+	/**
+	 * Merges the sorted runs and sends the result to the downstream job. The runs are deleted afterwards.
+	 */
+	@Override
+	public synchronized void close ()
+	{
+		if ( isClosed ) return;
+		isClosed = true;
+
+		try
+		{
+			// Wait for the spills still running in other threads
+			while ( pendingSpills > 0 ) 
+			{
+				try {
+					wait ();
+				}
+				catch ( InterruptedException ex ) {
+					Thread.currentThread ().interrupt ();
+					throw new RuntimeException ( "Interrupted while waiting for the external sorter spills", ex );
+				}
+			}
+			if ( spillError != null ) throw new IllegalStateException ( 
+				"Can't merge the external sorter runs, since some of them failed: " + spillError.getMessage (), spillError 
+			);
+			
+			if ( runs.isEmpty () )
+			{
+				// Everything is still in memory, no need to go through the disk
+				Triple[] triples = buffer.toArray ( Triple[]::new );
+				buffer = new ArrayList<> ();
+				Arrays.parallelSort ( triples, TRIPLE_ORDER );
+				long start = System.nanoTime ();
+				emitSorted ( Arrays.asList ( triples ) );
+				mergeTimeNs += System.nanoTime () - start;
+			}
+			else
+			{
+				if ( !buffer.isEmpty () )
+				{
+					List<Triple> toSpill = buffer;
+					buffer = new ArrayList<> ();
+					spill ( toSpill, newRun () );
+				}
+				long start = System.nanoTime ();
+				merge ();
+				mergeTimeNs += System.nanoTime () - start;
+			}
+
+			log.info (
+				"External sorter, {} triple(s) received, {} sent downstream (without duplicates), {} run(s), "
+				+ "{} intermediate merge pass(es), spilling time: {} ms, merging time: {} ms",
+				inputTriples, outputTriples, runs.size (), mergePasses,
+				spillTimeNs / 1000000, mergeTimeNs / 1000000
+			);
+		}
+		finally {
+			deleteRuns ();
+		}
+	}
+
+	/**
+	 * Merges the runs, in multiple passes if they're more than {@link #getMaxFanIn()}, and sends the result 
+	 * downstream.
+	 */
+	private void merge ()
+	{
+		List<Path> mergingRuns = runs;
+		List<Path> intermediateRuns = new ArrayList<> ();
+		try
+		{
+			while ( mergingRuns.size () > maxFanIn )
+			{
+				List<Path> nextRuns = new ArrayList<> ();
+				for ( int i = 0; i < mergingRuns.size (); i += maxFanIn )
+				{
+					List<Path> group = mergingRuns.subList ( i, Math.min ( i + maxFanIn, mergingRuns.size () ) );
+					if ( group.size () == 1 ) {
+						nextRuns.add ( group.get ( 0 ) );
+						continue;
+					}
+					
+					Path mergedRun = createRunFile ();
+					intermediateRuns.add ( mergedRun );
+					try ( RunMerger merger = new RunMerger ( group ) ) {
+						writeRun ( mergedRun, merger.size (), merger );
+					}
+					nextRuns.add ( mergedRun );
+				}
+				mergePasses++;
+				log.debug ( "External sorter, merge pass {}, {} run(s) merged into {}", 
+					mergePasses, mergingRuns.size (), nextRuns.size () );
+				mergingRuns = nextRuns;
+			}
+			
+			try ( RunMerger merger = new RunMerger ( mergingRuns ) ) {
+				emitSorted ( () -> merger );
+			}
+		}
+		catch ( IOException ex ) {
+			throw new UncheckedIOException ( "Error while merging the sorted runs: " + ex.getMessage (), ex );
+		}
+		finally
+		{
+			for ( Path run: intermediateRuns )
+			{
+				try {
+					Files.deleteIfExists ( run );
+				}
+				catch ( IOException ex ) {
+					log.warn ( "Error while deleting the intermediate run '{}': {}", run, ex.getMessage () );
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sends sorted triples downstream, in batches, skipping the duplicates.
+	 */
+	private void emitSorted ( Iterable<Triple> sortedTriples )
+	{
+		TripleBatch batch = new TripleBatch ( Math.min ( outputBatchSize, 1 << 20 ) );
+		Triple prev = null;
+		for ( Triple triple: sortedTriples )
+		{
+			if ( prev != null && prev.equals ( triple ) ) continue;
+			prev = triple;
+
+			batch.add ( triple );
+			outputTriples++;
+			if ( batch.size () < outputBatchSize ) continue;
+			downstream.accept ( batch );
+			batch = new TripleBatch ( Math.min ( outputBatchSize, 1 << 20 ) );
+		}
+		if ( !batch.isEmpty () ) downstream.accept ( batch );
+	}
+
+	private void deleteRuns ()
+	{
+		for ( Path run: runs )
+		{
+			try {
+				Files.deleteIfExists ( run );
+			}
+			catch ( IOException ex ) {
+				log.warn ( "Error while deleting the sorted run '{}': {}", run, ex.getMessage () );
+			}
+		}
+	}
+
+
+	private static int compareNodes ( Node n1, Node n2 )
+	{
+		int c = Integer.compare ( nodeKind ( n1 ), nodeKind ( n2 ) );
+		if ( c != 0 ) return c;
+
+		if ( n1.isURI () ) return n1.getURI ().compareTo ( n2.getURI () );
+		if ( n1.isBlank () ) return n1.getBlankNodeLabel ().compareTo ( n2.getBlankNodeLabel () );
+		if ( n1.isLiteral () )
+		{
+			c = n1.getLiteralLexicalForm ().compareTo ( n2.getLiteralLexicalForm () );
+			if ( c != 0 ) return c;
+			c = n1.getLiteralLanguage ().compareTo ( n2.getLiteralLanguage () );
+			if ( c != 0 ) return c;
+			return n1.getLiteralDatatypeURI ().compareTo ( n2.getLiteralDatatypeURI () );
+		}
+		return n1.toString ().compareTo ( n2.toString () );
+	}
+
+	private static int nodeKind ( Node node )
+	{
+		if ( node.isBlank () ) return 0;
+		if ( node.isURI () ) return 1;
+		if ( node.isLiteral () ) return 2;
+		return 3;
+	}
+
+
+	/**
+	 * The max number of triples kept in memory, before sorting and spilling them to a run. Default is 1M.
+	 */
+	public int getRunSize ()
+	{
+		return runSize;
+	}
+
+	public void setRunSize ( int runSize )
+	{
+		if ( runSize < 1 ) throw new IllegalArgumentException ( "Can't set the external sorter run size to " + runSize );
+		this.runSize = runSize;
+	}
+
+	/**
+	 * The size of the batches sent to the downstream job. Default is 100k.
+	 */
+	public int getOutputBatchSize ()
+	{
+		return outputBatchSize;
+	}
+
+	public void setOutputBatchSize ( int outputBatchSize )
+	{
+		if ( outputBatchSize < 1 ) throw new IllegalArgumentException (
+			"Can't set the external sorter output batch size to " + outputBatchSize
+		);
+		this.outputBatchSize = outputBatchSize;
+	}
+
+	/**
+	 * The max number of runs that are merged at the same time, ie, that are open for reading, each with its own
+	 * buffer. When there are more runs, they're merged in multiple passes, see the class description. Default is 64.
+	 */
+	public int getMaxFanIn ()
+	{
+		return maxFanIn;
+	}
+
+	public void setMaxFanIn ( int maxFanIn )
+	{
+		if ( maxFanIn < 2 ) throw new IllegalArgumentException ( "Can't set the external sorter max fan-in to " + maxFanIn );
+		this.maxFanIn = maxFanIn;
+	}
+
+	/**
+	 * The sorted runs written to disk so far.
+	 */
+	public synchronized int getRuns ()
+	{
+		return runs.size ();
+	}
+
+	/**
+	 * The intermediate merge passes done by the last {@link #close()}, 0 if all the runs were merged at once.
+	 */
+	public synchronized int getMergePasses ()
+	{
+		return mergePasses;
+	}
+
+	public synchronized long getInputTriples ()
+	{
+		return inputTriples;
+	}
+
+	/**
+	 * The triples sent downstream, which are fewer than {@link #getInputTriples()} if there were duplicates.
+	 */
+	public synchronized long getOutputTriples ()
+	{
+		return outputTriples;
+	}
+}
@@ -0,0 +1,177 @@
+package info.marcobrandizi.rdfutils.jena.elt;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>A flow controller that limits the batches an {@link AbstractRDFStreamLoader} hands to its batch jobs 
+ * and not yet completed, both in terms of number of batches and in terms of 
+ * {@link RDFSizeEstimator estimated heap}.</p>
+ * 
+ * <p>When any of the limits is reached, {@link #acquire(long)} blocks the caller (ie, the RDF parser thread)
+ * until enough batch jobs have {@link #release(long) finished}. This keeps the loader memory bounded when 
+ * the batch jobs are slower than parsing. Limits equal to 0 mean no limit, which is the default.</p>
+ * 
+ * <p>The time spent waiting is tracked, so that one can see how much the parser was stalled by slow
+ * jobs.</p>
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>18 Oct 2026</dd></dl>
+ *
+ */
+public class InFlightLimiter
+{
+	private int maxBatches = 0;
+	private long maxBytes = 0;
+	
+	private int inFlightBatches = 0;
+	private long inFlightBytes = 0;
+	
+	private long stalls = 0;
+	private long stallTimeNs = 0;
+	
+	private final ReentrantLock lock = new ReentrantLock ();
+	private final Condition released = lock.newCondition ();
+	
+	public InFlightLimiter ( int maxBatches, long maxBytes )
+	{
+		setMaxBatches ( maxBatches );
+		setMaxBytes ( maxBytes );
+	}
+
+	/**
+	 * No limit.
+	 */
+	public InFlightLimiter () {
+		this ( 0, 0 );
+	}
+
+	
+	/**
+	 * Registers a new batch of the given size, possibly waiting for some in-flight batch to be released. 
+	 * A batch bigger than {@link #getMaxBytes()} is let through when nothing else is in flight, to 
+	 * avoid a deadlock.
+	 */
+	public void acquire ( long batchBytes ) throws InterruptedException
+	{
+		lock.lock ();
+		try
+		{
+			if ( isFull ( batchBytes ) )
+			{
+				long start = System.nanoTime ();
+				while ( isFull ( batchBytes ) ) released.await ();
+				stalls++;
+				stallTimeNs += System.nanoTime () - start;
+			}
+			inFlightBatches++;
+			inFlightBytes += batchBytes;
+		}
+		finally {
+			lock.unlock ();
+		}
+	}
+	
+	/**
+	 * Signals that a batch {@link #acquire(long) registered} with the same size has been completed.
+	 */
+	public void release ( long batchBytes )
+	{
+		lock.lock ();
+		try 
+		{
+			inFlightBatches--;
+			inFlightBytes -= batchBytes;
+			released.signalAll ();
+		}
+		finally {
+			lock.unlock ();
+		}
+	}
+	
+	/**
+	 * Clears the in-flight figures and the stall statistics. This is used by the loaders when a new load starts.
+	 */
+	public void reset ()
+	{
+		lock.lock ();
+		try 
+		{
+			inFlightBatches = 0;
+			inFlightBytes = 0;
+			stalls = 0;
+			stallTimeNs = 0;
+			released.signalAll ();
+		}
+		finally {
+			lock.unlock ();
+		}
+	}
+	
+	private boolean isFull ( long batchBytes )
+	{
+		if ( inFlightBatches == 0 ) return false;
+		if ( maxBatches > 0 && inFlightBatches >= maxBatches ) return true;
+		if ( maxBytes > 0 && inFlightBytes + batchBytes > maxBytes ) return true;
+		return false;
+	}
+	
+	/**
+	 * Max number of batches in flight, 0 means no limit.
+	 */
+	public int getMaxBatches ()
+	{
+		return maxBatches;
+	}
+
+	public void setMaxBatches ( int maxBatches )
+	{
+		if ( maxBatches < 0 ) throw new IllegalArgumentException ( "Can't set max in-flight batches to " + maxBatches );
+		this.maxBatches = maxBatches;
+	}
+
+	/**
+	 * Max estimated bytes in flight, 0 means no limit.
+	 */
+	public long getMaxBytes ()
+	{
+		return maxBytes;
+	}
+
+	public void setMaxBytes ( long maxBytes )
+	{
+		if ( maxBytes < 0 ) throw new IllegalArgumentException ( "Can't set max in-flight bytes to " + maxBytes );
+		this.maxBytes = maxBytes;
+	}
+	
+	public int getInFlightBatches ()
+	{
+		lock.lock ();
+		try { return inFlightBatches; } finally { lock.unlock (); }
+	}
+
+	public long getInFlightBytes ()
+	{
+		lock.lock ();
+		try { return inFlightBytes; } finally { lock.unlock (); }
+	}
+	
+	/**
+	 * How many times {@link #acquire(long)} had to wait.
+	 */
+	public long getStalls ()
+	{
+		lock.lock ();
+		try { return stalls; } finally { lock.unlock (); }
+	}
+
+	/**
+	 * The total time spent waiting in {@link #acquire(long)}.
+	 */
+	public long getStallTime ( TimeUnit timeUnit )
+	{
+		lock.lock ();
+		try { return timeUnit.convert ( stallTimeNs, TimeUnit.NANOSECONDS ); } finally { lock.unlock (); }
+	}
+}
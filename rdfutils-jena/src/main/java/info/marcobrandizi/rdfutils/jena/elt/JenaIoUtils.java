@@ -1,8 +1,20 @@
 package info.marcobrandizi.rdfutils.jena.elt;
 
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.compress.compressors.CompressorException;
+import org.apache.commons.compress.compressors.CompressorStreamFactory;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.jena.riot.Lang;
 import org.apache.jena.riot.RDFFormat;
+import org.apache.jena.riot.RDFLanguages;
 
 /**
  * I/O and data read/write utilities for Jena.
@@ -51,4 +63,111 @@ public class JenaIoUtils
 			);
 		}
 	}
+	
+	
+	/**
+	 * The compression formats supported by {@link #openInputStream(Path)}, by file extension.
+	 */
+	private static final Map<String, String> COMPRESSION_EXTENSIONS = Map.of ( 
+		"gz", CompressorStreamFactory.GZIP,
+		"bz2", CompressorStreamFactory.BZIP2,
+		"zst", CompressorStreamFactory.ZSTANDARD,
+		"xz", CompressorStreamFactory.XZ
+	);
+	
+	private static final Set<String> COMPRESSION_FORMATS = Set.copyOf ( COMPRESSION_EXTENSIONS.values () );
+	
+	/**
+	 * <p>Opens a file for reading, decompressing it if it's compressed with gzip, bzip2, zstd or xz.</p>
+	 * 
+	 * <p>Compression is detected from the file extension or, if the extension isn't a known one, from the
+	 * file's initial bytes. Decompression happens on a {@link ReadAheadInputStream dedicated thread}, so that it
+	 * overlaps with the consumer. BGZF files (ie, block-gzipped, as produced by <code>bgzip</code>) are 
+	 * {@link ParallelBgzfInputStream decompressed with multiple threads}.</p>
+	 * 
+	 * <p>The result is always buffered.</p>
+	 */
+	public static InputStream openInputStream ( Path file ) throws IOException
+	{
+		InputStream in = new BufferedInputStream ( Files.newInputStream ( file ), 1 << 16 );
+		try
+		{
+			String compression = getCompression ( file, in );
+			if ( compression == null ) return in;
+			
+			if ( CompressorStreamFactory.GZIP.equals ( compression ) && ParallelBgzfInputStream.isBgzf ( file ) ) 
+			{
+				in.close ();
+				return new BufferedInputStream ( new ParallelBgzfInputStream ( file ), 1 << 16 );
+			}
+			
+			// true means decompressing all the members of multi-member files 
+			InputStream decompressed = new CompressorStreamFactory ( true ).createCompressorInputStream ( compression, in );
+			return new BufferedInputStream ( new ReadAheadInputStream ( decompressed ), 1 << 16 );
+		}
+		catch ( CompressorException | IOException | RuntimeException ex ) 
+		{
+			in.close ();
+			if ( ex instanceof IOException ioex ) throw ioex;
+			throw new IOException ( String.format ( 
+				"Error while opening the compressed file '%s': %s", file.toAbsolutePath (), ex.getMessage () ), 
+				ex 
+			);
+		}
+	}
+	
+	/**
+	 * The compression format of a file, using the extension or, if that's not a known one, the initial bytes in 
+	 * the file stream, which must support {@link InputStream#mark(int) marks}. Returns null if the file isn't 
+	 * compressed in any of the formats we support.
+	 */
+	private static String getCompression ( Path file, InputStream in )
+	{
+		String compression = COMPRESSION_EXTENSIONS.get ( 
+			StringUtils.substringAfterLast ( file.getFileName ().toString (), "." ).toLowerCase () 
+		);
+		if ( compression != null ) return compression;
+		
+		try {
+			compression = CompressorStreamFactory.detect ( in );
+			return COMPRESSION_FORMATS.contains ( compression ) ? compression : null;
+		}
+		catch ( CompressorException ex ) {
+			// Not compressed
+			return null;
+		}
+	}
+	
+	/**
+	 * Tells if a file is compressed in one of the formats supported by {@link #openInputStream(Path)}, detecting
+	 * the compression the same way, ie, from the extension or from the initial bytes.
+	 */
+	public static boolean isCompressed ( Path file ) throws IOException
+	{
+		try ( InputStream in = new BufferedInputStream ( Files.newInputStream ( file ) ) ) {
+			return getCompression ( file, in ) != null;
+		}
+	}
+	
+	/**
+	 * Tells if a file name has one of the compression extensions supported by {@link #openInputStream(Path)}.
+	 * Note that that method is also able to detect compressed contents with other extensions, see 
+	 * {@link #isCompressed(Path)}.
+	 */
+	public static boolean isCompressedFileName ( String fileName )
+	{
+		return COMPRESSION_EXTENSIONS.containsKey ( 
+			StringUtils.substringAfterLast ( fileName, "." ).toLowerCase () 
+		); 
+	}
+	
+	/**
+	 * Like {@link RDFLanguages#filenameToLang(String)}, but ignores the compression extensions supported by 
+	 * {@link #openInputStream(Path)}, eg, "foo.ttl.zst" is Turtle.
+	 */
+	public static Lang guessLang ( String fileName )
+	{
+		if ( isCompressedFileName ( fileName ) ) fileName = StringUtils.substringBeforeLast ( fileName, "." );
+		return RDFLanguages.filenameToLang ( fileName );
+	}
 }
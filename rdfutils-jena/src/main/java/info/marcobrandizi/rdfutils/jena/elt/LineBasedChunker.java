@@ -0,0 +1,238 @@
+package info.marcobrandizi.rdfutils.jena.elt;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFLanguages;
+
+/**
+ * <p>Utilities to split line-based RDF files (ie, N-Triples and N-Quads) into byte ranges that can be
+ * parsed independently.</p>
+ *
+ * <p>Splitting happens at newline boundaries, so that each range contains whole statements only. This is
+ * used by {@link RDFStreamLoader#processParallel(java.io.File, String, Lang)}.</p>
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>18 Oct 2026</dd></dl>
+ *
+ */
+public class LineBasedChunker
+{
+	/**
+	 * A chunk is never bigger than this, since that's the limit for a single {@link FileChannel#map memory mapping}.
+	 */
+	public static final long MAX_CHUNK_SIZE = Integer.MAX_VALUE;
+
+	/**
+	 * A byte range in a file, start is inclusive, end is exclusive.
+	 */
+	public static record Chunk ( long start, long end )
+	{
+		public long size () {
+			return end - start;
+		}
+	}
+
+	private LineBasedChunker () {}
+
+
+	/**
+	 * Tells if the language is line-based and hence can be split by this class.
+	 */
+	public static boolean isLineBased ( Lang lang )
+	{
+		if ( lang == null ) return false;
+		return RDFLanguages.sameLang ( Lang.NTRIPLES, lang ) || RDFLanguages.sameLang ( Lang.NQUADS, lang );
+	}
+
+	/**
+	 * Splits the channel contents into about nchunks pieces, each ending at a newline (or at the end of the
+	 * channel). Pieces might be more than nchunks, if they would be otherwise bigger than {@link #MAX_CHUNK_SIZE}.
+	 */
+	public static List<Chunk> split ( FileChannel channel, int nchunks ) throws IOException
+	{
+		if ( nchunks < 1 ) throw new IllegalArgumentException ( "Can't split a file into " + nchunks + " chunks" );
+
+		long size = channel.size ();
+		long chunkSize = Math.max ( 1, Math.min ( size / nchunks, MAX_CHUNK_SIZE - 1 ) );
+
+		List<Chunk> result = new ArrayList<> ();
+		ByteBuffer buf = ByteBuffer.allocate ( 64 * 1024 );
+
+		for ( long start = 0; start < size; )
+		{
+			long end = Math.min ( start + chunkSize, size );
+			if ( end < size ) end = nextLineStart ( channel, end, buf );
+			if ( end - start > MAX_CHUNK_SIZE ) throw new IllegalArgumentException ( String.format (
+				"Can't split the RDF input at position %d, line too long", start
+			));
+			result.add ( new Chunk ( start, end ) );
+			start = end;
+		}
+		return result;
+	}
+
+	/**
+	 * The position right after the first newline found at pos or later, or the channel size, if there isn't any
+	 * further newline.
+	 */
+	private static long nextLineStart ( FileChannel channel, long pos, ByteBuffer buf ) throws IOException
+	{
+		long size = channel.size ();
+		while ( pos < size )
+		{
+			buf.clear ();
+			int n = channel.read ( buf, pos );
+			if ( n <= 0 ) break;
+			for ( int i = 0; i < n; i++ )
+				if ( buf.get ( i ) == '\n' ) return pos + i + 1;
+			pos += n;
+		}
+		return size;
+	}
+
+	/**
+	 * A simple {@link InputStream} view of a buffer, which is typically a mapped chunk of a file.
+	 */
+	public static InputStream asInputStream ( ByteBuffer buffer )
+	{
+		return new InputStream ()
+		{
+			@Override
+			public int read ()
+			{
+				return buffer.hasRemaining () ? buffer.get () & 0xff : -1;
+			}
+
+			@Override
+			public int read ( byte[] bytes, int off, int len )
+			{
+				if ( len == 0 ) return 0;
+				if ( !buffer.hasRemaining () ) return -1;
+				len = Math.min ( len, buffer.remaining () );
+				buffer.get ( bytes, off, len );
+				return len;
+			}
+
+			@Override
+			public int available () {
+				return buffer.remaining ();
+			}
+		};
+	}
+
+	
+	/**
+	 * <p>Counts the statements in a line-based RDF input without parsing it, ie, counts the lines that aren't
+	 * blank or comments. This is much faster than parsing and it's used to find the byte offset of a given 
+	 * statement, for {@link RDFLoadCheckpoint checkpoints}.</p>
+	 * 
+	 * <p>The scanner starts at the current position of the input stream, which is assumed to be at the 
+	 * beginning of a line, and it owns the stream, ie, closing the scanner closes the stream.</p>   
+	 */
+	public static class StatementScanner implements AutoCloseable
+	{
+		private final InputStream in;
+		private long offset;
+		private long statements;
+		
+		/** We scan our own buffer, reading a byte at a time from the stream would be much slower */
+		private final byte[] buffer = new byte [ 1 << 16 ];
+		private int bufferPos = 0;
+		private int bufferLimit = 0;
+		
+		/**
+		 * @param offset the byte offset of the input current position.
+		 * @param statements the number of statements before the current position.
+		 */
+		public StatementScanner ( InputStream in, long offset, long statements )
+		{
+			this.in = in;
+			this.offset = offset;
+			this.statements = statements;
+		}
+		
+		public StatementScanner ( InputStream in ) {
+			this ( in, 0, 0 );
+		}
+		
+		/**
+		 * Reads the input until the end of the statement number targetStatements (ie, until targetStatements 
+		 * statements are before the current position) and returns the resulting offset.
+		 * 
+		 * @throws EOFException if the input has less than targetStatements statements
+		 * @throws IllegalArgumentException if the scanner is already beyond targetStatements.
+		 */
+		public long advanceTo ( long targetStatements ) throws IOException
+		{
+			if ( targetStatements < statements ) throw new IllegalArgumentException ( String.format ( 
+				"Can't scan RDF statements backward, from %d to %d", statements, targetStatements
+			));
+			
+			// 0 = only white spaces so far, 1 = statement line, 2 = comment line
+			int lineType = 0;
+			while ( statements < targetStatements )
+			{
+				if ( bufferPos == bufferLimit )
+				{
+					int n = in.read ( buffer );
+					if ( n == -1 ) 
+					{
+						// A last line without the final newline
+						if ( lineType == 1 && statements + 1 == targetStatements ) {
+							statements++;
+							break;
+						}
+						throw new EOFException ( String.format ( 
+							"Can't find RDF statement #%d, the input has %d statements", targetStatements, statements 
+						));
+					}
+					bufferPos = 0;
+					bufferLimit = n;
+					continue;
+				}
+				
+				// Look for the line end, the line type depends on its first non-blank byte 
+				int i = bufferPos;
+				for ( ; i < bufferLimit; i++ )
+				{
+					byte b = buffer [ i ];
+					if ( b == '\n' ) break;
+					if ( lineType == 0 && !( b == ' ' || b == '\t' || b == '\r' ) ) lineType = b == '#' ? 2 : 1;
+				}
+				offset += i - bufferPos;
+				bufferPos = i;
+				if ( i == bufferLimit ) continue;
+				
+				// Line end
+				offset++;
+				bufferPos++;
+				if ( lineType == 1 ) statements++;
+				lineType = 0;
+			}
+			return offset;
+		}
+
+		public long getOffset ()
+		{
+			return offset;
+		}
+
+		public long getStatements ()
+		{
+			return statements;
+		}
+
+		@Override
+		public void close () throws IOException
+		{
+			in.close ();
+		}
+	}
+}
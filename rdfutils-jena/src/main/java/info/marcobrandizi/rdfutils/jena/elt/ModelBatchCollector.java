@@ -3,25 +3,41 @@ package info.marcobrandizi.rdfutils.jena.elt;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
+import org.apache.jena.graph.Triple;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.sparql.core.Quad;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import info.marcobrandizi.rdfutils.namespaces.NamespaceUtils;
 import uk.ac.ebi.utils.threading.batchproc.AbstractSizedBatchCollector;
 import uk.ac.ebi.utils.threading.batchproc.BatchProcessor;
 
 /**
- * A {@link AbstractSizedBatchCollector sized-based batch collector} for RDF {@link BatchProcessor batch processors},
+ * <p>A {@link AbstractSizedBatchCollector sized-based batch collector} for RDF {@link BatchProcessor batch processors},
  * such as {@link RDFStreamLoader}. A model batch collector aims at collecting batches of RDF triples, into 
- * {@link Model RDF models}. 
+ * {@link Model RDF models}.</p> 
  * 
+ * <p>By default, batches are sized by number of triples. If {@link #getMaxBatchBytes()} is set, a batch is
+ * also closed when its {@link RDFSizeEstimator estimated heap} reaches that budget, which makes the memory 
+ * taken by batches more predictable when the input has a mix of short and long triples (eg, 
+ * long literals). In this case, {@link #getMaxBatchSize()} becomes a cap on the number of triples, which can
+ * be disabled by setting it to {@link Long#MAX_VALUE}. The byte budget can't be combined with an 
+ * {@link AdaptiveBatchSizeController}, which works on the number of triples only.</p>
  *
  * @author brandizi
  * <dl><dt>Date:</dt><dd>24 Nov 2019</dd></dl>
  *
  */
-public class ModelBatchCollector extends AbstractSizedBatchCollector<Model>
+public class ModelBatchCollector extends AbstractSizedBatchCollector<Model> implements RDFBatchCollector<Model>
 {
+	private long maxBatchBytes = 0;
+	
+	private volatile boolean namedGraphWarningDone = false;
+	
+	private Logger log = LoggerFactory.getLogger ( this.getClass () );
+	
 	public ModelBatchCollector ( long maxBatchSize ) {
 		super ( maxBatchSize );
 	}
@@ -49,4 +65,60 @@ public class ModelBatchCollector extends AbstractSizedBatchCollector<Model>
 	{
 		return model -> model.size ();
 	}
+
+	@Override
+	public boolean addTriple ( Model batch, Triple triple )
+	{
+		batch.getGraph ().add ( triple );
+		return true;
+	}
+
+	/**
+	 * Quads in the default graph are added as triples, the ones in named graphs are ignored (and a warning is 
+	 * issued the first time this happens), since models can't represent them. Use {@link DatasetBatchCollector}
+	 * if you need named graphs.
+	 */
+	@Override
+	public boolean addQuad ( Model batch, Quad quad ) 
+	{
+		if ( quad.isDefaultGraph () ) return addTriple ( batch, quad.asTriple () );
+		
+		if ( namedGraphWarningDone ) return false;
+		namedGraphWarningDone = true;
+		log.warn ( 
+			"Quads in named graphs are ignored by {}, use RDFDatasetStreamLoader to load them", 
+			this.getClass ().getSimpleName () 
+		);
+		return false;
+	}
+
+	@Override
+	public void addPrefix ( Model batch, String prefix, String iri ) {
+		batch.setNsPrefix ( prefix, iri );
+	}
+
+	/**
+	 * The batch is ready when it reaches {@link #getMaxBatchSize()} triples, or when its estimated size reaches
+	 * {@link #getMaxBatchBytes()}, if the latter is set.
+	 */
+	@Override
+	public boolean isBatchReady ( Model batch, RDFBatchInfo batchInfo )
+	{
+		if ( maxBatchBytes > 0 && batchInfo.getEstimatedBytes () >= maxBatchBytes ) return true;
+		return batchInfo.getTriples () >= getMaxBatchSize ();
+	}
+
+	/**
+	 * The byte budget for a batch, as explained above. 0 (default) means batches are sized by triples only.
+	 */
+	public long getMaxBatchBytes ()
+	{
+		return maxBatchBytes;
+	}
+
+	public void setMaxBatchBytes ( long maxBatchBytes )
+	{
+		if ( maxBatchBytes < 0 ) throw new IllegalArgumentException ( "Can't set the max batch bytes to " + maxBatchBytes );
+		this.maxBatchBytes = maxBatchBytes;
+	}
 }
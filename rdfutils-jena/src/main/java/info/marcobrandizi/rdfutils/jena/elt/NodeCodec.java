@@ -0,0 +1,166 @@
+package info.marcobrandizi.rdfutils.jena.elt;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.jena.datatypes.TypeMapper;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+
+/**
+ * <p>A compact binary encoding of RDF nodes and triples, used for the off-heap and on-disk representations of the
+ * loader data (see {@link OffHeapTripleBatch}).</p>
+ *
+ * <p>Every node is written as a tag byte, followed by either a {@link NodeDictionary} id or the node contents.
+ * Numbers are written as variable-length integers and strings as UTF-8 bytes, with their length prefixed.</p>
+ *
+ * <p>Only IRIs, blank nodes and literals are supported, which is what RDF data contain (apart from RDF-star
+ * triple terms, which aren't supported yet).</p>
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>18 Oct 2026</dd></dl>
+ *
+ */
+public class NodeCodec
+{
+	private static final byte TAG_ID = 0;
+	private static final byte TAG_URI = 1;
+	private static final byte TAG_BLANK = 2;
+	private static final byte TAG_LITERAL_DT = 3;
+	private static final byte TAG_LITERAL_LANG = 4;
+
+	private NodeCodec () {}
+
+
+	/**
+	 * @param dictionary if not null, nodes are written as dictionary ids, when they have one. The same dictionary
+	 * must be used for reading.
+	 */
+	public static void writeNode ( Node node, NodeDictionary dictionary, DataOutput out ) throws IOException
+	{
+		if ( dictionary != null )
+		{
+			long id = dictionary.getId ( node );
+			if ( id >= 0 ) {
+				out.writeByte ( TAG_ID );
+				writeVarLong ( id, out );
+				return;
+			}
+		}
+
+		if ( node.isURI () ) {
+			out.writeByte ( TAG_URI );
+			writeString ( node.getURI (), out );
+		}
+		else if ( node.isBlank () ) {
+			out.writeByte ( TAG_BLANK );
+			writeString ( node.getBlankNodeLabel (), out );
+		}
+		else if ( node.isLiteral () )
+		{
+			String lang = node.getLiteralLanguage ();
+			if ( lang != null && !lang.isEmpty () ) {
+				out.writeByte ( TAG_LITERAL_LANG );
+				writeString ( node.getLiteralLexicalForm (), out );
+				writeString ( lang, out );
+			}
+			else {
+				out.writeByte ( TAG_LITERAL_DT );
+				writeString ( node.getLiteralLexicalForm (), out );
+				writeString ( node.getLiteralDatatypeURI (), out );
+			}
+		}
+		else
+			throw new IllegalArgumentException ( "Can't encode the RDF node " + node + ", unsupported node type" );
+	}
+
+	public static Node readNode ( NodeDictionary dictionary, DataInput in ) throws IOException
+	{
+		byte tag = in.readByte ();
+		switch ( tag )
+		{
+			case TAG_ID:
+			{
+				long id = readVarLong ( in );
+				Node node = dictionary == null ? null : dictionary.getNode ( id );
+				if ( node == null ) throw new IllegalStateException (
+					"Can't decode the RDF node #" + id + ", it isn't in the node dictionary"
+				);
+				return node;
+			}
+			case TAG_URI:
+				return NodeFactory.createURI ( readString ( in ) );
+			case TAG_BLANK:
+				return NodeFactory.createBlankNode ( readString ( in ) );
+			case TAG_LITERAL_LANG:
+			{
+				String lex = readString ( in );
+				return NodeFactory.createLiteralLang ( lex, readString ( in ) );
+			}
+			case TAG_LITERAL_DT:
+			{
+				String lex = readString ( in );
+				return NodeFactory.createLiteralDT ( lex, TypeMapper.getInstance ().getSafeTypeByName ( readString ( in ) ) );
+			}
+			default:
+				throw new IllegalStateException ( "Can't decode the RDF node, bad encoding tag: " + tag );
+		}
+	}
+
+	public static void writeTriple ( Triple triple, NodeDictionary dictionary, DataOutput out ) throws IOException
+	{
+		writeNode ( triple.getSubject (), dictionary, out );
+		writeNode ( triple.getPredicate (), dictionary, out );
+		writeNode ( triple.getObject (), dictionary, out );
+	}
+
+	public static Triple readTriple ( NodeDictionary dictionary, DataInput in ) throws IOException
+	{
+		Node s = readNode ( dictionary, in );
+		Node p = readNode ( dictionary, in );
+		return Triple.create ( s, p, readNode ( dictionary, in ) );
+	}
+
+
+	/**
+	 * Writes a non-negative number using 7 bits per byte, so that small numbers take little space.
+	 */
+	public static void writeVarLong ( long value, DataOutput out ) throws IOException
+	{
+		if ( value < 0 ) throw new IllegalArgumentException ( "Can't encode the negative number " + value );
+		while ( ( value & ~0x7FL ) != 0 ) {
+			out.writeByte ( (int) ( ( value & 0x7F ) | 0x80 ) );
+			value >>>= 7;
+		}
+		out.writeByte ( (int) value );
+	}
+
+	public static long readVarLong ( DataInput in ) throws IOException
+	{
+		long result = 0;
+		for ( int shift = 0; shift < 64; shift += 7 )
+		{
+			byte b = in.readByte ();
+			result |= (long) ( b & 0x7F ) << shift;
+			if ( ( b & 0x80 ) == 0 ) return result;
+		}
+		throw new IllegalStateException ( "Can't decode a variable-length number, too many bytes" );
+	}
+
+	private static void writeString ( String s, DataOutput out ) throws IOException
+	{
+		byte[] bytes = s.getBytes ( StandardCharsets.UTF_8 );
+		writeVarLong ( bytes.length, out );
+		out.write ( bytes );
+	}
+
+	private static String readString ( DataInput in ) throws IOException
+	{
+		byte[] bytes = new byte [ (int) readVarLong ( in ) ];
+		in.readFully ( bytes );
+		return new String ( bytes, StandardCharsets.UTF_8 );
+	}
+}
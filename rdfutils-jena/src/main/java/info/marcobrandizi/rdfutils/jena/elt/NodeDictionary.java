@@ -0,0 +1,250 @@
+package info.marcobrandizi.rdfutils.jena.elt;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.sparql.core.Quad;
+
+/**
+ * <p>A bounded, thread-safe dictionary of RDF nodes, which is used to intern the nodes that an
+ * {@link AbstractRDFStreamLoader} sends to its batches (see
+ * {@link AbstractRDFStreamLoader#setNodeDictionary(NodeDictionary)}), so that frequent IRIs like
+ * <code>rdf:type</code>, common predicates or classes are kept in memory only once, instead of once per
+ * parsed statement.</p>
+ *
+ * <p>Jena parsers already cache IRIs during a single parsing, this dictionary extends that to all the
+ * parsers of a loader (eg, with {@link AbstractRDFStreamLoader#processParallel(java.io.File, String, org.apache.jena.riot.Lang)
+ * parallel parsing}), to multiple loadings and to the literals, if {@link #isInterningLiterals() enabled}.</p>
+ *
+ * <p>The dictionary also gives every node a numeric id, which is stable for the dictionary lifetime. Ids are
+ * dense, ie, they're assigned from 0 onwards, in the order the nodes are first seen.</p>
+ *
+ * <p>The dictionary is bounded by a {@link #getCapacity() capacity}. When this is reached, nodes are no longer
+ * added, and the new ones aren't interned (and don't have an id). Since the frequent nodes tend to appear early,
+ * this simple policy works well in practice, while keeping the ids valid. Blank nodes are never interned, since
+ * they're rarely repeated across many statements.</p>
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>18 Oct 2026</dd></dl>
+ *
+ */
+public class NodeDictionary
+{
+	private static record Entry ( Node node, long id ) {}
+
+	private static final int ID_SEGMENT_BITS = 16;
+	private static final int ID_SEGMENT_SIZE = 1 << ID_SEGMENT_BITS;
+
+	private final int capacity;
+	private boolean isInterningLiterals = false;
+
+	private final ConcurrentHashMap<Node, Entry> entries;
+	/** The id -> node index, split into lazily-allocated segments */
+	private final Node[][] nodesById;
+	private final AtomicLong nextId = new AtomicLong ( 0 );
+
+	private final LongAdder hits = new LongAdder ();
+	private final LongAdder misses = new LongAdder ();
+	private final LongAdder rejected = new LongAdder ();
+
+	/**
+	 * @param capacity the max number of nodes the dictionary can hold.
+	 */
+	public NodeDictionary ( int capacity )
+	{
+		if ( capacity < 1 ) throw new IllegalArgumentException ( "Can't create a node dictionary of size " + capacity );
+		this.capacity = capacity;
+		this.entries = new ConcurrentHashMap<> ( Math.min ( capacity, 1 << 16 ) );
+		this.nodesById = new Node [ ( capacity - 1 ) / ID_SEGMENT_SIZE + 1 ][];
+	}
+
+	/**
+	 * Defaults to 1M nodes.
+	 */
+	public NodeDictionary () {
+		this ( 1 << 20 );
+	}
+
+
+	/**
+	 * Returns the dictionary instance that is equal to the node, adding the node to the dictionary if needed.
+	 * Returns the node itself if it isn't a dictionary node (eg, a blank node) or if the dictionary is full.
+	 */
+	public Node intern ( Node node )
+	{
+		Entry entry = lookup ( node );
+		return entry == null ? node : entry.node ();
+	}
+
+	/**
+	 * Interns all the triple nodes. If they're all already the dictionary instances, the triple itself is
+	 * returned.
+	 */
+	public Triple intern ( Triple triple )
+	{
+		Node s = intern ( triple.getSubject () ), p = intern ( triple.getPredicate () ), o = intern ( triple.getObject () );
+		if ( s == triple.getSubject () && p == triple.getPredicate () && o == triple.getObject () ) return triple;
+		return Triple.create ( s, p, o );
+	}
+
+	/**
+	 * Interns all the quad nodes, including the graph.
+	 */
+	public Quad intern ( Quad quad )
+	{
+		Node g = intern ( quad.getGraph () ), s = intern ( quad.getSubject () ), p = intern ( quad.getPredicate () ),
+			o = intern ( quad.getObject () );
+		if ( g == quad.getGraph () && s == quad.getSubject () && p == quad.getPredicate () && o == quad.getObject () )
+			return quad;
+		return Quad.create ( g, s, p, o );
+	}
+
+	/**
+	 * The dictionary id of the node, adding the node if needed. -1 if the node can't be in the dictionary.
+	 */
+	public long getId ( Node node )
+	{
+		Entry entry = lookup ( node );
+		return entry == null ? -1 : entry.id ();
+	}
+
+	/**
+	 * The node with this id, null if there isn't any.
+	 */
+	public Node getNode ( long id )
+	{
+		if ( id < 0 || id >= nextId.get () ) return null;
+		Node[] segment = nodesById [ (int) ( id >>> ID_SEGMENT_BITS ) ];
+		return segment == null ? null : segment [ (int) ( id & ( ID_SEGMENT_SIZE - 1 ) ) ];
+	}
+
+	private Entry lookup ( Node node )
+	{
+		if ( !isDictionaryNode ( node ) ) return null;
+
+		Entry entry = entries.get ( node );
+		if ( entry != null && entry.id () >= 0 ) {
+			hits.increment ();
+			return entry;
+		}
+
+		misses.increment ();
+		if ( nextId.get () >= capacity ) {
+			rejected.increment ();
+			return null;
+		}
+
+		entry = entries.computeIfAbsent ( node, this::newEntry );
+		if ( entry.id () < 0 ) {
+			// Someone else filled it up in the meantime
+			entries.remove ( node, entry );
+			rejected.increment ();
+			return null;
+		}
+		return entry;
+	}
+
+	/**
+	 * Called within {@link ConcurrentHashMap#computeIfAbsent(Object, java.util.function.Function)}, so the id
+	 * index is written before the entry is visible.
+	 */
+	private Entry newEntry ( Node node )
+	{
+		long id = nextId.getAndUpdate ( i -> i < capacity ? i + 1 : i );
+		if ( id >= capacity ) return new Entry ( node, -1 );
+
+		int segmentIdx = (int) ( id >>> ID_SEGMENT_BITS );
+		Node[] segment = nodesById [ segmentIdx ];
+		if ( segment == null )
+		{
+			synchronized ( nodesById )
+			{
+				segment = nodesById [ segmentIdx ];
+				if ( segment == null )
+					nodesById [ segmentIdx ] = segment = new Node [ Math.min ( ID_SEGMENT_SIZE, capacity - segmentIdx * ID_SEGMENT_SIZE ) ];
+			}
+		}
+		segment [ (int) ( id & ( ID_SEGMENT_SIZE - 1 ) ) ] = node;
+		return new Entry ( node, id );
+	}
+
+	private boolean isDictionaryNode ( Node node )
+	{
+		if ( node == null ) return false;
+		if ( node.isURI () ) return true;
+		return isInterningLiterals && node.isLiteral ();
+	}
+
+
+	/**
+	 * If true, literals are interned too. This is useful when the data have many repeated values, such as
+	 * enumerations or flags. Default is false.
+	 */
+	public boolean isInterningLiterals ()
+	{
+		return isInterningLiterals;
+	}
+
+	public void setInterningLiterals ( boolean isInterningLiterals )
+	{
+		this.isInterningLiterals = isInterningLiterals;
+	}
+
+	public int getCapacity ()
+	{
+		return capacity;
+	}
+
+	/**
+	 * The number of nodes in the dictionary.
+	 */
+	public long size ()
+	{
+		return Math.min ( nextId.get (), capacity );
+	}
+
+	/**
+	 * The lookups that found the node already in the dictionary.
+	 */
+	public long getHits ()
+	{
+		return hits.sum ();
+	}
+
+	/**
+	 * The lookups that didn't find the node in the dictionary, including the {@link #getRejected() rejected} ones.
+	 */
+	public long getMisses ()
+	{
+		return misses.sum ();
+	}
+
+	/**
+	 * The nodes that couldn't be added, since the dictionary was full.
+	 */
+	public long getRejected ()
+	{
+		return rejected.sum ();
+	}
+
+	/**
+	 * The hits over the lookups, 0 if there were no lookups.
+	 */
+	public double getHitRatio ()
+	{
+		long h = hits.sum (), n = h + misses.sum ();
+		return n == 0 ? 0d : (double) h / n;
+	}
+
+	@Override
+	public String toString ()
+	{
+		return String.format (
+			"NodeDictionary { size: %d, capacity: %d, hits: %d, misses: %d, rejected: %d, hit ratio: %.2f }",
+			size (), capacity, getHits (), getMisses (), getRejected (), getHitRatio ()
+		);
+	}
+}
@@ -0,0 +1,127 @@
+package info.marcobrandizi.rdfutils.jena.elt;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>A pool of direct {@link ByteBuffer}s of a fixed size, used by {@link OffHeapTripleBatch}.</p>
+ *
+ * <p>Direct buffers are freed only when the GC collects them, which, for buffers that are allocated and
+ * discarded quickly, means unpredictable native memory usage and expensive allocations. The pool avoids
+ * that by recycling the buffers: a batch returns them when it's {@link OffHeapTripleBatch#close() closed},
+ * so that the next batches don't need new allocations.</p>
+ *
+ * <p>The buffers that exceed {@link #getMaxPooledBuffers()} when released are left to the GC.</p>
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>18 Oct 2026</dd></dl>
+ *
+ */
+public class OffHeapBufferPool
+{
+	private final int bufferSize;
+	private final int maxPooledBuffers;
+
+	private final ConcurrentLinkedDeque<ByteBuffer> freeBuffers = new ConcurrentLinkedDeque<> ();
+	private final AtomicInteger pooledBuffers = new AtomicInteger ( 0 );
+
+	private final AtomicLong allocations = new AtomicLong ( 0 );
+	private final AtomicLong reuses = new AtomicLong ( 0 );
+
+	/**
+	 * @param bufferSize the size of each buffer
+	 * @param maxPooledBuffers the max number of free buffers kept by the pool
+	 */
+	public OffHeapBufferPool ( int bufferSize, int maxPooledBuffers )
+	{
+		if ( bufferSize < 64 ) throw new IllegalArgumentException ( "Off-heap buffer size too small: " + bufferSize );
+		if ( maxPooledBuffers < 0 ) throw new IllegalArgumentException (
+			"Can't set the max pooled off-heap buffers to " + maxPooledBuffers
+		);
+		this.bufferSize = bufferSize;
+		this.maxPooledBuffers = maxPooledBuffers;
+	}
+
+	/**
+	 * Defaults to 1MB buffers, keeping up to 256 of them (ie, 256MB).
+	 */
+	public OffHeapBufferPool () {
+		this ( 1 << 20, 256 );
+	}
+
+
+	/**
+	 * A cleared buffer, either from the pool or newly allocated.
+	 */
+	public ByteBuffer acquire ()
+	{
+		ByteBuffer buffer = freeBuffers.pollFirst ();
+		if ( buffer == null ) {
+			allocations.incrementAndGet ();
+			return ByteBuffer.allocateDirect ( bufferSize );
+		}
+		pooledBuffers.decrementAndGet ();
+		reuses.incrementAndGet ();
+		return buffer.clear ();
+	}
+
+	/**
+	 * Gives the buffer back to the pool. The caller must not use it anymore.
+	 */
+	public void release ( ByteBuffer buffer )
+	{
+		if ( buffer.capacity () != bufferSize || !buffer.isDirect () ) throw new IllegalArgumentException (
+			"Can't release a buffer that doesn't come from the off-heap buffer pool"
+		);
+		if ( pooledBuffers.incrementAndGet () > maxPooledBuffers ) {
+			pooledBuffers.decrementAndGet ();
+			return;
+		}
+		freeBuffers.offerFirst ( buffer );
+	}
+
+	public int getBufferSize ()
+	{
+		return bufferSize;
+	}
+
+	public int getMaxPooledBuffers ()
+	{
+		return maxPooledBuffers;
+	}
+
+	/**
+	 * The free buffers currently in the pool.
+	 */
+	public int getPooledBuffers ()
+	{
+		return pooledBuffers.get ();
+	}
+
+	/**
+	 * The buffers that were newly allocated by {@link #acquire()}.
+	 */
+	public long getAllocations ()
+	{
+		return allocations.get ();
+	}
+
+	/**
+	 * The buffers that {@link #acquire()} took from the pool.
+	 */
+	public long getReuses ()
+	{
+		return reuses.get ();
+	}
+
+	@Override
+	public String toString ()
+	{
+		return String.format (
+			"OffHeapBufferPool { buffer size: %d, pooled: %d, allocations: %d, reuses: %d }",
+			bufferSize, getPooledBuffers (), getAllocations (), getReuses ()
+		);
+	}
+}
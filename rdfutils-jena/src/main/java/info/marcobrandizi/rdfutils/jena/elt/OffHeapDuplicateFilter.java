@@ -0,0 +1,129 @@
+package info.marcobrandizi.rdfutils.jena.elt;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>An exact {@link DuplicateTripleFilter}, based on a set of statement hashes, which is kept in direct memory, 
+ * so that it doesn't weigh on the GC.</p>
+ * 
+ * <p>The set uses open addressing with linear probing and lock-free insertions. Its capacity is fixed 
+ * by the memory budget (8 bytes per slot) and it can be filled up to {@link #MAX_LOAD_FACTOR}, after that 
+ * {@link #isNew(org.apache.jena.graph.Triple)} throws an exception, so this is suitable for inputs whose size is 
+ * known, at least roughly.</p>
+ *
+ * <p>The direct memory is released when the object is garbage-collected, it must fit the JVM's 
+ * <code>-XX:MaxDirectMemorySize</code>.</p>
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>18 Oct 2026</dd></dl>
+ *
+ */
+public class OffHeapDuplicateFilter extends DuplicateTripleFilter
+{
+	public static final double MAX_LOAD_FACTOR = 0.85;
+	
+	/** Direct buffers can't be larger than 2GB, so we need multiple segments */
+	private static final int SEGMENT_BITS = 27; // 128M slots, 1GB
+	
+	private static final VarHandle SLOT_HANDLE = MethodHandles.byteBufferViewVarHandle ( 
+		long[].class, ByteOrder.nativeOrder () 
+	);
+
+	private final ByteBuffer[] segments;
+	private final long capacity;
+	private final long maxSize;
+	private final AtomicLong size = new AtomicLong ( 0 );
+	
+	/**
+	 * @param memoryBytes the memory used by the set, which is rounded down to a power of 2 (and at least 8 bytes). 
+	 */
+	public OffHeapDuplicateFilter ( long memoryBytes )
+	{
+		if ( memoryBytes < 8 ) throw new IllegalArgumentException ( 
+			"The memory for an off-heap duplicate filter must be at least 8 bytes" 
+		);
+		
+		this.capacity = Long.highestOneBit ( memoryBytes / 8 );
+		this.maxSize = (long) ( capacity * MAX_LOAD_FACTOR );
+		
+		long segmentSlots = Math.min ( capacity, 1L << SEGMENT_BITS );
+		int nsegments = (int) ( capacity / segmentSlots );
+		this.segments = new ByteBuffer [ nsegments ];
+		for ( int i = 0; i < nsegments; i++ )
+			segments [ i ] = ByteBuffer.allocateDirect ( (int) ( segmentSlots * 8 ) ).order ( ByteOrder.nativeOrder () );
+	}
+
+	/**
+	 * @throws IllegalStateException if the set is full. 
+	 */
+	@Override
+	protected boolean add ( long hash )
+	{
+		// 0 marks the empty slots
+		if ( hash == 0 ) hash = 1;
+		
+		for ( long slot = mix ( hash ) & ( capacity - 1 ), probes = 0; probes < capacity; probes++ )
+		{
+			ByteBuffer segment = segments [ (int) ( slot >>> SEGMENT_BITS ) ];
+			int offset = (int) ( slot & ( ( 1L << SEGMENT_BITS ) - 1 ) ) * 8;
+			
+			long current = (long) SLOT_HANDLE.getVolatile ( segment, offset );
+			if ( current == hash ) return false;
+			if ( current == 0 )
+			{
+				if ( size.get () >= maxSize ) throw new IllegalStateException ( String.format ( 
+					"The off-heap duplicate filter is full (%d statements), use a bigger memory budget or a Bloom filter", 
+					size.get ()
+				));
+				if ( SLOT_HANDLE.compareAndSet ( segment, offset, 0L, hash ) ) {
+					size.incrementAndGet ();
+					return true;
+				}
+				// Someone else took the slot in the meantime, check it again
+				probes--;
+				continue;
+			}
+			slot = ( slot + 1 ) & ( capacity - 1 );
+		}
+		throw new IllegalStateException ( "The off-heap duplicate filter is full" );
+	}
+
+	/**
+	 * Not thread-safe with respect to concurrent additions.
+	 */
+	@Override
+	public void reset ()
+	{
+		for ( ByteBuffer segment: segments )
+			for ( int offset = 0; offset < segment.capacity (); offset += 8 )
+				segment.putLong ( offset, 0L );
+		size.set ( 0 );
+		super.reset ();
+	}
+
+	@Override
+	public long getMemoryBytes ()
+	{
+		return capacity * 8;
+	}
+	
+	/**
+	 * The number of distinct statements in the set.
+	 */
+	public long getSize ()
+	{
+		return size.get ();
+	}
+
+	/**
+	 * The max number of statements this filter can hold.
+	 */
+	public long getMaxSize ()
+	{
+		return maxSize;
+	}
+}
@@ -0,0 +1,226 @@
+package info.marcobrandizi.rdfutils.jena.elt;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Triple;
+
+/**
+ * <p>A batch of RDF triples stored off-heap, in direct buffers taken from an {@link OffHeapBufferPool}, using the
+ * compact {@link NodeCodec encoding}, possibly based on {@link NodeDictionary} ids.</p>
+ *
+ * <p>This is used by {@link OffHeapTripleBatchCollector} and {@link RDFOffHeapStreamLoader} and it's meant for very
+ * big batches (eg, 1M triples or more), where heap-based batches like {@link TripleBatch} or {@link org.apache.jena.rdf.model.Model}
+ * cause long old-generation garbage collections. The triples are decoded into Jena objects only when the batch is
+ * {@link #iterator() iterated}, so they're short-lived objects for the GC.</p>
+ *
+ * <p>The buffers are returned to the pool by {@link #close()}, which {@link RDFOffHeapStreamLoader} calls right after
+ * the batch job. The batch can't be used after that.</p>
+ *
+ * <p>Like {@link TripleBatch}, this class is not thread-safe, and the namespace prefixes aren't kept.</p>
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>18 Oct 2026</dd></dl>
+ *
+ */
+public class OffHeapTripleBatch implements Iterable<Triple>, AutoCloseable
+{
+	private final OffHeapBufferPool pool;
+	private final NodeDictionary dictionary;
+
+	private final List<ByteBuffer> buffers = new ArrayList<> ();
+	private int size = 0;
+	private long bytes = 0;
+	private boolean isClosed = false;
+
+	private final OutputStream out = new BuffersOutputStream ();
+
+	/**
+	 * A triple is encoded here first and copied to {@link #out} only if the encoding succeeds, so that a failure
+	 * (eg, an unsupported node type) doesn't leave partial triples in the buffers.
+	 */
+	private final ByteArrayOutputStream scratch = new ByteArrayOutputStream ( 256 );
+	private final DataOutputStream scratchOut = new DataOutputStream ( scratch );
+
+	/**
+	 * Writes into {@link #buffers}, acquiring new ones as needed.
+	 */
+	private class BuffersOutputStream extends OutputStream
+	{
+		@Override
+		public void write ( int b )
+		{
+			currentBuffer ().put ( (byte) b );
+			bytes++;
+		}
+
+		@Override
+		public void write ( byte[] b, int off, int len )
+		{
+			while ( len > 0 )
+			{
+				ByteBuffer buffer = currentBuffer ();
+				int n = Math.min ( len, buffer.remaining () );
+				buffer.put ( b, off, n );
+				off += n;
+				len -= n;
+				bytes += n;
+			}
+		}
+
+		private ByteBuffer currentBuffer ()
+		{
+			ByteBuffer buffer = buffers.isEmpty () ? null : buffers.get ( buffers.size () - 1 );
+			if ( buffer == null || !buffer.hasRemaining () ) buffers.add ( buffer = pool.acquire () );
+			return buffer;
+		}
+	}
+
+	/**
+	 * Reads {@link #buffers}, without changing them.
+	 */
+	private class BuffersInputStream extends InputStream
+	{
+		private int bufferIdx = 0;
+		private ByteBuffer buffer = buffers.isEmpty () ? null : buffers.get ( 0 ).duplicate ().flip ();
+
+		@Override
+		public int read ()
+		{
+			if ( !nextBuffer () ) return -1;
+			return buffer.get () & 0xff;
+		}
+
+		@Override
+		public int read ( byte[] b, int off, int len )
+		{
+			if ( len == 0 ) return 0;
+			if ( !nextBuffer () ) return -1;
+			len = Math.min ( len, buffer.remaining () );
+			buffer.get ( b, off, len );
+			return len;
+		}
+
+		private boolean nextBuffer ()
+		{
+			while ( buffer != null && !buffer.hasRemaining () )
+				buffer = ++bufferIdx < buffers.size () ? buffers.get ( bufferIdx ).duplicate ().flip () : null;
+			return buffer != null;
+		}
+	}
+
+
+	/**
+	 * @param dictionary if not null, the nodes are stored as ids from this dictionary, when possible.
+	 */
+	public OffHeapTripleBatch ( OffHeapBufferPool pool, NodeDictionary dictionary )
+	{
+		this.pool = pool;
+		this.dictionary = dictionary;
+	}
+
+
+	public void add ( Triple triple )
+	{
+		checkOpen ();
+		try
+		{
+			scratch.reset ();
+			NodeCodec.writeTriple ( triple, dictionary, scratchOut );
+			scratch.writeTo ( out );
+			size++;
+		}
+		catch ( IOException ex ) {
+			throw new UncheckedIOException ( "Error while encoding an off-heap triple: " + ex.getMessage (), ex );
+		}
+	}
+
+	public int size () {
+		return size;
+	}
+
+	public boolean isEmpty () {
+		return size == 0;
+	}
+
+	/**
+	 * The off-heap bytes taken by the encoded triples.
+	 */
+	public long getBytes () {
+		return bytes;
+	}
+
+	/**
+	 * Decodes the triples, in the same order they were added.
+	 */
+	@Override
+	public Iterator<Triple> iterator ()
+	{
+		checkOpen ();
+		DataInputStream in = new DataInputStream ( new BuffersInputStream () );
+		return new Iterator<> ()
+		{
+			private int i = 0;
+
+			@Override
+			public boolean hasNext () {
+				return i < size;
+			}
+
+			@Override
+			public Triple next ()
+			{
+				if ( !hasNext () ) throw new NoSuchElementException ( "No more triples in the off-heap triple batch" );
+				checkOpen ();
+				try {
+					Triple triple = NodeCodec.readTriple ( dictionary, in );
+					i++;
+					return triple;
+				}
+				catch ( IOException ex ) {
+					throw new UncheckedIOException ( "Error while decoding an off-heap triple: " + ex.getMessage (), ex );
+				}
+			}
+		};
+	}
+
+	/**
+	 * Adds all the triples in this batch to a graph.
+	 */
+	public void addTo ( Graph graph ) {
+		forEach ( graph::add );
+	}
+
+	/**
+	 * Returns the buffers to the pool. This is idempotent.
+	 */
+	@Override
+	public void close ()
+	{
+		if ( isClosed ) return;
+		isClosed = true;
+		for ( ByteBuffer buffer: buffers ) pool.release ( buffer );
+		buffers.clear ();
+	}
+
+	public boolean isClosed ()
+	{
+		return isClosed;
+	}
+
+	private void checkOpen ()
+	{
+		if ( isClosed ) throw new IllegalStateException ( "The off-heap triple batch was closed and can't be used anymore" );
+	}
+}
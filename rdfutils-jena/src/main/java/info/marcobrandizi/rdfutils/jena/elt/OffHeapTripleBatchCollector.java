@@ -0,0 +1,103 @@
+package info.marcobrandizi.rdfutils.jena.elt;
+
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.apache.jena.graph.Triple;
+import org.apache.jena.sparql.core.Quad;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.ac.ebi.utils.threading.batchproc.AbstractSizedBatchCollector;
+
+/**
+ * A batch collector of {@link OffHeapTripleBatch off-heap triple batches}, which are all based on the same 
+ * buffer pool and node dictionary.
+ * 
+ * @see RDFOffHeapStreamLoader
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>18 Oct 2026</dd></dl>
+ *
+ */
+public class OffHeapTripleBatchCollector 
+	extends AbstractSizedBatchCollector<OffHeapTripleBatch> implements RDFBatchCollector<OffHeapTripleBatch>
+{
+	private final OffHeapBufferPool bufferPool;
+	private final NodeDictionary nodeDictionary;
+	
+	private volatile boolean namedGraphWarningDone = false;
+	
+	private Logger log = LoggerFactory.getLogger ( this.getClass () );
+
+	/**
+	 * @param nodeDictionary can be null, in which case, all the nodes are encoded inline. The batch jobs don't
+	 * need to know about it, since the batches decode the nodes by themselves.
+	 */
+	public OffHeapTripleBatchCollector ( long maxBatchSize, OffHeapBufferPool bufferPool, NodeDictionary nodeDictionary ) 
+	{
+		super ( maxBatchSize );
+		this.bufferPool = bufferPool;
+		this.nodeDictionary = nodeDictionary;
+	}
+
+	/**
+	 * Defaults to a default {@link OffHeapBufferPool} and a default {@link NodeDictionary}.
+	 */
+	public OffHeapTripleBatchCollector ( long maxBatchSize ) {
+		this ( maxBatchSize, new OffHeapBufferPool (), new NodeDictionary () );
+	}
+	
+	/**
+	 * Defaults to 1M triples per batch, since this is meant for big batches.
+	 */
+	public OffHeapTripleBatchCollector () {
+		this ( 1000000 );
+	}
+
+	@Override
+	public Supplier<OffHeapTripleBatch> batchFactory ()
+	{
+		return () -> new OffHeapTripleBatch ( bufferPool, nodeDictionary );
+	}
+
+	@Override
+	public Function<OffHeapTripleBatch, Long> batchSizer ()
+	{
+		return batch -> (long) batch.size ();
+	}
+
+	@Override
+	public boolean addTriple ( OffHeapTripleBatch batch, Triple triple )
+	{
+		batch.add ( triple );
+		return true;
+	}
+
+	/**
+	 * Like {@link TripleBatchCollector#addQuad(TripleBatch, Quad)}, named graphs are ignored.
+	 */
+	@Override
+	public boolean addQuad ( OffHeapTripleBatch batch, Quad quad ) 
+	{
+		if ( quad.isDefaultGraph () ) return addTriple ( batch, quad.asTriple () );
+		
+		if ( namedGraphWarningDone ) return false;
+		namedGraphWarningDone = true;
+		log.warn ( 
+			"Quads in named graphs are ignored by {}, use RDFDatasetStreamLoader to load them", 
+			this.getClass ().getSimpleName () 
+		);
+		return false;
+	}
+
+	public OffHeapBufferPool getBufferPool ()
+	{
+		return bufferPool;
+	}
+
+	public NodeDictionary getNodeDictionary ()
+	{
+		return nodeDictionary;
+	}
+}
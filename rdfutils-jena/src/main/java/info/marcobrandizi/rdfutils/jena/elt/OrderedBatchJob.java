@@ -0,0 +1,258 @@
+package info.marcobrandizi.rdfutils.jena.elt;
+
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>A {@link SequencedBatchJob} that produces results in the order of the loader's input, while still processing
+ * the batches in parallel.</p>
+ * 
+ * <p>Every batch is processed by a transformer, in the loader's job threads, and the results are passed to a sink
+ * in order of batch {@link RDFBatchInfo#getSequence() sequence}. This is done through a reorder buffer: 
+ * results that arrive ahead of their turn are kept until the ones before them have been sent to the sink. This
+ * is useful, for instance, to produce a converted dump that doesn't change between multiple runs, eg:</p>
+ * 
+ * <pre>
+ *   try ( Writer out = ... ) 
+ *   {
+ *     var loader = new RDFTripleStreamLoader&lt;OrderedBatchJob&lt;TripleBatch, String&gt;&gt; ();
+ *     loader.setBatchJob ( new OrderedBatchJob&lt;&gt; ( batch -&gt; toNTriples ( rewrite ( batch ) ), out::write ) );
+ *     loader.process ( "data.ttl" );
+ *   }
+ * </pre>
+ * 
+ * <p>The buffer is bounded: a job whose batch is more than {@link #getMaxPendingResults()} positions ahead
+ * of the next result to be sent waits before running its transformation. This bounds the memory taken by the 
+ * results and it's safe from deadlocks, since the loader executors start the batches in the order they were 
+ * submitted.</p>
+ * 
+ * <p>{@link #accept(Object, long)} returns only after the result of its batch has been sent to the sink, so that
+ * the loader sees a batch as done (eg, for the {@link AbstractRDFStreamLoader#getInFlightLimiter() flow control}
+ * or the {@link AbstractRDFStreamLoader#getCheckpoint() checkpoint}) only when it really is. This means that a 
+ * job that finishes its transformation ahead of its turn waits for the ones before it, hence, in practice, the 
+ * results in the buffer are at most as many as the loader's job threads.</p>
+ * 
+ * <p>The sink is called by one thread at a time, so it doesn't need to be thread-safe. If the transformer or 
+ * the sink fail, the jobs still waiting fail too, so that the loading stops.</p> 
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>18 Oct 2026</dd></dl>
+ *
+ */
+public class OrderedBatchJob<B, R> implements SequencedBatchJob<B>
+{
+	/** Used for null results, which are not sent to the sink */
+	private static final Object NULL_RESULT = new Object ();
+	
+	private final Function<B, R> transformer;
+	private final Consumer<R> sink;
+	private final int maxPendingResults;
+	
+	private final TreeMap<Long, Object> pendingResults = new TreeMap<> ();
+	private long nextSequence = 0;
+	private long nextAcceptSequence = 0;
+	private boolean isDraining = false;
+	private Throwable failure = null;
+	
+	private long emittedResults = 0;
+	private int maxBufferedResults = 0;
+	
+	private Logger log = LoggerFactory.getLogger ( this.getClass () );
+	
+	/**
+	 * @param transformer converts a batch into a result. If this returns null, nothing is sent to the sink for 
+	 *        the batch. 
+	 * @param sink receives the results in the batch order.
+	 * @param maxPendingResults the max size of the reorder buffer.
+	 */
+	public OrderedBatchJob ( Function<B, R> transformer, Consumer<R> sink, int maxPendingResults )
+	{
+		if ( maxPendingResults < 1 ) throw new IllegalArgumentException ( 
+			"The reorder buffer of an ordered batch job can't have size " + maxPendingResults 
+		);
+		this.transformer = transformer;
+		this.sink = sink;
+		this.maxPendingResults = maxPendingResults;
+	}
+
+	/**
+	 * Defaults to a buffer of 2 results per available processor.
+	 */
+	public OrderedBatchJob ( Function<B, R> transformer, Consumer<R> sink ) {
+		this ( transformer, sink, 2 * Runtime.getRuntime ().availableProcessors () );
+	}
+
+	
+	/**
+	 * Uses the invocation order as the batch sequence.
+	 */
+	@Override
+	public void accept ( B batch )
+	{
+		long sequence;
+		synchronized ( this ) {
+			sequence = nextAcceptSequence++;
+		}
+		accept ( batch, sequence );
+	}
+	
+	/**
+	 * Transforms the batch and returns after its result has been sent to the sink.
+	 */
+	@Override
+	public void accept ( B batch, long sequence )
+	{
+		waitTurn ( sequence );
+		
+		Object result;
+		try {
+			result = transformer.apply ( batch );
+		}
+		catch ( RuntimeException | Error ex ) {
+			fail ( ex );
+			throw ex;
+		}
+		
+		boolean mustDrain;
+		synchronized ( this ) 
+		{
+			pendingResults.put ( sequence, result == null ? NULL_RESULT : result );
+			maxBufferedResults = Math.max ( maxBufferedResults, pendingResults.size () );
+			mustDrain = !isDraining;
+			isDraining = true;
+		}
+		if ( mustDrain ) drain ();
+		waitEmitted ( sequence );
+	}
+
+	/**
+	 * Waits until the sequence is within the reorder buffer bounds.
+	 */
+	private synchronized void waitTurn ( long sequence )
+	{
+		try 
+		{
+			while ( failure == null && sequence - nextSequence >= maxPendingResults )
+				wait ();
+		}
+		catch ( InterruptedException ex ) {
+			Thread.currentThread ().interrupt ();
+			throw new RuntimeException ( "Ordered batch job interrupted while waiting for the reorder buffer", ex );
+		}
+		checkFailure ();
+	}
+
+	/**
+	 * Waits until the result of the sequence has been sent to the sink, by this or another thread.
+	 */
+	private synchronized void waitEmitted ( long sequence )
+	{
+		try 
+		{
+			while ( failure == null && nextSequence <= sequence )
+				wait ();
+		}
+		catch ( InterruptedException ex ) {
+			Thread.currentThread ().interrupt ();
+			throw new RuntimeException ( "Ordered batch job interrupted while waiting for the sink", ex );
+		}
+		if ( nextSequence <= sequence ) checkFailure ();
+	}
+
+	/**
+	 * Sends the results that are in turn to the sink. Only one thread at a time runs this, the others just leave
+	 * their results in the buffer.
+	 */
+	@SuppressWarnings ( "unchecked" )
+	private void drain ()
+	{
+		while ( true )
+		{
+			Object result;
+			synchronized ( this ) 
+			{
+				result = pendingResults.remove ( nextSequence );
+				if ( result == null ) {
+					isDraining = false;
+					return;
+				}
+			}
+			
+			try {
+				if ( result != NULL_RESULT ) sink.accept ( (R) result );
+			}
+			catch ( RuntimeException | Error ex ) 
+			{
+				synchronized ( this ) { isDraining = false; }
+				fail ( ex );
+				throw ex;
+			}
+			
+			synchronized ( this ) 
+			{
+				nextSequence++;
+				if ( result != NULL_RESULT ) emittedResults++;
+				notifyAll ();
+			}
+		}
+	}
+	
+	private synchronized void fail ( Throwable ex )
+	{
+		if ( failure == null ) failure = ex;
+		notifyAll ();
+	}
+	
+	private void checkFailure ()
+	{
+		if ( failure == null ) return;
+		throw new IllegalStateException ( 
+			"Ordered batch job stopped, due to a previous batch failure: " + failure.getMessage (), failure 
+		);
+	}
+
+	/**
+	 * Resets the sequence tracking, for a new loading.
+	 */
+	@Override
+	public synchronized void loadStarted ()
+	{
+		if ( !pendingResults.isEmpty () ) log.warn ( 
+			"Ordered batch job reset with {} result(s) never sent to the sink", pendingResults.size () 
+		);
+		pendingResults.clear ();
+		nextSequence = 0;
+		nextAcceptSequence = 0;
+		isDraining = false;
+		failure = null;
+		emittedResults = 0;
+		maxBufferedResults = 0;
+	}
+
+	public int getMaxPendingResults ()
+	{
+		return maxPendingResults;
+	}
+
+	/**
+	 * The results sent to the sink so far.
+	 */
+	public synchronized long getEmittedResults ()
+	{
+		return emittedResults;
+	}
+
+	/**
+	 * The max number of results that were in the reorder buffer at the same time, ie, how many jobs were 
+	 * waiting for a slower batch before them. If this is equal to {@link #getMaxPendingResults()}, the jobs were 
+	 * also stopped before their transformation, and a bigger buffer might help.
+	 */
+	public synchronized int getMaxBufferedResults ()
+	{
+		return maxBufferedResults;
+	}
+}
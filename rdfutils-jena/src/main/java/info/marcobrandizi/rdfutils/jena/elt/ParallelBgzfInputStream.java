@@ -0,0 +1,236 @@
+package info.marcobrandizi.rdfutils.jena.elt;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * <p>Decompresses a BGZF file (ie, gzip made of independent blocks, whose size is in the block header, as 
+ * produced by <code>bgzip</code>) using multiple threads.</p>
+ * 
+ * <p>A reader thread reads the compressed blocks sequentially, groups them into segments and sends the 
+ * segments to a pool of decompression threads. The decompressed segments are returned in their original
+ * order. Compared to {@link GZIPInputStream}, this makes decompression scale with the available cores.</p>
+ * 
+ * <p>Plain multi-member gzip files don't have the size of their members in the headers, so they can't be
+ * split without decompressing them, use {@link #isBgzf(Path)} to check if a file can be used with this class.</p>
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>18 Oct 2026</dd></dl>
+ *
+ */
+public class ParallelBgzfInputStream extends InputStream
+{
+	/** The compressed size of a segment, ie, the unit of work for a decompression thread */
+	private static final int SEGMENT_SIZE = 1 << 20;
+	
+	private static final byte[] EOF = new byte [ 0 ];
+	
+	private final BlockingQueue<Future<byte[]>> segments;
+	private final ExecutorService decompressors;
+	private final Thread readerThread;
+	private volatile boolean isClosed = false;
+
+	private byte[] currentSegment = null;
+	private int currentPos = 0;
+	private boolean isEOF = false;
+	
+	public ParallelBgzfInputStream ( Path bgzfFile, int threads ) throws IOException {
+		this ( bgzfFile, threads, SEGMENT_SIZE );
+	}
+	
+	/**
+	 * Allows for a custom segment size, for tests.
+	 */
+	ParallelBgzfInputStream ( Path bgzfFile, int threads, int segmentSize ) throws IOException
+	{
+		InputStream in = new BufferedInputStream ( Files.newInputStream ( bgzfFile ), 1 << 20 );
+		this.decompressors = Executors.newFixedThreadPool ( threads );
+		this.segments = new ArrayBlockingQueue<> ( threads * 2 );
+		this.readerThread = new Thread ( () -> readSegments ( in, segmentSize ), "bgzfReader" );
+		this.readerThread.setDaemon ( true );
+		this.readerThread.start ();
+	}
+
+	public ParallelBgzfInputStream ( Path bgzfFile ) throws IOException {
+		this ( bgzfFile, Runtime.getRuntime ().availableProcessors () );
+	}
+
+	
+	/**
+	 * Tells if the file starts with a BGZF block.
+	 */
+	public static boolean isBgzf ( Path file ) throws IOException
+	{
+		try ( InputStream in = Files.newInputStream ( file ) )
+		{
+			byte[] header = in.readNBytes ( 16 );
+			return header.length == 16 
+				&& ( header [ 0 ] & 0xff ) == 0x1f && ( header [ 1 ] & 0xff ) == 0x8b && header [ 2 ] == 8
+				&& ( header [ 3 ] & 0x04 ) != 0 // FEXTRA
+				&& header [ 12 ] == 'B' && header [ 13 ] == 'C' && header [ 14 ] == 2 && header [ 15 ] == 0;
+		}
+	}
+	
+	
+	private void readSegments ( InputStream in, int segmentSize )
+	{
+		try ( in )
+		{
+			ByteArrayOutputStream segment = new ByteArrayOutputStream ( segmentSize + ( 1 << 16 ) );
+			while ( !isClosed && readBlock ( in, segment ) )
+			{
+				if ( segment.size () < segmentSize ) continue;
+				submitSegment ( segment.toByteArray () );
+				segment.reset ();
+			}
+			if ( segment.size () > 0 ) submitSegment ( segment.toByteArray () );
+			segments.put ( CompletableFuture.completedFuture ( EOF ) );
+		}
+		catch ( InterruptedException ex ) {
+			// We've been closed, just stop
+		}
+		catch ( Throwable ex ) 
+		{
+			// As for the EOF, the consumer hangs if it doesn't get this, so wait for room in the queue, unless
+			// we're closed (and close() interrupts us in that case)
+			if ( !isClosed ) 
+			{
+				try {
+					segments.put ( CompletableFuture.failedFuture ( ex ) );
+				}
+				catch ( InterruptedException iex ) {
+					// Closed in the meantime
+				}
+			}
+		}
+		finally {
+			// No more segments to submit, let the pending ones complete and release the threads
+			decompressors.shutdown ();
+		}
+	}
+	
+	private void submitSegment ( byte[] compressedSegment ) throws InterruptedException
+	{
+		segments.put ( decompressors.submit ( () -> 
+		{
+			try ( InputStream gzin = new GZIPInputStream ( new ByteArrayInputStream ( compressedSegment ) ) ) {
+				return gzin.readAllBytes ();
+			}
+		}));
+	}
+	
+	/**
+	 * Copies a whole BGZF block into the segment.
+	 * 
+	 * @return false if we're at the end of the input.
+	 */
+	private static boolean readBlock ( InputStream in, ByteArrayOutputStream segment ) throws IOException
+	{
+		byte[] header = in.readNBytes ( 12 );
+		if ( header.length == 0 ) return false;
+		if ( header.length < 12 ) throw new EOFException ( "Truncated BGZF block header" );
+		if ( ( header [ 0 ] & 0xff ) != 0x1f || ( header [ 1 ] & 0xff ) != 0x8b || ( header [ 3 ] & 0x04 ) == 0 )
+			throw new IOException ( "Invalid BGZF block header" );
+		
+		int xlen = readUInt16 ( header, 10 );
+		byte[] extra = in.readNBytes ( xlen );
+		if ( extra.length < xlen ) throw new EOFException ( "Truncated BGZF block header" );
+		
+		int blockSize = -1;
+		for ( int i = 0; i + 4 <= xlen; )
+		{
+			int slen = readUInt16 ( extra, i + 2 );
+			if ( extra [ i ] == 'B' && extra [ i + 1 ] == 'C' && slen == 2 ) {
+				blockSize = readUInt16 ( extra, i + 4 ) + 1;
+				break;
+			}
+			i += 4 + slen;
+		}
+		if ( blockSize == -1 ) throw new IOException ( "Invalid BGZF block, no block size in the header" );
+		
+		int restSize = blockSize - 12 - xlen;
+		byte[] rest = in.readNBytes ( restSize );
+		if ( rest.length < restSize ) throw new EOFException ( "Truncated BGZF block" );
+		
+		segment.write ( header );
+		segment.write ( extra );
+		segment.write ( rest );
+		return true;
+	}
+	
+	private static int readUInt16 ( byte[] bytes, int offset ) {
+		return ( bytes [ offset ] & 0xff ) | ( bytes [ offset + 1 ] & 0xff ) << 8;
+	}
+	
+	
+	@Override
+	public int read () throws IOException
+	{
+		if ( !fetchSegment () ) return -1;
+		return currentSegment [ currentPos++ ] & 0xff;
+	}
+
+	@Override
+	public int read ( byte[] bytes, int off, int len ) throws IOException
+	{
+		if ( len == 0 ) return 0;
+		if ( !fetchSegment () ) return -1;
+		
+		len = Math.min ( len, currentSegment.length - currentPos );
+		System.arraycopy ( currentSegment, currentPos, bytes, off, len );
+		currentPos += len;
+		return len;
+	}
+	
+	/**
+	 * @return false if the end of the stream was reached.
+	 */
+	private boolean fetchSegment () throws IOException
+	{
+		if ( isClosed ) throw new IOException ( "BGZF stream already closed" );
+
+		while ( !isEOF && ( currentSegment == null || currentPos == currentSegment.length ) )
+		{
+			try {
+				currentSegment = segments.take ().get ();
+			}
+			catch ( InterruptedException ex ) {
+				Thread.currentThread ().interrupt ();
+				throw new IOException ( "BGZF decompression interrupted", ex );
+			}
+			catch ( ExecutionException ex ) 
+			{
+				Throwable cause = ex.getCause ();
+				if ( cause instanceof IOException ioex ) throw ioex;
+				throw new IOException ( "Error while decompressing BGZF data: " + cause.getMessage (), cause );
+			}
+			currentPos = 0;
+			if ( currentSegment == EOF ) isEOF = true;
+		}
+		return !isEOF;
+	}
+
+	@Override
+	public void close ()
+	{
+		if ( isClosed ) return;
+		isClosed = true;
+		readerThread.interrupt ();
+		decompressors.shutdownNow ();
+		segments.clear ();
+	}
+}
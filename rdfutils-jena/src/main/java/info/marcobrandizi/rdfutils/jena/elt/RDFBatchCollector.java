@@ -0,0 +1,47 @@
+package info.marcobrandizi.rdfutils.jena.elt;
+
+import org.apache.jena.graph.Triple;
+import org.apache.jena.sparql.core.Quad;
+
+import uk.ac.ebi.utils.threading.batchproc.BatchCollector;
+
+/**
+ * A {@link BatchCollector} for RDF batches, which knows how to add RDF statements to its own type of batches. 
+ * This is used by {@link AbstractRDFStreamLoader} to fill the batches with what comes from the RDF parser.
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>18 Oct 2026</dd></dl>
+ *
+ */
+public interface RDFBatchCollector<B> extends BatchCollector<B>
+{
+	/**
+	 * Adds a triple to the batch.
+	 * 
+	 * @return true if the triple was actually added, false if the implementation ignored it. The loaders use this
+	 * to count only what is really in the batch (eg, for the batch size or the metrics).
+	 */
+	public boolean addTriple ( B batch, Triple triple );
+	
+	/**
+	 * Adds a quad to the batch. It's up to the implementation what to do with quads in named graphs.
+	 * 
+	 * @return true if the quad was actually added, false if it was ignored, as in {@link #addTriple(Object, Triple)}. 
+	 */
+	public boolean addQuad ( B batch, Quad quad );
+	
+	/**
+	 * Does nothing by default.
+	 */
+	public default void addPrefix ( B batch, String prefix, String iri ) {
+	}
+	
+	/**
+	 * Used by the loaders to decide when a batch is complete and can be submitted. batchInfo has statistics 
+	 * about the batch that the loader has collected while filling it, which can be used for sizing policies 
+	 * other than the {@link #batchReadyFlag() default one}.  
+	 */
+	public default boolean isBatchReady ( B batch, RDFBatchInfo batchInfo ) {
+		return batchReadyFlag ().test ( batch );
+	}
+}
@@ -0,0 +1,42 @@
+package info.marcobrandizi.rdfutils.jena.elt;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Java Flight Recorder event about an {@link AbstractRDFStreamLoader} batch being filled by the parser, from 
+ * its first statement until it's submitted to the batch job. Like all the JFR events, it costs almost nothing 
+ * when JFR isn't recording. 
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>18 Oct 2026</dd></dl>
+ *
+ */
+@Name ( "info.marcobrandizi.rdfutils.RDFBatchCreation" )
+@Label ( "RDF Batch Creation" )
+@Category ( { "rdfutils", "RDF Loader" } )
+@Description ( "An RDF loader batch being filled by the parser" )
+public class RDFBatchCreationEvent extends Event
+{
+	@Label ( "Triples" )
+	public long triples;
+	
+	@Label ( "Estimated Size" )
+	@DataAmount ( DataAmount.BYTES )
+	public long estimatedBytes;
+	
+	@Label ( "First Ordinal" )
+	@Description ( "The position in the input of the first batch statement, -1 if not tracked" )
+	public long firstOrdinal;
+	
+	void set ( RDFBatchInfo batchInfo )
+	{
+		this.triples = batchInfo.getTriples ();
+		this.estimatedBytes = batchInfo.getEstimatedBytes ();
+		this.firstOrdinal = batchInfo.getFirstOrdinal ();
+	}
+}
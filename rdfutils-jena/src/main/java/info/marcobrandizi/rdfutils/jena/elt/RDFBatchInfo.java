@@ -0,0 +1,116 @@
+package info.marcobrandizi.rdfutils.jena.elt;
+
+/**
+ * Statistics about a batch that an {@link AbstractRDFStreamLoader} is building or has submitted to its
+ * batch job. This is filled by the loader and used internally for operations like the 
+ * {@link InFlightLimiter flow control}.
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>18 Oct 2026</dd></dl>
+ *
+ */
+public class RDFBatchInfo
+{
+	private long triples = 0;
+	private long estimatedBytes = 0;
+	private long firstOrdinal = -1;
+	private long inputStatements = 0;
+	private long sequence = -1;
+	private long maxBatchSize = -1;
+	
+	RDFBatchInfo () {
+	}
+
+
+	void add ( long triples, long estimatedBytes ) 
+	{
+		this.triples += triples;
+		this.estimatedBytes += estimatedBytes;
+	}
+	
+	/**
+	 * The number of RDF statements (triples or quads) in the batch.
+	 */
+	public long getTriples ()
+	{
+		return triples;
+	}
+
+	/**
+	 * The {@link RDFSizeEstimator estimated} heap taken by the batch statements. 
+	 */
+	public long getEstimatedBytes ()
+	{
+		return estimatedBytes;
+	}
+
+	/**
+	 * The position in the input of the first statement in the batch, counting from 0. This is -1 when the 
+	 * loader isn't tracking the statement positions, eg, in {@link AbstractRDFStreamLoader#processParallel(java.io.File, String, org.apache.jena.riot.Lang) 
+	 * parallel parsing}. Used for {@link RDFLoadCheckpoint checkpoints}.
+	 */
+	public long getFirstOrdinal ()
+	{
+		return firstOrdinal;
+	}
+
+	void setFirstOrdinal ( long firstOrdinal )
+	{
+		this.firstOrdinal = firstOrdinal;
+	}
+
+	/**
+	 * The number of input statements spanned by the batch, starting from {@link #getFirstOrdinal()}. This is 
+	 * different than {@link #getTriples()} when some statements were dropped by a 
+	 * {@link AbstractRDFStreamLoader#getDuplicateFilter() duplicate filter}, or transformed by a 
+	 * {@link AbstractRDFStreamLoader#getTriplePipeline() triple pipeline}.
+	 */
+	public long getInputStatements ()
+	{
+		return inputStatements;
+	}
+
+	void addInputStatements ( long inputStatements )
+	{
+		this.inputStatements += inputStatements;
+	}
+
+	/**
+	 * The position of the batch in the order of submission to the batch job, starting from 0 at every loading. 
+	 * -1 if the batch hasn't been submitted yet. See {@link SequencedBatchJob}.
+	 */
+	public long getSequence ()
+	{
+		return sequence;
+	}
+
+	void setSequence ( long sequence )
+	{
+		this.sequence = sequence;
+	}
+
+	/**
+	 * The max batch size the loader's collector had when the batch was submitted, ie, the size limit the batch 
+	 * was built with. This is -1 if the collector doesn't have such limit, or the batch hasn't been submitted yet. 
+	 * Used by {@link AdaptiveBatchSizeController}.
+	 */
+	public long getMaxBatchSize ()
+	{
+		return maxBatchSize;
+	}
+
+	void setMaxBatchSize ( long maxBatchSize )
+	{
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	@Override
+	public String toString ()
+	{
+		return String.format ( 
+			"RDFBatchInfo { triples: %d, estimatedBytes: %d, firstOrdinal: %d, inputStatements: %d, sequence: %d, "
+			+ "maxBatchSize: %d }", 
+			triples, estimatedBytes, firstOrdinal, inputStatements, sequence, maxBatchSize 
+		);
+	}
+}
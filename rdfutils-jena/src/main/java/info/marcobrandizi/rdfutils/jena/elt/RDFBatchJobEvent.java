@@ -0,0 +1,44 @@
+package info.marcobrandizi.rdfutils.jena.elt;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A Java Flight Recorder event about the execution of the batch job of an {@link AbstractRDFStreamLoader} over
+ * a batch.
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>18 Oct 2026</dd></dl>
+ *
+ */
+@Name ( "info.marcobrandizi.rdfutils.RDFBatchJob" )
+@Label ( "RDF Batch Job" )
+@Category ( { "rdfutils", "RDF Loader" } )
+@Description ( "The RDF loader batch job processing a batch" )
+public class RDFBatchJobEvent extends Event
+{
+	@Label ( "Triples" )
+	public long triples;
+	
+	@Label ( "Estimated Size" )
+	@DataAmount ( DataAmount.BYTES )
+	public long estimatedBytes;
+	
+	@Label ( "First Ordinal" )
+	@Description ( "The position in the input of the first batch statement, -1 if not tracked" )
+	public long firstOrdinal;
+	
+	@Label ( "Failed" )
+	public boolean failed;
+
+	void set ( RDFBatchInfo batchInfo )
+	{
+		this.triples = batchInfo.getTriples ();
+		this.estimatedBytes = batchInfo.getEstimatedBytes ();
+		this.firstOrdinal = batchInfo.getFirstOrdinal ();
+	}
+}
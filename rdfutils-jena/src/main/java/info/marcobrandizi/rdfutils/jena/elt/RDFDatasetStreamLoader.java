@@ -0,0 +1,33 @@
+package info.marcobrandizi.rdfutils.jena.elt;
+
+import java.util.function.Consumer;
+
+import org.apache.jena.sparql.core.DatasetGraph;
+
+/**
+ * <p>An {@link AbstractRDFStreamLoader RDF loader} that supports named graphs, by splitting the input into 
+ * {@link DatasetGraph} batches, as they're created by {@link DatasetBatchCollector}.</p>
+ * 
+ * <p>This is the loader to use with quad formats like TriG and N-Quads, eg, in combination with 
+ * {@link TDBDatasetLoadingHandler}, so that a multi-graph dump is loaded with a single streaming pass. 
+ * Plain triples go to the batch's default graph.</p>
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>18 Oct 2026</dd></dl>
+ *
+ */
+public class RDFDatasetStreamLoader<BJ extends Consumer<DatasetGraph>> 
+	extends AbstractRDFStreamLoader<DatasetGraph, DatasetBatchCollector, BJ>
+{
+	public RDFDatasetStreamLoader () {
+		this ( null );
+	}
+
+	public RDFDatasetStreamLoader ( BJ batchJob, DatasetBatchCollector batchCollector ) {
+		super ( batchJob, batchCollector );
+	}
+
+	public RDFDatasetStreamLoader ( BJ batchJob ) {
+		this ( batchJob, new DatasetBatchCollector () );
+	}
+}
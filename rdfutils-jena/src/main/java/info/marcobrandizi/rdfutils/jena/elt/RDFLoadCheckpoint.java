@@ -0,0 +1,369 @@
+package info.marcobrandizi.rdfutils.jena.elt;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Records the progress of an {@link AbstractRDFStreamLoader} in a file, so that a load that failed can be
+ * resumed from where it stopped.</p>
+ *
+ * <p>The checkpoint contains the number of input statements (triples or quads) that were completed by the batch
+ * job, counting only those that form a contiguous range from the input start, since the batches can complete
+ * in any order. For line-based formats that aren't compressed, it also contains the byte offset in the input that 
+ * corresponds to such a number. When a loader with a checkpoint is run again on the same input, it
+ * {@link AbstractRDFStreamLoader#process(java.io.File, String, org.apache.jena.riot.Lang) seeks to that offset}, or,
+ * for the other formats, skips the already-loaded statements during the parsing, without sending them to
+ * the batch job.</p>
+ *
+ * <p><b>WARNING</b>: a batch is considered done when the batch job returns, so the checkpoint is as reliable as
+ * the batch job is in committing a batch before returning. For instance, {@link TDBLoadingHandler} and 
+ * {@link OrderedBatchJob} do it. Jobs that return earlier must report when a batch is done, by implementing
+ * {@link AsyncBatchJob}, as {@link TDBGroupCommitWriter} does. The jobs that complete their batches only when 
+ * they're closed, such as {@link TDB2BulkLoadingHandler} and {@link ExternalTripleSorter}, are 
+ * {@link DeferredBatchJob}s and the loader refuses to use them with a checkpoint. This can't be checked
+ * when a job is wrapped by another consumer (eg, <code>job.andThen ( ... )</code>), so be careful in such 
+ * cases.</p>
+ *
+ * <p>The checkpoint file is written atomically, at most every {@link #getSaveInterval()} ms and when the
+ * loading ends. It isn't removed when the loading is complete, so that a further run is a no-op, use
+ * {@link #delete()} to start over.</p>
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>18 Oct 2026</dd></dl>
+ *
+ */
+public class RDFLoadCheckpoint
+{
+	private final Path checkpointFile;
+
+	private String input = null;
+	private long committedTriples = 0;
+	private long committedOffset = -1;
+	private UUID bnodeSeed = UUID.randomUUID ();
+
+	private long saveInterval = 5000;
+	private long lastSaveTime = 0;
+	private boolean isDirty = false;
+	private boolean isStarted = false;
+	private boolean isSaving = false;
+
+	/**
+	 * Serialises the saves, which scan the input to find the offset without holding the main lock, so that the
+	 * batch jobs aren't blocked in the meantime. It must be acquired before the main lock, never the other way.
+	 */
+	private final Object saveLock = new Object ();
+
+	/** Completed batches that aren't contiguous to committedTriples yet, first ordinal -> no. of statements */
+	private final TreeMap<Long, Long> pendingRanges = new TreeMap<> ();
+	private LineBasedChunker.StatementScanner offsetScanner = null;
+
+	private Logger log = LoggerFactory.getLogger ( this.getClass () );
+
+	/**
+	 * Loads the checkpoint from the file, if it exists.
+	 */
+	public RDFLoadCheckpoint ( Path checkpointFile )
+	{
+		this.checkpointFile = checkpointFile;
+		if ( !Files.exists ( checkpointFile ) ) return;
+
+		Properties props = new Properties ();
+		try ( InputStream in = Files.newInputStream ( checkpointFile ) ) {
+			props.load ( in );
+		}
+		catch ( IOException ex ) {
+			throw new UncheckedIOException ( String.format (
+				"Error while reading the RDF load checkpoint '%s': %s", checkpointFile.toAbsolutePath (), ex.getMessage () ),
+				ex
+			);
+		}
+
+		this.input = StringUtils.trimToNull ( props.getProperty ( "input" ) );
+		this.committedTriples = Long.parseLong ( props.getProperty ( "committedTriples", "0" ) );
+		this.committedOffset = Long.parseLong ( props.getProperty ( "committedOffset", "-1" ) );
+		String seedStr = props.getProperty ( "bnodeSeed" );
+		if ( seedStr != null ) this.bnodeSeed = UUID.fromString ( seedStr );
+
+		log.info (
+			"RDF load checkpoint loaded from '{}', {} statement(s) already loaded", checkpointFile, committedTriples
+		);
+	}
+
+
+	/**
+	 * Prepares the checkpoint for a new loading.
+	 *
+	 * @param input a label for the input, eg, the file path. If the checkpoint was already used with a different
+	 * input, an exception is thrown, to prevent resuming the wrong input. It can be null, for anonymous inputs.
+	 *
+	 * @param offsetScanner if not null, the checkpoint uses it to track the byte offset of
+	 * {@link #getCommittedTriples()}. It must be positioned at {@link #getCommittedTriples()}, the checkpoint
+	 * closes it in {@link #finish()}.
+	 */
+	void start ( String input, LineBasedChunker.StatementScanner offsetScanner )
+	{
+		synchronized ( this )
+		{
+			checkInput ( input );
+	
+			if ( input != null ) this.input = input;
+			this.offsetScanner = offsetScanner;
+			if ( offsetScanner == null ) committedOffset = -1;
+			else committedOffset = offsetScanner.getOffset ();
+			pendingRanges.clear ();
+			isStarted = true;
+			isDirty = true;
+		}
+		save ();
+	}
+
+	/**
+	 * @throws IllegalArgumentException if this checkpoint was used with an input other than this.
+	 */
+	synchronized void checkInput ( String input )
+	{
+		if ( this.input == null || input == null || this.input.equals ( input ) ) return;
+		throw new IllegalArgumentException ( String.format (
+			"The RDF load checkpoint '%s' is about '%s', can't use it for '%s', delete it to start over",
+			checkpointFile.toAbsolutePath (), this.input, input
+		));
+	}
+
+	/**
+	 * Records that a batch was completed and, if this makes the completed statements to grow, possibly saves
+	 * the checkpoint. The save is done by one job at a time, the others don't wait for it.
+	 */
+	void batchCompleted ( long firstOrdinal, long triples )
+	{
+		synchronized ( this )
+		{
+			// Batches completed after a failed loading has finished are ignored, since the offset scanner is
+			// gone. They will be loaded again in the next run.
+			if ( !isStarted || firstOrdinal < 0 || triples == 0 ) return;
+	
+			pendingRanges.put ( firstOrdinal, triples );
+			for ( Map.Entry<Long, Long> range; ( range = pendingRanges.firstEntry () ) != null; )
+			{
+				if ( range.getKey () != committedTriples ) break;
+				committedTriples += range.getValue ();
+				pendingRanges.pollFirstEntry ();
+				isDirty = true;
+			}
+	
+			if ( !isDirty || isSaving || System.currentTimeMillis () - lastSaveTime < saveInterval ) return;
+			isSaving = true;
+		}
+		save ();
+	}
+
+	/**
+	 * Saves the last state and releases the resources used during the loading.
+	 */
+	void finish ()
+	{
+		synchronized ( saveLock )
+		{
+			synchronized ( this ) {
+				if ( !isStarted ) return;
+			}
+			try {
+				save ();
+			}
+			finally
+			{
+				synchronized ( this ) 
+				{
+					isStarted = false;
+					if ( offsetScanner != null )
+					{
+						try {
+							offsetScanner.close ();
+						}
+						catch ( IOException ex ) {
+							log.warn ( "Error while closing the checkpoint offset scanner: " + ex.getMessage (), ex );
+						}
+						offsetScanner = null;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * <p>Writes the checkpoint file, using a temporary file and an atomic rename, so that a crash doesn't leave
+	 * a corrupted checkpoint.</p>
+	 * 
+	 * <p>Finding the offset of the committed statements requires scanning the input, which is done on a 
+	 * snapshot of the state, so that the batches can keep completing in the meantime.</p>
+	 */
+	public void save ()
+	{
+		synchronized ( saveLock )
+		{
+			String savedInput;
+			long savedTriples, savedOffset;
+			UUID savedBnodeSeed;
+			LineBasedChunker.StatementScanner scanner;
+			synchronized ( this )
+			{
+				if ( !isDirty ) {
+					isSaving = false;
+					return;
+				}
+				isSaving = true;
+				savedInput = input;
+				savedTriples = committedTriples;
+				savedOffset = committedOffset;
+				savedBnodeSeed = bnodeSeed;
+				scanner = offsetScanner;
+			}
+			
+			try 
+			{
+				// The scanner is used by us only, it's closed by finish(), which holds saveLock too
+				if ( scanner != null ) savedOffset = scanner.advanceTo ( savedTriples );
+				write ( savedInput, savedTriples, savedOffset, savedBnodeSeed );
+				
+				synchronized ( this ) 
+				{
+					committedOffset = savedOffset;
+					lastSaveTime = System.currentTimeMillis ();
+					// Some batch might have been completed in the meantime
+					isDirty = committedTriples != savedTriples;
+				}
+				log.debug ( "RDF load checkpoint saved, {} statement(s) loaded", savedTriples );
+			}
+			catch ( IOException ex ) {
+				throw new UncheckedIOException ( String.format (
+					"Error while saving the RDF load checkpoint '%s': %s", checkpointFile.toAbsolutePath (), ex.getMessage () ),
+					ex
+				);
+			}
+			finally 
+			{
+				synchronized ( this ) {
+					isSaving = false;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Writes the checkpoint file with these values, see {@link #save()}.
+	 */
+	private void write ( String input, long committedTriples, long committedOffset, UUID bnodeSeed ) throws IOException
+	{
+		Properties props = new Properties ();
+		if ( input != null ) props.setProperty ( "input", input );
+		props.setProperty ( "committedTriples", String.valueOf ( committedTriples ) );
+		props.setProperty ( "committedOffset", String.valueOf ( committedOffset ) );
+		props.setProperty ( "bnodeSeed", bnodeSeed.toString () );
+
+		Path parentDir = checkpointFile.toAbsolutePath ().getParent ();
+		Files.createDirectories ( parentDir );
+		Path tmpFile = Files.createTempFile ( parentDir, checkpointFile.getFileName ().toString (), ".tmp" );
+		try ( OutputStream out = Files.newOutputStream ( tmpFile ) ) {
+			props.store ( out, "RDF load checkpoint" );
+		}
+		Files.move ( tmpFile, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+	}
+
+	/**
+	 * Removes the checkpoint file and resets this object, so that the next loading starts from the beginning.
+	 */
+	public synchronized void delete ()
+	{
+		try {
+			Files.deleteIfExists ( checkpointFile );
+		}
+		catch ( IOException ex ) {
+			throw new UncheckedIOException ( String.format (
+				"Error while deleting the RDF load checkpoint '%s': %s", checkpointFile.toAbsolutePath (), ex.getMessage () ),
+				ex
+			);
+		}
+		input = null;
+		committedTriples = 0;
+		committedOffset = -1;
+		bnodeSeed = UUID.randomUUID ();
+		pendingRanges.clear ();
+		isDirty = false;
+	}
+
+
+	public Path getCheckpointFile ()
+	{
+		return checkpointFile;
+	}
+
+	/**
+	 * The input this checkpoint refers to, null if it was never used or it was used with an anonymous input.
+	 */
+	public synchronized String getInput ()
+	{
+		return input;
+	}
+
+	/**
+	 * The no. of input statements that were completely loaded, from the beginning of the input.
+	 */
+	public synchronized long getCommittedTriples ()
+	{
+		return committedTriples;
+	}
+
+	/**
+	 * The byte offset in the input corresponding to {@link #getCommittedTriples()}, -1 if it isn't known, eg,
+	 * because the input isn't line-based or it's compressed. During the loading, this is updated by the saves 
+	 * only, so it might refer to less statements than {@link #getCommittedTriples()}.
+	 */
+	public synchronized long getCommittedOffset ()
+	{
+		return committedOffset;
+	}
+
+	/**
+	 * Blank nodes are generated from this seed, so that, when a load is resumed, their labels yield the same
+	 * nodes they yielded in the former loading.
+	 */
+	public synchronized UUID getBnodeSeed ()
+	{
+		return bnodeSeed;
+	}
+
+	/**
+	 * The checkpoint is saved at most with this frequency (in ms) during the loading. Default is 5s.
+	 */
+	public long getSaveInterval ()
+	{
+		return saveInterval;
+	}
+
+	public void setSaveInterval ( long saveInterval )
+	{
+		this.saveInterval = saveInterval;
+	}
+
+	@Override
+	public synchronized String toString ()
+	{
+		return String.format (
+			"RDFLoadCheckpoint { file: %s, input: %s, committedTriples: %d, committedOffset: %d }",
+			checkpointFile, Objects.toString ( input ), committedTriples, committedOffset
+		);
+	}
+}
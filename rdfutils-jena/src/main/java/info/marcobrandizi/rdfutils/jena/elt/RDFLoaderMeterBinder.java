@@ -0,0 +1,75 @@
+package info.marcobrandizi.rdfutils.jena.elt;
+
+import java.util.function.ToDoubleFunction;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * <p>Publishes {@link RDFLoaderMetrics} to a Micrometer registry, eg, 
+ * <code>new RDFLoaderMeterBinder ( loader.getMetrics (), Tags.of ( "loader", "myKG" ) ).bindTo ( registry )</code>.</p>
+ * 
+ * <p>Micrometer is an optional dependency of this module, you need to declare it in your project to use this 
+ * class.</p>
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>18 Oct 2026</dd></dl>
+ *
+ */
+public class RDFLoaderMeterBinder implements MeterBinder
+{
+	private final RDFLoaderMetrics metrics;
+	private final Tags tags;
+	
+	public RDFLoaderMeterBinder ( RDFLoaderMetrics metrics, Tags tags )
+	{
+		this.metrics = metrics;
+		this.tags = tags;
+	}
+
+	public RDFLoaderMeterBinder ( RDFLoaderMetrics metrics ) {
+		this ( metrics, Tags.empty () );
+	}
+
+	@Override
+	public void bindTo ( MeterRegistry registry )
+	{
+		// Counters must be monotonic, so they use the lifetime totals, not the per-loading values
+		counter ( registry, "rdfloader.triples.parsed", "triples", RDFLoaderMetrics::getTotalParsedTriples );
+		counter ( registry, "rdfloader.bytes.read", "bytes", RDFLoaderMetrics::getTotalBytesRead );
+		counter ( registry, "rdfloader.batches.created", "batches", RDFLoaderMetrics::getTotalBatchesCreated );
+		counter ( registry, "rdfloader.batches.completed", "batches", RDFLoaderMetrics::getTotalBatchesCompleted );
+		counter ( registry, "rdfloader.batches.failed", "batches", RDFLoaderMetrics::getTotalBatchesFailed );
+		counter ( registry, "rdfloader.parser.stalls", null, RDFLoaderMetrics::getTotalParserStalls );
+		counter ( 
+			registry, "rdfloader.parser.stall.time", "seconds", 
+			m -> m.getTotalParserStallTimeMs () / 1000d 
+		);
+
+		gauge ( registry, "rdfloader.triples.rate", "triples/s", RDFLoaderMetrics::getParsedTriplesPerSecond );
+		gauge ( registry, "rdfloader.batches.inflight", "batches", RDFLoaderMetrics::getBatchesInFlight );
+		gauge ( registry, "rdfloader.batches.queued", "batches", RDFLoaderMetrics::getQueuedBatches );
+		gauge ( registry, "rdfloader.job.latency.mean", "ms", RDFLoaderMetrics::getJobLatencyMeanMs );
+		gauge ( registry, "rdfloader.job.latency.p50", "ms", RDFLoaderMetrics::getJobLatencyP50Ms );
+		gauge ( registry, "rdfloader.job.latency.p95", "ms", RDFLoaderMetrics::getJobLatencyP95Ms );
+		gauge ( registry, "rdfloader.job.latency.p99", "ms", RDFLoaderMetrics::getJobLatencyP99Ms );
+		gauge ( registry, "rdfloader.job.latency.max", "ms", RDFLoaderMetrics::getJobLatencyMaxMs );
+	}
+	
+	private void counter ( 
+		MeterRegistry registry, String name, String unit, ToDoubleFunction<RDFLoaderMetrics> getter 
+	)
+	{
+		FunctionCounter.builder ( name, metrics, getter ).baseUnit ( unit ).tags ( tags ).register ( registry );
+	}
+
+	private void gauge ( 
+		MeterRegistry registry, String name, String unit, ToDoubleFunction<RDFLoaderMetrics> getter 
+	)
+	{
+		Gauge.builder ( name, metrics, getter ).baseUnit ( unit ).tags ( tags ).register ( registry );
+	}
+}
@@ -0,0 +1,367 @@
+package info.marcobrandizi.rdfutils.jena.elt;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * <p>Runtime metrics about an {@link AbstractRDFStreamLoader}, which are updated during the loading and can be
+ * read at any time, eg, from the loader's {@link AbstractRDFStreamLoader#getMetrics() getter}, from JMX (see 
+ * {@link #registerMBean(String)}), or from Micrometer (see {@link RDFLoaderMeterBinder}).</p>
+ * 
+ * <p>The metrics are about the current or last loading, and they restart from zero when a new loading starts. 
+ * The counters are also available as lifetime totals (eg, {@link #getTotalParsedTriples()}), which never go back, 
+ * and are the ones published by {@link RDFLoaderMeterBinder}, since monitoring systems expect counters to 
+ * be monotonic.</p>
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>18 Oct 2026</dd></dl>
+ *
+ */
+public class RDFLoaderMetrics implements RDFLoaderMetricsMXBean
+{
+	/**
+	 * The JMX domain used by {@link #registerMBean(String)}.
+	 */
+	public static final String JMX_DOMAIN = "info.marcobrandizi.rdfutils";
+	
+	private final AbstractRDFStreamLoader<?, ?, ?> loader;
+	
+	// Lifetime totals, the per-load values are computed from the values at the load start
+	private final LongAdder parsedTriples = new LongAdder ();
+	private final LongAdder bytesRead = new LongAdder ();
+	private final LongAdder batchesCreated = new LongAdder ();
+	private final LongAdder batchesCompleted = new LongAdder ();
+	private final LongAdder batchesFailed = new LongAdder ();
+	private final LatencyHistogram jobLatency = new LatencyHistogram ();
+	
+	private volatile long loadStartParsedTriples = 0;
+	private volatile long loadStartBytesRead = 0;
+	private volatile long loadStartBatchesCreated = 0;
+	private volatile long loadStartBatchesCompleted = 0;
+	private volatile long loadStartBatchesFailed = 0;
+	
+	/** The stalls of the previous loadings, since the {@link InFlightLimiter} restarts at every loading */
+	private volatile long previousStalls = 0;
+	private volatile long previousStallTimeNs = 0;
+	
+	private volatile long startTime = 0;
+	private volatile long endTime = 0;
+	
+	private ObjectName mbeanName = null;
+
+	RDFLoaderMetrics ( AbstractRDFStreamLoader<?, ?, ?> loader ) {
+		this.loader = loader;
+	}
+
+	
+	/**
+	 * This must be called before {@link InFlightLimiter#reset()}, to keep the stall totals.
+	 */
+	void loadStarted ()
+	{
+		loadStartParsedTriples = parsedTriples.sum ();
+		loadStartBytesRead = bytesRead.sum ();
+		loadStartBatchesCreated = batchesCreated.sum ();
+		loadStartBatchesCompleted = batchesCompleted.sum ();
+		loadStartBatchesFailed = batchesFailed.sum ();
+		InFlightLimiter limiter = loader.getInFlightLimiter ();
+		previousStalls += limiter.getStalls ();
+		previousStallTimeNs += limiter.getStallTime ( TimeUnit.NANOSECONDS );
+		jobLatency.reset ();
+		endTime = 0;
+		startTime = System.nanoTime ();
+	}
+	
+	void loadFinished () {
+		endTime = System.nanoTime ();
+	}
+	
+	void batchCreated ( RDFBatchInfo batchInfo ) 
+	{
+		batchesCreated.increment ();
+		parsedTriples.add ( batchInfo.getTriples () );
+	}
+	
+	void batchCompleted ( long latencyNs, boolean isFailed ) 
+	{
+		if ( isFailed ) batchesFailed.increment ();
+		else batchesCompleted.increment ();
+		jobLatency.record ( latencyNs );
+	}
+	
+	/**
+	 * Wraps a parser input, so that the bytes read from it are counted in {@link #getBytesRead()}.
+	 */
+	InputStream countingInputStream ( InputStream in )
+	{
+		return new FilterInputStream ( in ) 
+		{
+			@Override
+			public int read () throws IOException
+			{
+				int result = super.read ();
+				if ( result != -1 ) bytesRead.increment ();
+				return result;
+			}
+
+			@Override
+			public int read ( byte[] b, int off, int len ) throws IOException
+			{
+				int result = super.read ( b, off, len );
+				if ( result > 0 ) bytesRead.add ( result );
+				return result;
+			}
+			
+			@Override
+			public long skip ( long n ) throws IOException
+			{
+				long result = super.skip ( n );
+				if ( result > 0 ) bytesRead.add ( result );
+				return result;
+			}
+		};
+	}
+	
+	
+	/**
+	 * Registers these metrics in the platform MBean server, with the name 
+	 * <code>{@link #JMX_DOMAIN}:type=RDFLoader,name=&lt;name&gt;</code>.
+	 */
+	public synchronized void registerMBean ( String name )
+	{
+		try 
+		{
+			unregisterMBean ();
+			ObjectName objName = new ObjectName ( JMX_DOMAIN + ":type=RDFLoader,name=" + ObjectName.quote ( name ) );
+			ManagementFactory.getPlatformMBeanServer ().registerMBean ( this, objName );
+			mbeanName = objName;
+		}
+		catch ( JMException ex ) {
+			throw new IllegalArgumentException ( String.format ( 
+				"Error while registering the RDF loader metrics '%s' with JMX: %s", name, ex.getMessage () ), 
+				ex 
+			);
+		}
+	}
+	
+	/**
+	 * Does nothing if the metrics aren't registered.
+	 */
+	public synchronized void unregisterMBean ()
+	{
+		if ( mbeanName == null ) return;
+		try 
+		{
+			MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer ();
+			if ( mbeanServer.isRegistered ( mbeanName ) ) mbeanServer.unregisterMBean ( mbeanName );
+			mbeanName = null;
+		}
+		catch ( JMException ex ) {
+			throw new IllegalStateException ( String.format ( 
+				"Error while unregistering the RDF loader metrics '%s' from JMX: %s", mbeanName, ex.getMessage () ), 
+				ex 
+			);
+		}
+	}
+	
+	/**
+	 * The JMX name of these metrics, null if they're not registered.
+	 */
+	public synchronized ObjectName getMBeanName ()
+	{
+		return mbeanName;
+	}
+	
+	
+	@Override
+	public boolean isLoading ()
+	{
+		return startTime != 0 && endTime == 0;
+	}
+
+	@Override
+	public long getElapsedTimeMs ()
+	{
+		long start = startTime;
+		if ( start == 0 ) return 0;
+		long end = endTime;
+		return TimeUnit.NANOSECONDS.toMillis ( ( end == 0 ? System.nanoTime () : end ) - start );
+	}
+
+	/**
+	 * The triples that were parsed and sent to batches. These are counted when a batch is submitted, so they
+	 * don't include the ones in the batch that is being filled.  
+	 */
+	@Override
+	public long getParsedTriples ()
+	{
+		return parsedTriples.sum () - loadStartParsedTriples;
+	}
+
+	@Override
+	public long getTotalParsedTriples ()
+	{
+		return parsedTriples.sum ();
+	}
+
+	/**
+	 * The average throughput since the loading started. 
+	 */
+	@Override
+	public double getParsedTriplesPerSecond ()
+	{
+		long elapsed = getElapsedTimeMs ();
+		return elapsed == 0 ? 0d : getParsedTriples () * 1000d / elapsed;
+	}
+
+	/**
+	 * The bytes read by the parser(s), after decompression.
+	 */
+	@Override
+	public long getBytesRead ()
+	{
+		return bytesRead.sum () - loadStartBytesRead;
+	}
+
+	@Override
+	public long getTotalBytesRead ()
+	{
+		return bytesRead.sum ();
+	}
+
+	@Override
+	public long getBatchesCreated ()
+	{
+		return batchesCreated.sum () - loadStartBatchesCreated;
+	}
+
+	@Override
+	public long getTotalBatchesCreated ()
+	{
+		return batchesCreated.sum ();
+	}
+
+	@Override
+	public long getBatchesInFlight ()
+	{
+		return Math.max ( 0, getBatchesCreated () - getBatchesCompleted () - getBatchesFailed () );
+	}
+
+	@Override
+	public long getBatchesCompleted ()
+	{
+		return batchesCompleted.sum () - loadStartBatchesCompleted;
+	}
+
+	@Override
+	public long getTotalBatchesCompleted ()
+	{
+		return batchesCompleted.sum ();
+	}
+
+	@Override
+	public long getBatchesFailed ()
+	{
+		return batchesFailed.sum () - loadStartBatchesFailed;
+	}
+
+	@Override
+	public long getTotalBatchesFailed ()
+	{
+		return batchesFailed.sum ();
+	}
+
+	@Override
+	public long getQueuedBatches ()
+	{
+		return loader.getQueuedBatches ();
+	}
+
+	/**
+	 * The histogram of the batch job durations. 
+	 */
+	public LatencyHistogram getJobLatency ()
+	{
+		return jobLatency;
+	}
+	
+	@Override
+	public long getJobLatencyMeanMs ()
+	{
+		return jobLatency.getMean ( TimeUnit.MILLISECONDS );
+	}
+
+	@Override
+	public long getJobLatencyP50Ms ()
+	{
+		return jobLatency.getPercentile ( 50, TimeUnit.MILLISECONDS );
+	}
+
+	@Override
+	public long getJobLatencyP95Ms ()
+	{
+		return jobLatency.getPercentile ( 95, TimeUnit.MILLISECONDS );
+	}
+
+	@Override
+	public long getJobLatencyP99Ms ()
+	{
+		return jobLatency.getPercentile ( 99, TimeUnit.MILLISECONDS );
+	}
+
+	@Override
+	public long getJobLatencyMaxMs ()
+	{
+		return jobLatency.getMax ( TimeUnit.MILLISECONDS );
+	}
+
+	/**
+	 * How many times the parser waited for the {@link InFlightLimiter flow control}.
+	 */
+	@Override
+	public long getParserStalls ()
+	{
+		return loader.getInFlightLimiter ().getStalls ();
+	}
+
+	@Override
+	public long getParserStallTimeMs ()
+	{
+		return loader.getInFlightLimiter ().getStallTime ( TimeUnit.MILLISECONDS );
+	}
+
+	@Override
+	public long getTotalParserStalls ()
+	{
+		return previousStalls + getParserStalls ();
+	}
+
+	@Override
+	public long getTotalParserStallTimeMs ()
+	{
+		return TimeUnit.NANOSECONDS.toMillis ( 
+			previousStallTimeNs + loader.getInFlightLimiter ().getStallTime ( TimeUnit.NANOSECONDS ) 
+		);
+	}
+	
+	@Override
+	public String toString ()
+	{
+		return String.format ( 
+			"RDFLoaderMetrics { parsedTriples: %d, triples/s: %.1f, bytesRead: %d, batches created/completed/failed: "
+			+ "%d/%d/%d, job latency p50/p95/p99/max: %d/%d/%d/%d ms, parser stalls: %d (%d ms) }",
+			getParsedTriples (), getParsedTriplesPerSecond (), getBytesRead (), 
+			getBatchesCreated (), getBatchesCompleted (), getBatchesFailed (),
+			getJobLatencyP50Ms (), getJobLatencyP95Ms (), getJobLatencyP99Ms (), getJobLatencyMaxMs (),
+			getParserStalls (), getParserStallTimeMs ()
+		);
+	}
+}
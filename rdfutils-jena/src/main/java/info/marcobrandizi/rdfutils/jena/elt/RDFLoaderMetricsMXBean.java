@@ -0,0 +1,43 @@
+package info.marcobrandizi.rdfutils.jena.elt;
+
+/**
+ * The JMX view of {@link RDFLoaderMetrics}. The values refer to the current or last loading, except the 
+ * <code>Total</code> ones, which are lifetime totals.
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>18 Oct 2026</dd></dl>
+ *
+ */
+public interface RDFLoaderMetricsMXBean
+{
+	boolean isLoading ();
+	long getElapsedTimeMs ();
+	
+	long getParsedTriples ();
+	double getParsedTriplesPerSecond ();
+	long getBytesRead ();
+	long getTotalParsedTriples ();
+	long getTotalBytesRead ();
+	
+	long getBatchesCreated ();
+	long getBatchesInFlight ();
+	long getBatchesCompleted ();
+	long getBatchesFailed ();
+	long getTotalBatchesCreated ();
+	long getTotalBatchesCompleted ();
+	long getTotalBatchesFailed ();
+	
+	/** The batches submitted to the executor and not yet picked by a batch job */
+	long getQueuedBatches ();
+	
+	long getJobLatencyMeanMs ();
+	long getJobLatencyP50Ms ();
+	long getJobLatencyP95Ms ();
+	long getJobLatencyP99Ms ();
+	long getJobLatencyMaxMs ();
+	
+	long getParserStalls ();
+	long getParserStallTimeMs ();
+	long getTotalParserStalls ();
+	long getTotalParserStallTimeMs ();
+}
@@ -0,0 +1,40 @@
+package info.marcobrandizi.rdfutils.jena.elt;
+
+import java.util.function.Consumer;
+
+/**
+ * <p>An {@link AbstractRDFStreamLoader RDF loader} based on {@link OffHeapTripleBatch}, which keeps the batch 
+ * triples outside of the Java heap.</p>
+ * 
+ * <p>This is meant for very big batches, which would stress the GC if they were kept on the heap. The batches
+ * are {@link OffHeapTripleBatch#close() released} as soon as their batch job has finished, so the jobs must 
+ * not keep references to them, nor process them asynchronously. Jobs that need to write the triples to a TDB
+ * can use {@link TDBLoadingHandler#forOffHeapTripleBatches()}.</p>
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>18 Oct 2026</dd></dl>
+ *
+ */
+public class RDFOffHeapStreamLoader<BJ extends Consumer<OffHeapTripleBatch>> 
+	extends AbstractRDFStreamLoader<OffHeapTripleBatch, OffHeapTripleBatchCollector, BJ>
+{
+	public RDFOffHeapStreamLoader () {
+		this ( null );
+	}
+
+	public RDFOffHeapStreamLoader ( BJ batchJob, OffHeapTripleBatchCollector batchCollector ) {
+		super ( batchJob, batchCollector );
+	}
+
+	public RDFOffHeapStreamLoader ( BJ batchJob ) {
+		this ( batchJob, new OffHeapTripleBatchCollector () );
+	}
+
+	/**
+	 * Returns the batch buffers to the pool.
+	 */
+	@Override
+	protected void releaseBatch ( OffHeapTripleBatch batch ) {
+		batch.close ();
+	}
+}
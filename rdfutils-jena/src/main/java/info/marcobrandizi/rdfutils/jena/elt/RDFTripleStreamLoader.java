@@ -0,0 +1,30 @@
+package info.marcobrandizi.rdfutils.jena.elt;
+
+import java.util.function.Consumer;
+
+/**
+ * <p>An {@link AbstractRDFStreamLoader RDF loader} based on the lightweight {@link TripleBatch}.</p>
+ * 
+ * <p>This is faster than {@link RDFStreamLoader} when the batch jobs only need to forward the triples 
+ * somewhere else, eg, to a TDB via {@link TDBLoadingHandler#forTripleBatches()}. Jobs that need a model 
+ * can still be used via {@link TripleBatch#modelJob(Consumer)}.</p>
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>18 Oct 2026</dd></dl>
+ *
+ */
+public class RDFTripleStreamLoader<BJ extends Consumer<TripleBatch>> 
+	extends AbstractRDFStreamLoader<TripleBatch, TripleBatchCollector, BJ>
+{
+	public RDFTripleStreamLoader () {
+		this ( null );
+	}
+
+	public RDFTripleStreamLoader ( BJ batchJob, TripleBatchCollector batchCollector ) {
+		super ( batchJob, batchCollector );
+	}
+
+	public RDFTripleStreamLoader ( BJ batchJob ) {
+		this ( batchJob, new TripleBatchCollector () );
+	}
+}
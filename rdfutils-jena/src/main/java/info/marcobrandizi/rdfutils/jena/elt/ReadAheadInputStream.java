@@ -0,0 +1,146 @@
+package info.marcobrandizi.rdfutils.jena.elt;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * <p>An input stream that reads its source on a dedicated thread, in large chunks that are buffered ahead 
+ * of the consumer.</p>
+ * 
+ * <p>This is used with expensive sources, such as decompressing streams (see 
+ * {@link JenaIoUtils#openInputStream(java.nio.file.Path)}), so that the reading of the source overlaps with
+ * what the consumer does (eg, RDF parsing). Errors from the source are re-thrown to the consumer.</p> 
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>18 Oct 2026</dd></dl>
+ *
+ */
+public class ReadAheadInputStream extends InputStream
+{
+	private static final byte[] EOF = new byte [ 0 ];
+	
+	private final BlockingQueue<byte[]> chunks;
+	private final Thread readerThread;
+	private volatile Throwable sourceError = null;
+	private volatile boolean isClosed = false;
+	
+	private byte[] currentChunk = null;
+	private int currentPos = 0;
+	private boolean isEOF = false;
+	
+	/**
+	 * @param chunkSize the size of the chunks read from the source
+	 * @param maxChunks how many chunks can be read ahead of the consumer
+	 */
+	public ReadAheadInputStream ( InputStream source, int chunkSize, int maxChunks )
+	{
+		this.chunks = new ArrayBlockingQueue<> ( maxChunks );
+		this.readerThread = new Thread ( () -> readSource ( source, chunkSize ), "readAhead" );
+		this.readerThread.setDaemon ( true );
+		this.readerThread.start ();
+	}
+
+	/**
+	 * 1MB chunks, 8 chunks ahead. 
+	 */
+	public ReadAheadInputStream ( InputStream source ) {
+		this ( source, 1 << 20, 8 );
+	}
+
+	
+	private void readSource ( InputStream source, int chunkSize )
+	{
+		try ( source )
+		{
+			while ( !isClosed )
+			{
+				byte[] chunk = new byte [ chunkSize ];
+				int n = source.readNBytes ( chunk, 0, chunkSize );
+				if ( n > 0 ) chunks.put ( n == chunkSize ? chunk : Arrays.copyOf ( chunk, n ) );
+				if ( n < chunkSize ) break;
+			}
+		}
+		catch ( InterruptedException ex ) {
+			// We've been closed, just stop
+		}
+		catch ( Throwable ex ) {
+			sourceError = ex;
+		}
+		finally 
+		{
+			// If it's closed, the queue was cleared and the consumer doesn't need it anyway. Else, the consumer 
+			// hangs without the EOF, so we must wait for room in the queue (close() interrupts us).
+			if ( !isClosed ) 
+			{
+				try {
+					chunks.put ( EOF );
+				}
+				catch ( InterruptedException ex ) {
+					// Closed in the meantime
+				}
+			}
+		}
+	}
+	
+	
+	@Override
+	public int read () throws IOException
+	{
+		if ( !fetchChunk () ) return -1;
+		return currentChunk [ currentPos++ ] & 0xff;
+	}
+
+	@Override
+	public int read ( byte[] bytes, int off, int len ) throws IOException
+	{
+		if ( len == 0 ) return 0;
+		if ( !fetchChunk () ) return -1;
+		
+		len = Math.min ( len, currentChunk.length - currentPos );
+		System.arraycopy ( currentChunk, currentPos, bytes, off, len );
+		currentPos += len;
+		return len;
+	}
+
+	/**
+	 * Ensures there is something to read in the current chunk.
+	 * 
+	 * @return false if the end of the stream was reached.
+	 */
+	private boolean fetchChunk () throws IOException
+	{
+		if ( isClosed ) throw new IOException ( "Read-ahead stream already closed" );
+		
+		while ( !isEOF && ( currentChunk == null || currentPos == currentChunk.length ) )
+		{
+			try {
+				currentChunk = chunks.take ();
+			}
+			catch ( InterruptedException ex ) {
+				Thread.currentThread ().interrupt ();
+				throw new IOException ( "Read-ahead stream interrupted", ex );
+			}
+			currentPos = 0;
+			if ( currentChunk == EOF ) isEOF = true;
+		}
+		
+		if ( !isEOF ) return true;
+		
+		Throwable ex = sourceError;
+		if ( ex == null ) return false;
+		if ( ex instanceof IOException ioex ) throw ioex;
+		throw new IOException ( "Error while reading the read-ahead source: " + ex.getMessage (), ex );
+	}
+
+	@Override
+	public void close ()
+	{
+		if ( isClosed ) return;
+		isClosed = true;
+		readerThread.interrupt ();
+		chunks.clear ();
+	}
+}
@@ -0,0 +1,35 @@
+package info.marcobrandizi.rdfutils.jena.elt;
+
+import java.util.function.Consumer;
+
+/**
+ * <p>A batch job that receives the batches of an {@link AbstractRDFStreamLoader} together with their sequence
+ * number, ie, their position in the order the loader created them. The loader recognises this interface and 
+ * calls {@link #accept(Object, long)} instead of {@link #accept(Object)}.</p>
+ * 
+ * <p>{@link #accept(Object)} is still available, for uses outside the loader, and implementations should assign 
+ * a sequence by themselves, eg, based on the invocation order. The two methods shouldn't be mixed within the 
+ * same loading.</p>
+ * 
+ * <p>With the sequential process() methods, the sequence follows the input order. With parallel parsing (see
+ * {@link AbstractRDFStreamLoader#processParallel(java.io.File, String, org.apache.jena.riot.Lang)}), it's just the
+ * order in which the parsers submitted their batches, which isn't deterministic.</p>
+ * 
+ * <p>See {@link OrderedBatchJob} for the main use of this.</p>
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>18 Oct 2026</dd></dl>
+ *
+ */
+public interface SequencedBatchJob<B> extends Consumer<B>
+{
+	/**
+	 * @param sequence the sequence number of the batch, which starts from 0 at every loading.
+	 */
+	void accept ( B batch, long sequence );
+	
+	/**
+	 * Called by the loader when a new loading starts, ie, when the sequence numbers restart from 0.
+	 */
+	default void loadStarted () {}
+}
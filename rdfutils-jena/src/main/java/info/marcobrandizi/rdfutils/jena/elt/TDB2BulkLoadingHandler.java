@@ -0,0 +1,205 @@
+package info.marcobrandizi.rdfutils.jena.elt;
+
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+import org.apache.jena.query.Dataset;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.system.Txn;
+import org.apache.jena.tdb2.loader.DataLoader;
+import org.apache.jena.tdb2.loader.LoaderFactory;
+import org.apache.jena.tdb2.loader.base.MonitorOutput;
+import org.apache.jena.tdb2.sys.TDBInternal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import info.marcobrandizi.rdfutils.jena.DatasetWriteGenerations;
+
+/**
+ * <p>An alternative to {@link TDBLoadingHandler}, which sends the loader batches to the TDB2 bulk loaders, the
+ * same used by <code>tdb2.tdbloader</code>, which are much faster than the transactional loading, when a
+ * dataset is built from scratch.</p>
+ *
+ * <p>The bulk loaders can only be used with an empty TDB2 dataset, if that's not the case, this handler switches to
+ * the transactional loading of {@link TDBLoadingHandler}. That's decided upon the first batch.</p>
+ *
+ * <p>The bulk load is finished (and made durable) by {@link #close()}, which you <b>must</b> call after the loader
+ * has finished. The dataset can't be used by anything else until then. For the same reason, this is a 
+ * {@link DeferredBatchJob}, which can't be used with a {@link RDFLoadCheckpoint}, even when it switches to the 
+ * transactional loading.</p>
+ *
+ * <p>The bulk loader is fed with one batch at a time, since it parallelises the indexing by itself.</p>
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>18 Oct 2026</dd></dl>
+ *
+ */
+public class TDB2BulkLoadingHandler implements Consumer<Model>, DeferredBatchJob, AutoCloseable
+{
+	/**
+	 * The TDB2 bulk loader to use, see the <a href = "https://jena.apache.org/documentation/tdb2/tdb2_cmds.html">TDB2
+	 * documentation</a>.
+	 */
+	public static enum LoaderType
+	{
+		/** Uses many threads and a lot of RAM, the fastest with enough hardware. */
+		PARALLEL ( LoaderFactory::parallelLoader ),
+		/** Indexes in phases, uses less threads and RAM than {@link #PARALLEL}, it's the tdb2.tdbloader default. */
+		PHASED ( LoaderFactory::phasedLoader );
+
+		private final BiFunction<DatasetGraph, MonitorOutput, DataLoader> factory;
+
+		private LoaderType ( BiFunction<DatasetGraph, MonitorOutput, DataLoader> factory ) {
+			this.factory = factory;
+		}
+	}
+
+	private final Dataset dataSet;
+	private LoaderType loaderType = LoaderType.PARALLEL;
+
+	private DataLoader bulkLoader = null;
+	private StreamRDF bulkStream = null;
+	private TDBLoadingHandler fallbackHandler = null;
+	private boolean isClosed = false;
+	private Exception bulkError = null;
+
+	private Logger log = LoggerFactory.getLogger ( this.getClass () );
+
+	public TDB2BulkLoadingHandler ( Dataset dataSet ) {
+		this.dataSet = dataSet;
+	}
+
+	public TDB2BulkLoadingHandler ( Dataset dataSet, LoaderType loaderType )
+	{
+		this ( dataSet );
+		this.loaderType = loaderType;
+	}
+
+
+	@Override
+	public void accept ( Model model ) {
+		accept ( 
+			stream -> model.getGraph ().find ().forEachRemaining ( stream::triple ), 
+			() -> fallbackHandler.accept ( model ) 
+		);
+	}
+
+	/**
+	 * A variant of this handler for {@link RDFTripleStreamLoader}. It shares the same bulk load, so you still need
+	 * to {@link #close()} this handler at the end.
+	 */
+	public Consumer<TripleBatch> forTripleBatches ()
+	{
+		return new TripleBatchHandler ();
+	}
+
+	/**
+	 * The {@link #forTripleBatches()} variant, it's a class, so that the loaders can recognise it as
+	 * {@link DeferredBatchJob}.
+	 */
+	private class TripleBatchHandler implements Consumer<TripleBatch>, DeferredBatchJob
+	{
+		@Override
+		public void accept ( TripleBatch batch ) {
+			TDB2BulkLoadingHandler.this.accept ( 
+				stream -> batch.forEach ( stream::triple ), 
+				() -> fallbackHandler.forTripleBatches ().accept ( batch ) 
+			);
+		}
+	}
+
+	/**
+	 * @param bulkAction sends a batch to the bulk loader
+	 * @param fallbackAction sends a batch to the transactional handler
+	 */
+	private synchronized void accept ( Consumer<StreamRDF> bulkAction, Runnable fallbackAction )
+	{
+		if ( isClosed ) throw new IllegalStateException ( "Can't write to TDB, the bulk loading handler is closed" );
+		if ( bulkError != null ) throw new IllegalStateException (
+			"TDB bulk loading failed: " + bulkError.getMessage (), bulkError
+		);
+
+		init ();
+		if ( fallbackHandler != null ) {
+			fallbackAction.run ();
+			return;
+		}
+
+		try {
+			bulkAction.accept ( bulkStream );
+		}
+		catch ( RuntimeException ex ) {
+			bulkError = ex;
+			bulkLoader.finishException ( ex );
+			throw ex;
+		}
+	}
+
+	/**
+	 * Decides between bulk and transactional loading and, for the former, starts the bulk loader.
+	 */
+	private void init ()
+	{
+		if ( bulkLoader != null || fallbackHandler != null ) return;
+
+		DatasetGraph dsg = dataSet.asDatasetGraph ();
+		if ( !TDBInternal.isTDB2 ( dsg ) )
+		{
+			log.warn ( "The target dataset isn't TDB2, can't use the bulk loader, switching to transactional loading" );
+			fallbackHandler = new TDBLoadingHandler ( dataSet );
+			return;
+		}
+		if ( !Txn.calculateRead ( dataSet, dsg::isEmpty ) )
+		{
+			log.info ( "The target TDB2 dataset isn't empty, can't use the bulk loader, switching to transactional loading" );
+			fallbackHandler = new TDBLoadingHandler ( dataSet );
+			return;
+		}
+
+		log.info ( "Starting the TDB2 {} bulk loader", loaderType.name ().toLowerCase () );
+		MonitorOutput monitorOut = ( fmt, args ) -> log.info ( String.format ( fmt, args ) ); 
+		bulkLoader = loaderType.factory.apply ( dsg, monitorOut );
+		bulkLoader.startBulk ();
+		bulkStream = bulkLoader.stream ();
+	}
+
+	/**
+	 * Finishes the bulk load, committing the data. Does nothing in the transactional mode, where every batch
+	 * is committed by itself.
+	 */
+	@Override
+	public synchronized void close ()
+	{
+		if ( isClosed ) return;
+		isClosed = true;
+
+		if ( bulkLoader == null || bulkError != null ) return;
+
+		bulkLoader.finishBulk ();
+		DatasetWriteGenerations.bump ( dataSet );
+		log.info (
+			"TDB2 bulk load finished, {} triple(s) loaded", bulkLoader.countTriples ()
+		);
+	}
+
+	/**
+	 * true if the handler is using the bulk loader. This is decided upon the first batch, so it's always false
+	 * before that.
+	 */
+	public synchronized boolean isBulkLoading ()
+	{
+		return bulkLoader != null;
+	}
+
+	public Dataset getDataSet ()
+	{
+		return dataSet;
+	}
+
+	public LoaderType getLoaderType ()
+	{
+		return loaderType;
+	}
+}
@@ -0,0 +1,71 @@
+package info.marcobrandizi.rdfutils.jena.elt;
+
+import java.util.function.Consumer;
+
+import org.apache.jena.query.Dataset;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.system.Txn;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import info.marcobrandizi.rdfutils.jena.DatasetWriteGenerations;
+
+/**
+ * The equivalent of {@link TDBLoadingHandler} for {@link RDFDatasetStreamLoader}, which writes every
+ * quad of a batch into the same graph of the target TDB triple store (ie, named graph quads go to the 
+ * corresponding named graph, triples in the batch's default graph go to the TDB default graph). 
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>18 Oct 2026</dd></dl>
+ *
+ */
+public class TDBDatasetLoadingHandler implements Consumer<DatasetGraph>
+{
+	private Dataset dataSet = null;
+	
+	private Logger log = LoggerFactory.getLogger ( this.getClass () );
+		
+	public TDBDatasetLoadingHandler ( Dataset dataSet )  
+	{
+		this.dataSet = dataSet;
+	}
+
+	public TDBDatasetLoadingHandler () {
+	}
+	
+	@Override
+	public void accept ( DatasetGraph batch )
+	{
+		long[] count = { 0 };
+		TDBTransactionEvent.record ( "TDBDatasetLoadingHandler", 1, () -> count [ 0 ], () ->
+			Txn.executeWrite ( this.dataSet, () -> 
+			{
+				DatasetGraph target = dataSet.asDatasetGraph ();
+				batch.find ().forEachRemaining ( quad -> {
+					target.add ( quad );
+					count [ 0 ]++;
+				});
+				log.debug ( "{} quad(s) written to TDB", count [ 0 ] );
+			})
+		);
+		DatasetWriteGenerations.bump ( this.dataSet );
+	}
+
+	/**
+	 * A group-commit variant of this handler, see {@link TDBLoadingHandler#groupCommitWriter()}. 
+	 */
+	public TDBGroupCommitWriter<DatasetGraph> groupCommitWriter ()
+	{
+		return TDBGroupCommitWriter.forDatasetGraphs ( this.dataSet );
+	}
+
+	public Dataset getDataSet ()
+	{
+		return dataSet;
+	}
+
+	public void setDataSet ( Dataset dataSet )
+	{
+		this.dataSet = dataSet;
+	}
+}
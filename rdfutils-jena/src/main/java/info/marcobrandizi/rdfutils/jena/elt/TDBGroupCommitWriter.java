@@ -0,0 +1,437 @@
+package info.marcobrandizi.rdfutils.jena.elt;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.ToLongFunction;
+
+import org.apache.jena.query.Dataset;
+import org.apache.jena.query.TxnType;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import info.marcobrandizi.rdfutils.jena.DatasetWriteGenerations;
+
+/**
+ * <p>A TDB writer that groups many batches into the same write transaction.</p>
+ *
+ * <p>TDB allows for one writer only, so when handlers like {@link TDBLoadingHandler} are used with the
+ * multi-thread RDF loaders, the batch jobs just queue on the write lock and each of them pays for a whole commit.
+ * With this writer, the batch jobs put their batches on a queue and a single writer thread takes them and writes
+ * them within the same transaction, until either {@link #getMaxCommitTriples()} triples are written or
+ * {@link #getMaxCommitDelay()} ms are passed since the transaction started.</p>
+ *
+ * <p>{@link #accept(Object)} returns once a batch is queued. This is an {@link AsyncBatchJob}, so the loaders 
+ * {@link #flush() flush} it at the end of every loading, and their checkpoints record a batch only after its 
+ * commit. When used by other code, you <b>must</b> call {@link #flush()} or {@link #close()}, to wait for all 
+ * the batches to be committed. Both re-throw the write errors, which are also re-thrown by any further 
+ * {@link #accept(Object)} invocation. The queue is bounded by {@link #getQueueSize()}, so that the workers are 
+ * stopped when the writer can't keep up. You still need to {@link #close()} the writer, to stop its thread.</p>
+ *
+ * <p>The commit statistics are logged when the writer is closed and are available from the getters.</p>
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>18 Oct 2026</dd></dl>
+ *
+ */
+public class TDBGroupCommitWriter<B> implements AsyncBatchJob<B>, AutoCloseable
+{
+	private static record QueuedBatch<B> ( B batch, Runnable onCompletion ) {}
+	
+	private final Dataset dataSet;
+	private final BiConsumer<Dataset, B> batchWriter;
+	private final ToLongFunction<B> batchSizer;
+
+	private long maxCommitTriples = 1_000_000;
+	private long maxCommitDelay = 1000;
+	private int queueSize = 64;
+
+	private BlockingQueue<QueuedBatch<B>> queue = null;
+	private Thread writerThread = null;
+	private volatile boolean isClosed = false;
+
+	/** Protects the counters below and is used to signal commits */
+	private final Object commitLock = new Object ();
+	private long queuedBatches = 0;
+	private long committedBatches = 0;
+	private long committedTriples = 0;
+	private long commits = 0;
+	private long totalCommitTime = 0;
+	private long maxCommitTime = 0;
+	private volatile Throwable writeError = null;
+
+	private Logger log = LoggerFactory.getLogger ( this.getClass () );
+
+	/**
+	 * @param batchWriter writes a batch into the dataset, it's called within the current write transaction.
+	 * @param batchSizer tells the number of triples in a batch.
+	 */
+	public TDBGroupCommitWriter ( Dataset dataSet, BiConsumer<Dataset, B> batchWriter, ToLongFunction<B> batchSizer )
+	{
+		this.dataSet = dataSet;
+		this.batchWriter = batchWriter;
+		this.batchSizer = batchSizer;
+	}
+
+	/**
+	 * Writes {@link Model} batches into the default graph, for {@link RDFStreamLoader}.
+	 */
+	public static TDBGroupCommitWriter<Model> forModels ( Dataset dataSet ) {
+		return new TDBGroupCommitWriter<> ( dataSet, ( ds, model ) -> ds.getDefaultModel ().add ( model ), Model::size );
+	}
+
+	/**
+	 * Writes {@link TripleBatch triple batches} into the default graph, for {@link RDFTripleStreamLoader}.
+	 */
+	public static TDBGroupCommitWriter<TripleBatch> forTripleBatches ( Dataset dataSet )
+	{
+		return new TDBGroupCommitWriter<> (
+			dataSet, ( ds, batch ) -> batch.addTo ( ds.asDatasetGraph ().getDefaultGraph () ), TripleBatch::size
+		);
+	}
+
+	/**
+	 * Writes dataset batches into the same graphs they come from, for {@link RDFDatasetStreamLoader}.
+	 */
+	public static TDBGroupCommitWriter<DatasetGraph> forDatasetGraphs ( Dataset dataSet )
+	{
+		return new TDBGroupCommitWriter<> (
+			dataSet,
+			( ds, batch ) -> {
+				DatasetGraph target = ds.asDatasetGraph ();
+				batch.find ().forEachRemaining ( target::add );
+			},
+			batch -> batch.stream ().count ()
+		);
+	}
+
+
+	/**
+	 * Puts the batch on the writer's queue, waiting if the queue is full. onCompletion is called by the writer 
+	 * thread, after the batch has been committed.
+	 *
+	 * @throws IllegalStateException if the writer is closed or a previous write failed.
+	 */
+	@Override
+	public void accept ( B batch, Runnable onCompletion )
+	{
+		checkWriteError ();
+		if ( isClosed ) throw new IllegalStateException ( "Can't write to TDB, the group-commit writer is closed" );
+
+		startWriter ();
+		synchronized ( commitLock ) {
+			queuedBatches++;
+		}
+		try 
+		{
+			QueuedBatch<B> queuedBatch = new QueuedBatch<> ( batch, onCompletion );
+			// Re-check errors from time to time, else we would wait forever on a dead writer.
+			while ( !queue.offer ( queuedBatch, 1, TimeUnit.SECONDS ) )
+				checkWriteError ();
+		}
+		catch ( InterruptedException ex )
+		{
+			synchronized ( commitLock ) {
+				queuedBatches--;
+			}
+			Thread.currentThread ().interrupt ();
+			throw new RuntimeException ( "Interrupted while queueing a batch for TDB", ex );
+		}
+	}
+
+	private synchronized void startWriter ()
+	{
+		if ( writerThread != null ) return;
+
+		queue = new ArrayBlockingQueue<> ( queueSize );
+		writerThread = new Thread ( this::writeLoop, "tdbGroupCommit" );
+		writerThread.setDaemon ( true );
+		writerThread.start ();
+	}
+
+	private void writeLoop ()
+	{
+		try
+		{
+			while ( true )
+			{
+				QueuedBatch<B> batch = queue.poll ( 100, TimeUnit.MILLISECONDS );
+				if ( batch == null ) {
+					if ( isClosed && queue.isEmpty () ) return;
+					continue;
+				}
+				writeGroup ( batch );
+			}
+		}
+		catch ( InterruptedException ex ) {
+			// Closing without flushing, just stop
+		}
+		catch ( Throwable ex )
+		{
+			log.error ( "Error while writing to TDB: " + ex.getMessage (), ex );
+			synchronized ( commitLock ) {
+				writeError = ex;
+				commitLock.notifyAll ();
+			}
+		}
+	}
+
+	/**
+	 * Opens a transaction with the first batch and adds further queued batches to it, until one of the
+	 * thresholds is reached or no batch arrives in time.
+	 */
+	private void writeGroup ( QueuedBatch<B> firstBatch ) throws InterruptedException
+	{
+		List<Runnable> completions = new ArrayList<> ();
+		long startTime = System.nanoTime ();
+		long deadline = startTime + TimeUnit.MILLISECONDS.toNanos ( maxCommitDelay );
+		long batches = 0, triples = 0, commitTime = 0;
+		boolean isFailed = true;
+
+		TDBTransactionEvent txnEvent = new TDBTransactionEvent ();
+		txnEvent.begin ();
+		dataSet.begin ( TxnType.WRITE );
+		try
+		{
+			for ( QueuedBatch<B> batch = firstBatch; batch != null; )
+			{
+				batchWriter.accept ( dataSet, batch.batch () );
+				completions.add ( batch.onCompletion () );
+				batches++;
+				triples += batchSizer.applyAsLong ( batch.batch () );
+
+				if ( triples >= maxCommitTriples ) break;
+				long waitTime = deadline - System.nanoTime ();
+				if ( waitTime <= 0 ) break;
+				batch = queue.poll ( waitTime, TimeUnit.NANOSECONDS );
+			}
+
+			long commitStart = System.nanoTime ();
+			dataSet.commit ();
+			commitTime = System.nanoTime () - commitStart;
+			DatasetWriteGenerations.bump ( dataSet );
+			isFailed = false;
+
+			log.debug (
+				"{} batch(es), {} triple(s) committed to TDB, commit took {} ms", batches, triples, commitTime / 1_000_000
+			);
+		}
+		catch ( RuntimeException | Error | InterruptedException ex ) {
+			dataSet.abort ();
+			throw ex;
+		}
+		finally 
+		{
+			dataSet.end ();
+			
+			txnEvent.end ();
+			if ( txnEvent.shouldCommit () )
+			{
+				txnEvent.handler = "TDBGroupCommitWriter";
+				txnEvent.batches = batches;
+				txnEvent.triples = triples;
+				txnEvent.commitDuration = commitTime;
+				txnEvent.failed = isFailed;
+				txnEvent.commit ();
+			}
+		}
+		
+		// Before the counters, so that flush() returns after the completions. Failures here stop the writer 
+		// too, since the batches couldn't be recorded as done.
+		completions.forEach ( Runnable::run );
+
+		synchronized ( commitLock )
+		{
+			commits++;
+			committedBatches += batches;
+			committedTriples += triples;
+			totalCommitTime += commitTime;
+			maxCommitTime = Math.max ( maxCommitTime, commitTime );
+			commitLock.notifyAll ();
+		}
+	}
+
+
+	/**
+	 * Waits until all the batches queued so far are committed.
+	 *
+	 * @throws IllegalStateException if some write failed.
+	 */
+	@Override
+	public void flush ()
+	{
+		synchronized ( commitLock )
+		{
+			while ( writeError == null && committedBatches < queuedBatches )
+			{
+				try {
+					commitLock.wait ();
+				}
+				catch ( InterruptedException ex )
+				{
+					Thread.currentThread ().interrupt ();
+					throw new RuntimeException ( "Interrupted while waiting for TDB commits", ex );
+				}
+			}
+		}
+		checkWriteError ();
+	}
+
+	/**
+	 * {@link #flush() Flushes} the queue, stops the writer thread and logs the commit statistics.
+	 */
+	@Override
+	public void close ()
+	{
+		if ( isClosed ) return;
+		try {
+			flush ();
+		}
+		finally
+		{
+			isClosed = true;
+			if ( writerThread != null ) {
+				// It's already flushed, unless there was an error
+				if ( writeError != null ) writerThread.interrupt ();
+				try {
+					writerThread.join ();
+				}
+				catch ( InterruptedException ex ) {
+					Thread.currentThread ().interrupt ();
+				}
+			}
+			logSummary ();
+		}
+	}
+
+	private void checkWriteError ()
+	{
+		Throwable ex = writeError;
+		if ( ex == null ) return;
+		throw new IllegalStateException ( "TDB group-commit writer failed: " + ex.getMessage (), ex );
+	}
+
+	/**
+	 * Logs the commit statistics (no. of commits, batches per commit, commit latency).
+	 */
+	public void logSummary ()
+	{
+		synchronized ( commitLock )
+		{
+			if ( commits == 0 ) return;
+			log.info (
+				"TDB group commits: {} commit(s), {} batch(es), {} triple(s), {} batches/commit, "
+				+ "commit latency avg {} ms, max {} ms",
+				commits, committedBatches, committedTriples, String.format ( "%.1f", getBatchesPerCommit () ),
+				String.format ( "%.1f", getAvgCommitTime ( TimeUnit.MICROSECONDS ) / 1000d ),
+				TimeUnit.NANOSECONDS.toMillis ( maxCommitTime )
+			);
+		}
+	}
+
+
+	/**
+	 * A transaction is committed when it has at least this number of triples. Default is 1M.
+	 */
+	public long getMaxCommitTriples ()
+	{
+		return maxCommitTriples;
+	}
+
+	public void setMaxCommitTriples ( long maxCommitTriples )
+	{
+		if ( maxCommitTriples < 1 ) throw new IllegalArgumentException (
+			"The TDB max commit triples must be positive, not " + maxCommitTriples
+		);
+		this.maxCommitTriples = maxCommitTriples;
+	}
+
+	/**
+	 * A transaction is committed when it has been open for this time (in ms), even if it doesn't have
+	 * {@link #getMaxCommitTriples()} yet. Default is 1s.
+	 */
+	public long getMaxCommitDelay ()
+	{
+		return maxCommitDelay;
+	}
+
+	public void setMaxCommitDelay ( long maxCommitDelay )
+	{
+		if ( maxCommitDelay < 0 ) throw new IllegalArgumentException (
+			"The TDB max commit delay can't be negative"
+		);
+		this.maxCommitDelay = maxCommitDelay;
+	}
+
+	/**
+	 * The max number of batches waiting to be written. Changing it has effect only before the first batch
+	 * is {@link #accept(Object) accepted}. Default is 64.
+	 */
+	public int getQueueSize ()
+	{
+		return queueSize;
+	}
+
+	public synchronized void setQueueSize ( int queueSize )
+	{
+		if ( queueSize < 1 ) throw new IllegalArgumentException (
+			"The TDB writer queue size must be positive, not " + queueSize
+		);
+		this.queueSize = queueSize;
+	}
+
+	public Dataset getDataSet ()
+	{
+		return dataSet;
+	}
+
+	public long getCommits ()
+	{
+		synchronized ( commitLock ) {
+			return commits;
+		}
+	}
+
+	public long getCommittedBatches ()
+	{
+		synchronized ( commitLock ) {
+			return committedBatches;
+		}
+	}
+
+	public long getCommittedTriples ()
+	{
+		synchronized ( commitLock ) {
+			return committedTriples;
+		}
+	}
+
+	public double getBatchesPerCommit ()
+	{
+		synchronized ( commitLock ) {
+			return commits == 0 ? 0d : (double) committedBatches / commits;
+		}
+	}
+
+	/**
+	 * The average time taken by the commit operation, ie, the latency of making the data durable.
+	 */
+	public long getAvgCommitTime ( TimeUnit timeUnit )
+	{
+		synchronized ( commitLock ) {
+			return commits == 0 ? 0 : timeUnit.convert ( totalCommitTime / commits, TimeUnit.NANOSECONDS );
+		}
+	}
+
+	public long getMaxCommitTime ( TimeUnit timeUnit )
+	{
+		synchronized ( commitLock ) {
+			return timeUnit.convert ( maxCommitTime, TimeUnit.NANOSECONDS );
+		}
+	}
+}
@@ -1,5 +1,6 @@
 package info.marcobrandizi.rdfutils.jena.elt;
 
+import java.nio.file.Path;
 import java.util.function.Consumer;
 
 import org.apache.jena.query.Dataset;
@@ -8,6 +9,8 @@ import org.apache.jena.system.Txn;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import info.marcobrandizi.rdfutils.jena.DatasetWriteGenerations;
+
 /**
  * Can be used with {@link RDFStreamLoader} to load data into a TDB triple store.
  *
@@ -32,11 +35,81 @@ public class TDBLoadingHandler implements Consumer<Model>
 	@Override
 	public void accept ( Model model )
 	{
-		Txn.executeWrite ( this.dataSet, () -> {
-			log.debug ( "Writing {} triple(s) to TDB", model.size () );
-			dataSet.getDefaultModel ().add ( model );
-			log.debug ( "{} triple(s) written to TDB", model.size () );
-		});
+		TDBTransactionEvent.record ( "TDBLoadingHandler", 1, model::size, () -> 
+			Txn.executeWrite ( this.dataSet, () -> {
+				log.debug ( "Writing {} triple(s) to TDB", model.size () );
+				dataSet.getDefaultModel ().add ( model );
+				log.debug ( "{} triple(s) written to TDB", model.size () );
+			})
+		);
+		DatasetWriteGenerations.bump ( this.dataSet );
+	}
+
+	/**
+	 * A variant of this handler for {@link RDFTripleStreamLoader}, which sends the triples straight to the 
+	 * TDB, without any {@link Model} in the middle.
+	 */
+	public Consumer<TripleBatch> forTripleBatches ()
+	{
+		return batch -> 
+		{
+			TDBTransactionEvent.record ( "TDBLoadingHandler", 1, batch::size, () ->
+				Txn.executeWrite ( this.dataSet, () -> {
+					log.debug ( "Writing {} triple(s) to TDB", batch.size () );
+					batch.addTo ( dataSet.asDatasetGraph ().getDefaultGraph () );
+					log.debug ( "{} triple(s) written to TDB", batch.size () );
+				})
+			);
+			DatasetWriteGenerations.bump ( this.dataSet );
+		};
+	}
+
+	/**
+	 * A variant of this handler for {@link RDFOffHeapStreamLoader}, which decodes the off-heap triples straight 
+	 * into the TDB.
+	 */
+	public Consumer<OffHeapTripleBatch> forOffHeapTripleBatches ()
+	{
+		return batch -> 
+		{
+			TDBTransactionEvent.record ( "TDBLoadingHandler", 1, batch::size, () ->
+				Txn.executeWrite ( this.dataSet, () -> {
+					log.debug ( "Writing {} triple(s) to TDB", batch.size () );
+					batch.addTo ( dataSet.asDatasetGraph ().getDefaultGraph () );
+					log.debug ( "{} triple(s) written to TDB", batch.size () );
+				})
+			);
+			DatasetWriteGenerations.bump ( this.dataSet );
+		};
+	}
+
+	/**
+	 * A group-commit variant of this handler, which writes many batches per transaction, from a single 
+	 * writer thread. See {@link TDBGroupCommitWriter} for details, including the need to close it after loading.  
+	 */
+	public TDBGroupCommitWriter<Model> groupCommitWriter ()
+	{
+		return TDBGroupCommitWriter.forModels ( this.dataSet );
+	}
+
+	/**
+	 * Like {@link #groupCommitWriter()}, but for {@link RDFTripleStreamLoader}.
+	 */
+	public TDBGroupCommitWriter<TripleBatch> groupCommitWriterForTripleBatches ()
+	{
+		return TDBGroupCommitWriter.forTripleBatches ( this.dataSet );
+	}
+
+	/**
+	 * A variant of this handler for {@link RDFTripleStreamLoader}, which sorts the triples by subject, spilling
+	 * them to disk as needed, and then writes them into the TDB in that order. See {@link ExternalTripleSorter}
+	 * for details, including the need to close it after loading.
+	 *
+	 * @param tempDir where the sorted runs are written, null for the system default.
+	 */
+	public ExternalTripleSorter sortingWriter ( Path tempDir )
+	{
+		return new ExternalTripleSorter ( forTripleBatches (), tempDir );
 	}
 
 	public Dataset getDataSet ()
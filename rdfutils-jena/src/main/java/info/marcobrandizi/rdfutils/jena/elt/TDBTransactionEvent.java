@@ -0,0 +1,71 @@
+package info.marcobrandizi.rdfutils.jena.elt;
+
+import java.util.function.LongSupplier;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * A Java Flight Recorder event about a write transaction of the TDB loading handlers, such as 
+ * {@link TDBLoadingHandler} or {@link TDBGroupCommitWriter}.
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>18 Oct 2026</dd></dl>
+ *
+ */
+@Name ( "info.marcobrandizi.rdfutils.TDBTransaction" )
+@Label ( "TDB Write Transaction" )
+@Category ( { "rdfutils", "RDF Loader" } )
+@Description ( "A TDB write transaction done by an RDF loading handler" )
+public class TDBTransactionEvent extends Event
+{
+	@Label ( "Handler" )
+	public String handler;
+	
+	@Label ( "Batches" )
+	public long batches;
+
+	@Label ( "Triples" )
+	@Description ( "The triples or quads written in the transaction" )
+	public long triples;
+	
+	@Label ( "Commit Duration" )
+	@Description ( "The time taken by the commit alone, when known" )
+	@Timespan ( Timespan.NANOSECONDS )
+	public long commitDuration;
+	
+	@Label ( "Failed" )
+	public boolean failed;
+	
+	/**
+	 * Runs a transaction and records this event around it, if JFR is recording it.
+	 * 
+	 * @param triples evaluated after the transaction, so that it can count during the transaction.
+	 */
+	static void record ( String handler, long batches, LongSupplier triples, Runnable transaction )
+	{
+		TDBTransactionEvent event = new TDBTransactionEvent ();
+		event.begin ();
+		boolean isFailed = true;
+		try {
+			transaction.run ();
+			isFailed = false;
+		}
+		finally 
+		{
+			event.end ();
+			if ( event.shouldCommit () ) 
+			{
+				event.handler = handler;
+				event.batches = batches;
+				event.triples = triples.getAsLong ();
+				event.failed = isFailed;
+				event.commit ();
+			}
+		}
+	}
+}
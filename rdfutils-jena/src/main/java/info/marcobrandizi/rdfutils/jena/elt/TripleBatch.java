@@ -0,0 +1,155 @@
+package info.marcobrandizi.rdfutils.jena.elt;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+
+import info.marcobrandizi.rdfutils.namespaces.NamespaceUtils;
+
+/**
+ * <p>A lightweight batch of RDF triples, based on a plain growable array.</p>
+ * 
+ * <p>This is used by {@link TripleBatchCollector} and {@link RDFTripleStreamLoader} and it's a cheaper 
+ * alternative to {@link Model} batches when the batch job just needs to forward the triples somewhere else 
+ * (eg, a TDB, see {@link TDBLoadingHandler#forTripleBatches()}), since there isn't any indexing or 
+ * duplicate check. For the jobs that need a model, {@link #asModel()} builds one lazily.</p>
+ *
+ * <p>This class is not thread-safe, which is fine for the batch processing, where a batch is filled by 
+ * one thread and then passed to one batch job.</p>
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>18 Oct 2026</dd></dl>
+ *
+ */
+public class TripleBatch implements Iterable<Triple>
+{
+	private Triple[] triples;
+	private int size = 0;
+	
+	private Map<String, String> prefixes = null;
+	private Model model = null;
+	
+	public TripleBatch ( int initialCapacity ) 
+	{
+		this.triples = new Triple [ Math.max ( initialCapacity, 16 ) ];
+	}
+
+	public TripleBatch () {
+		this ( 1024 );
+	}
+	
+	public void add ( Triple triple )
+	{
+		if ( size == triples.length ) triples = Arrays.copyOf ( triples, triples.length * 2 );
+		triples [ size++ ] = triple;
+		model = null;
+	}
+	
+	public Triple get ( int i )
+	{
+		if ( i < 0 || i >= size ) throw new IndexOutOfBoundsException ( 
+			"Triple index " + i + " out of the batch bounds (" + size + ")" 
+		);
+		return triples [ i ];
+	}
+	
+	public int size () {
+		return size;
+	}
+	
+	public boolean isEmpty () {
+		return size == 0;
+	}
+	
+	/**
+	 * Empties the batch, keeping the allocated capacity.
+	 */
+	public void clear ()
+	{
+		Arrays.fill ( triples, 0, size, null );
+		size = 0;
+		model = null;
+	}
+	
+	
+	/**
+	 * Prefixes coming from the RDF input. {@link #asModel()} merges them with {@link NamespaceUtils#getNamespaces()}.
+	 */
+	public void setNsPrefix ( String prefix, String iri )
+	{
+		if ( prefixes == null ) prefixes = new HashMap<> ();
+		prefixes.put ( prefix, iri );
+		model = null;
+	}
+	
+	
+	@Override
+	public Iterator<Triple> iterator ()
+	{
+		return new Iterator<> () 
+		{
+			private int i = 0;
+			
+			@Override
+			public boolean hasNext () {
+				return i < size;
+			}
+
+			@Override
+			public Triple next () 
+			{
+				if ( !hasNext () ) throw new NoSuchElementException ( "No more triples in the triple batch" );
+				return triples [ i++ ];
+			}
+		};
+	}
+
+	@Override
+	public void forEach ( Consumer<? super Triple> action )
+	{
+		for ( int i = 0; i < size; i++ )
+			action.accept ( triples [ i ] );
+	}
+
+	public Stream<Triple> stream () {
+		return Arrays.stream ( triples, 0, size );
+	}
+	
+	/**
+	 * Adds all the triples in this batch to a graph.
+	 */
+	public void addTo ( Graph graph ) {
+		forEach ( graph::add );
+	}
+	
+	/**
+	 * Builds a {@link Model} with the same contents of this batch, including the prefixes. This is done the first
+	 * time it's invoked and the result is cached, until the batch is changed. 
+	 */
+	public Model asModel ()
+	{
+		if ( model != null ) return model;
+		
+		model = ModelFactory.createDefaultModel ();
+		model.setNsPrefixes ( NamespaceUtils.getNamespaces () );
+		if ( prefixes != null ) model.setNsPrefixes ( prefixes );
+		addTo ( model.getGraph () );
+		return model;
+	}
+	
+	/**
+	 * Adapts a batch job that needs models to triple batches, via {@link #asModel()}.
+	 */
+	public static Consumer<TripleBatch> modelJob ( Consumer<Model> modelJob ) {
+		return batch -> modelJob.accept ( batch.asModel () );
+	}
+}
@@ -0,0 +1,85 @@
+package info.marcobrandizi.rdfutils.jena.elt;
+
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.apache.jena.graph.Triple;
+import org.apache.jena.sparql.core.Quad;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.ac.ebi.utils.threading.batchproc.AbstractSizedBatchCollector;
+
+/**
+ * A batch collector of {@link TripleBatch triple batches}. Compared to {@link ModelBatchCollector}, this 
+ * doesn't build any index and it knows the batch size in constant time.
+ * 
+ * @see RDFTripleStreamLoader
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>18 Oct 2026</dd></dl>
+ *
+ */
+public class TripleBatchCollector 
+	extends AbstractSizedBatchCollector<TripleBatch> implements RDFBatchCollector<TripleBatch>
+{
+	private volatile boolean namedGraphWarningDone = false;
+	
+	private Logger log = LoggerFactory.getLogger ( this.getClass () );
+	
+	public TripleBatchCollector ( long maxBatchSize ) {
+		super ( maxBatchSize );
+	}
+
+	/**
+	 * Defaults to 10000.
+	 */
+	public TripleBatchCollector () {
+		this ( 10000 );
+	}
+
+	/**
+	 * New batches are allocated with the {@link #getMaxBatchSize() max batch size} as capacity (up to 
+	 * a limit), so that they don't need to grow. 
+	 */
+	@Override
+	public Supplier<TripleBatch> batchFactory ()
+	{
+		return () -> new TripleBatch ( (int) Math.min ( getMaxBatchSize (), 1 << 20 ) );
+	}
+
+	@Override
+	public Function<TripleBatch, Long> batchSizer ()
+	{
+		return batch -> (long) batch.size ();
+	}
+
+	@Override
+	public boolean addTriple ( TripleBatch batch, Triple triple )
+	{
+		batch.add ( triple );
+		return true;
+	}
+
+	/**
+	 * Like {@link ModelBatchCollector#addQuad(org.apache.jena.rdf.model.Model, Quad)}, named graphs are ignored.
+	 */
+	@Override
+	public boolean addQuad ( TripleBatch batch, Quad quad ) 
+	{
+		if ( quad.isDefaultGraph () ) return addTriple ( batch, quad.asTriple () );
+		
+		if ( namedGraphWarningDone ) return false;
+		namedGraphWarningDone = true;
+		log.warn ( 
+			"Quads in named graphs are ignored by {}, use RDFDatasetStreamLoader to load them", 
+			this.getClass ().getSimpleName () 
+		);
+		return false;
+	}
+
+	@Override
+	public void addPrefix ( TripleBatch batch, String prefix, String iri ) {
+		batch.setNsPrefix ( prefix, iri );
+	}
+}
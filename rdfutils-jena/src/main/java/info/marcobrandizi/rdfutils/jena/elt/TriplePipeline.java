@@ -0,0 +1,146 @@
+package info.marcobrandizi.rdfutils.jena.elt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+import org.apache.jena.graph.Triple;
+import org.apache.jena.sparql.core.Quad;
+
+/**
+ * <p>A chain of per-triple transformations, which an {@link AbstractRDFStreamLoader} applies to the parsed
+ * statements before adding them to the batches, see {@link AbstractRDFStreamLoader#setTriplePipeline(TriplePipeline)}.
+ * This allows for simple ETL operations (eg, IRI normalisation, predicate mapping, removal of unwanted
+ * properties) without having to materialise or re-read the data.</p>
+ *
+ * <p>A pipeline is immutable, each of the {@link #map(UnaryOperator)}, {@link #filter(Predicate)},
+ * {@link #flatMap(Function)} methods returns a new pipeline, with a stage appended to the current ones, eg:</p>
+ *
+ * <pre>
+ *   TriplePipeline pipeline = TriplePipeline.create ()
+ *     .filter ( t -> !RDFS.comment.asNode ().equals ( t.getPredicate () ) )
+ *     .map ( t -> Triple.create ( normalise ( t.getSubject () ), t.getPredicate (), t.getObject () ) );
+ * </pre>
+ *
+ * <p>Since the pipeline might run on multiple threads (see {@link AbstractRDFStreamLoader#getPipelineThreads()}),
+ * the stage functions must be thread-safe.</p>
+ *
+ * <p>Quads are transformed by applying the stages to their triple, and keeping their graph.</p>
+ *
+ * @author brandizi
+ * <dl><dt>Date:</dt><dd>18 Oct 2026</dd></dl>
+ *
+ */
+public class TriplePipeline
+{
+	private static interface Stage {}
+	private static record MapStage ( UnaryOperator<Triple> mapper ) implements Stage {}
+	private static record FilterStage ( Predicate<Triple> filter ) implements Stage {}
+	private static record FlatMapStage ( Function<Triple, ? extends Iterable<Triple>> mapper ) implements Stage {}
+
+	private final List<Stage> stages;
+
+	private TriplePipeline ( List<Stage> stages ) {
+		this.stages = stages;
+	}
+
+	/**
+	 * An empty pipeline, which passes the triples unchanged.
+	 */
+	public static TriplePipeline create () {
+		return new TriplePipeline ( Collections.emptyList () );
+	}
+
+	/**
+	 * Replaces every triple with the mapper result. If this is null, the triple is dropped.
+	 */
+	public TriplePipeline map ( UnaryOperator<Triple> mapper ) {
+		return append ( new MapStage ( mapper ) );
+	}
+
+	/**
+	 * Passes only the triples that satisfy the filter.
+	 */
+	public TriplePipeline filter ( Predicate<Triple> filter ) {
+		return append ( new FilterStage ( filter ) );
+	}
+
+	/**
+	 * Replaces every triple with zero or more triples. The mapper result can't be null, return an empty
+	 * collection to drop the triple.
+	 */
+	public TriplePipeline flatMap ( Function<Triple, ? extends Iterable<Triple>> mapper ) {
+		return append ( new FlatMapStage ( mapper ) );
+	}
+
+	private TriplePipeline append ( Stage stage )
+	{
+		List<Stage> newStages = new ArrayList<> ( stages );
+		newStages.add ( stage );
+		return new TriplePipeline ( Collections.unmodifiableList ( newStages ) );
+	}
+
+
+	/**
+	 * Runs the stages over the triple and sends the results to the downstream consumer.
+	 */
+	public void apply ( Triple triple, Consumer<Triple> downstream ) {
+		apply ( triple, 0, downstream );
+	}
+
+	/**
+	 * Runs the stages over the quad's triple, and sends the results to the downstream consumer, using the
+	 * original graph.
+	 */
+	public void apply ( Quad quad, Consumer<Quad> downstream )
+	{
+		Triple triple = quad.asTriple ();
+		apply ( triple, 0, t -> downstream.accept ( t == triple ? quad : Quad.create ( quad.getGraph (), t ) ) );
+	}
+
+	/**
+	 * Map and filter stages are run in a loop, without allocations, a flat map forks a recursive call for
+	 * each of its results.
+	 */
+	private void apply ( Triple triple, int stageIdx, Consumer<Triple> downstream )
+	{
+		for ( int i = stageIdx; i < stages.size (); i++ )
+		{
+			Stage stage = stages.get ( i );
+			if ( stage instanceof MapStage mapStage ) {
+				triple = mapStage.mapper ().apply ( triple );
+				if ( triple == null ) return;
+			}
+			else if ( stage instanceof FilterStage filterStage ) {
+				if ( !filterStage.filter ().test ( triple ) ) return;
+			}
+			else if ( stage instanceof FlatMapStage flatMapStage )
+			{
+				for ( Triple result: flatMapStage.mapper ().apply ( triple ) )
+					apply ( result, i + 1, downstream );
+				return;
+			}
+		}
+		downstream.accept ( triple );
+	}
+
+	/**
+	 * true if there are no stages.
+	 */
+	public boolean isEmpty ()
+	{
+		return stages.isEmpty ();
+	}
+
+	/**
+	 * The number of stages.
+	 */
+	public int size ()
+	{
+		return stages.size ();
+	}
+}
@@ -1,18 +1,53 @@
 package info.marcobrandizi.rdfutils.jena;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.Dataset;
 import org.apache.jena.query.QuerySolution;
+import org.apache.jena.query.QuerySolutionMap;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.ResourceFactory;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.system.Txn;
 import org.junit.Ignore;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import info.marcobrandizi.rdfutils.jena.elt.TDBDatasetLoadingHandler;
+import info.marcobrandizi.rdfutils.jena.elt.TDBLoadingHandler;
+
 import uk.ac.ebi.utils.threading.batchproc.processors.SetBasedBatchProcessor;
 
 /**
@@ -60,6 +95,314 @@ public class TDBEndPointHelperTest
 	
 	private Logger log = LoggerFactory.getLogger ( this.getClass () );
 
+	@Test
+	public void testProcessSelectParallel () throws IOException
+	{
+		try ( var helper = createFoafHelper ( "target/process-select-parallel-tdb" ) )
+		{
+			String sparql = "SELECT * { ?s ?p ?o }";
+			Set<String> subjects = ConcurrentHashMap.newKeySet ();
+			Set<String> threads = ConcurrentHashMap.newKeySet ();
+			long rows = helper.processSelectParallel ( null, sparql, row ->
+			{
+				subjects.add ( row.get ( "s" ).toString () );
+				threads.add ( Thread.currentThread ().getName () );
+			}, null, 2, 3 );
+
+			assertEquals ( "Wrong no. of processed rows!", 18, rows );
+			assertTrue ( "Rows not processed!", subjects.contains ( "http://example.org/alice" ) );
+			assertFalse ( "Rows processed by the reading thread!", threads.contains ( Thread.currentThread ().getName () ) );
+
+			// Errors are propagated
+			try
+			{
+				helper.processSelectParallel ( null, sparql, row ->
+				{
+					if ( row.get ( "s" ).toString ().endsWith ( "/bob" ) ) throw new IllegalStateException ( "Test error" );
+				}, null, 2, 3 );
+				fail ( "Worker error not propagated!" );
+			}
+			catch ( IllegalStateException ex ) {
+				assertEquals ( "Wrong worker error!", "Test error", ex.getMessage () );
+			}
+		}
+	}
+
+	@Test
+	public void testRowSnapshotModes () throws IOException
+	{
+		try ( var helper = createFoafHelper ( "target/row-snapshot-modes-tdb" ) )
+		{
+			String sparql = "SELECT ?s ?name ?mbox { ?s <http://xmlns.com/foaf/0.1/name> ?name\n"
+				+ "  OPTIONAL { ?s <http://xmlns.com/foaf/0.1/mbox> ?mbox } }";
+
+			Set<Map<String, String>> expectedRows = null;
+			for ( RowSnapshotMode mode: RowSnapshotMode.values () )
+			{
+				helper.setRowSnapshotMode ( mode );
+				List<QuerySolution> rows = new ArrayList<> ();
+				helper.processSelect ( sparql, rows::add );
+
+				// We're out of the transaction here, the rows must still be usable
+				Set<Map<String, String>> rowValues = new HashSet<> ();
+				for ( QuerySolution row: rows )
+				{
+					Map<String, String> values = new HashMap<> ();
+					row.varNames ().forEachRemaining ( v -> values.put ( v, row.get ( v ).toString () ) );
+					rowValues.add ( values );
+
+					if ( !"Bob".equals ( row.getLiteral ( "name" ).getString () ) ) continue;
+					assertFalse ( "Unbound variable reported as bound (" + mode + ")!", row.contains ( "mbox" ) );
+					assertNull ( "Unbound variable has a value (" + mode + ")!", row.get ( "mbox" ) );
+				}
+
+				assertEquals ( "Wrong no. of rows (" + mode + ")!", 3, rowValues.size () );
+				assertTrue ( "Alice's mbox not found (" + mode + ")!", rowValues.contains ( Map.of (
+					"s", "http://example.org/alice", "name", "Alice", "mbox", "mailto:alice@example.org"
+				)));
+
+				if ( expectedRows == null ) expectedRows = rowValues;
+				else assertEquals ( "Row snapshot mode " + mode + " differs from the others!", expectedRows, rowValues );
+			}
+		}
+	}
+
+	@Test
+	public void testResultCache () throws IOException
+	{
+		try ( var helper = createFoafHelper ( "target/result-cache-tdb" ) )
+		{
+			QueryResultCache cache = QueryResultCache.ofMaxEntries ( 100, Duration.ofMinutes ( 10 ) );
+			helper.setResultCache ( cache );
+
+			String sparql = "SELECT ?name { ?s <http://xmlns.com/foaf/0.1/name> ?name }";
+			Function<String, QuerySolutionMap> paramsBuilder = uri -> {
+				var params = new QuerySolutionMap ();
+				params.add ( "s", ResourceFactory.createResource ( uri ) );
+				return params;
+			};
+			Function<String, Set<String>> namesFetcher = uri -> {
+				Set<String> names = new HashSet<> ();
+				helper.processSelect ( sparql, row -> names.add ( row.getLiteral ( "name" ).getString () ), paramsBuilder.apply ( uri ) );
+				return names;
+			};
+
+			assertEquals ( "Wrong uncached result!", Set.of ( "Alice" ), namesFetcher.apply ( "http://example.org/alice" ) );
+			assertEquals ( "Wrong cached result!", Set.of ( "Alice" ), namesFetcher.apply ( "http://example.org/alice" ) );
+			assertEquals ( "Wrong result for new parameters!", Set.of ( "Bob" ), namesFetcher.apply ( "http://example.org/bob" ) );
+
+			String ask = "ASK { ?s a <http://xmlns.com/foaf/0.1/Person> }";
+			assertTrue ( "Wrong uncached ASK!", helper.ask ( ask, paramsBuilder.apply ( "http://example.org/bob" ) ) );
+			assertTrue ( "Wrong cached ASK!", helper.ask ( ask, paramsBuilder.apply ( "http://example.org/bob" ) ) );
+
+			assertEquals ( "Wrong no. of cache hits!", 2, cache.getStats ().hitCount () );
+			assertEquals ( "Wrong no. of cache misses!", 3, cache.getStats ().missCount () );
+			assertEquals ( "Wrong cache size!", 3, cache.size () );
+			assertTrue ( "No memory estimate!", cache.getEstimatedBytes () > 0 );
+
+			// New data must invalidate the cache
+			Model newData = ModelFactory.createDefaultModel ();
+			newData.add (
+				newData.createResource ( "http://example.org/alice" ),
+				newData.createProperty ( "http://xmlns.com/foaf/0.1/name" ),
+				"Alicia"
+			);
+			new TDBLoadingHandler ( helper.getDataSet () ).accept ( newData );
+
+			assertEquals ( "Stale cached result!", Set.of ( "Alice", "Alicia" ), namesFetcher.apply ( "http://example.org/alice" ) );
+			assertEquals ( "Cache not invalidated!", 1, cache.size () );
+			assertEquals ( "Wrong no. of cache hits after the invalidation!", 2, cache.getStats ().hitCount () );
+
+			// Same with a dataset load
+			DatasetGraph newQuads = DatasetGraphFactory.create ();
+			newQuads.add ( 
+				Quad.defaultGraphIRI, 
+				NodeFactory.createURI ( "http://example.org/alice" ), 
+				NodeFactory.createURI ( "http://xmlns.com/foaf/0.1/name" ),
+				NodeFactory.createLiteralString ( "Ally" )
+			);
+			new TDBDatasetLoadingHandler ( helper.getDataSet () ).accept ( newQuads );
+
+			assertEquals ( 
+				"Stale cached result after a dataset load!", 
+				Set.of ( "Alice", "Alicia", "Ally" ), namesFetcher.apply ( "http://example.org/alice" ) 
+			);
+			assertEquals ( "Wrong no. of cache hits after the dataset load!", 2, cache.getStats ().hitCount () );
+
+			log.info ( "Result cache test, {}", cache );
+		}
+	}
+
+	@Test
+	public void testCachedOps () throws IOException
+	{
+		SparqlEndPointHelper.configureQueryCache ( 1000, Duration.ofMinutes ( 10 ) );
+
+		try ( var helper = createFoafHelper ( "target/cached-ops-tdb" ) )
+		{
+			String sparql = "SELECT ?name { ?s <http://xmlns.com/foaf/0.1/name> ?name }";
+			Function<String, Set<String>> namesFetcher = uri -> {
+				var params = new QuerySolutionMap ();
+				if ( uri != null ) params.add ( "s", ResourceFactory.createResource ( uri ) );
+				Set<String> names = new HashSet<> ();
+				helper.processSelect ( sparql, row -> names.add ( row.getLiteral ( "name" ).getString () ), params );
+				return names;
+			};
+
+			Set<String> expectedAll = namesFetcher.apply ( null );
+			Set<String> expectedAlice = namesFetcher.apply ( "http://example.org/alice" );
+			assertEquals ( "Wrong result without cached ops!", Set.of ( "Alice" ), expectedAlice );
+
+			helper.setUsingCachedOps ( true );
+			long opHits = SparqlEndPointHelper.getOpCacheStats ().hitCount ();
+			long opMisses = SparqlEndPointHelper.getOpCacheStats ().missCount ();
+
+			assertEquals ( "Cached ops give different results!", expectedAll, namesFetcher.apply ( null ) );
+			assertEquals ( "Cached ops give different results with params!", expectedAlice, namesFetcher.apply ( "http://example.org/alice" ) );
+			assertEquals ( "Cached ops give wrong results for new params!", Set.of ( "Bob" ), namesFetcher.apply ( "http://example.org/bob" ) );
+
+			assertEquals ( "Wrong no. of op cache misses!", 1, SparqlEndPointHelper.getOpCacheStats ().missCount () - opMisses );
+			assertEquals ( "Wrong no. of op cache hits!", 2, SparqlEndPointHelper.getOpCacheStats ().hitCount () - opHits );
+			assertTrue ( "No query cache hits!", SparqlEndPointHelper.getQueryCacheStats ().hitCount () >= 4 );
+
+			// Check the parallel variant too
+			Set<String> parallelNames = ConcurrentHashMap.newKeySet ();
+			helper.processSelectParallel ( sparql, row -> parallelNames.add ( row.getLiteral ( "name" ).getString () ) );
+			assertEquals ( "Cached ops give different results in parallel!", expectedAll, parallelNames );
+		}
+	}
+
+	@Test
+	public void testDiskResultCache () throws IOException
+	{
+		String tdbPath = "target/disk-result-cache-tdb";
+		Path cacheDir = Path.of ( "target/disk-result-cache" );
+		FileUtils.deleteDirectory ( cacheDir.toFile () );
+
+		String sparql = "SELECT ?s ?name { ?s <http://xmlns.com/foaf/0.1/name> ?name }";
+		String construct = "CONSTRUCT { ?s ?p ?o } WHERE { ?s a <http://xmlns.com/foaf/0.1/Person>; ?p ?o }";
+
+		Model expectedModel;
+		try ( var helper = createFoafHelper ( tdbPath ) )
+		{
+			DiskQueryResultCache cache = new DiskQueryResultCache ( cacheDir, 1 << 20 );
+			helper.setDiskResultCache ( cache );
+
+			Set<String> names = new HashSet<> ();
+			assertEquals ( "Wrong uncached result!", 3, helper.processSelect ( sparql, row -> names.add ( row.getLiteral ( "name" ).getString () ) ) );
+			assertEquals ( "Wrong uncached names!", Set.of ( "Alice", "Bob", "Charlie" ), names );
+			names.clear ();
+			assertEquals ( "Wrong cached result!", 3, helper.processSelect ( sparql, row -> names.add ( row.getLiteral ( "name" ).getString () ) ) );
+			assertEquals ( "Wrong cached names!", Set.of ( "Alice", "Bob", "Charlie" ), names );
+
+			expectedModel = helper.construct ( construct );
+			assertTrue ( "Wrong cached CONSTRUCT!", expectedModel.isIsomorphicWith ( helper.construct ( construct ) ) );
+			assertEquals ( "Wrong CONSTRUCT size!", 11, expectedModel.size () );
+
+			assertEquals ( "Wrong no. of disk cache hits!", 2, cache.getHits () );
+			assertEquals ( "Wrong no. of disk cache misses!", 2, cache.getMisses () );
+		}
+
+		// As if we were in another JVM
+		try ( var helper = new TDBEndPointHelper ( tdbPath ) )
+		{
+			DiskQueryResultCache cache = new DiskQueryResultCache ( cacheDir, 1 << 20 );
+			helper.setDiskResultCache ( cache );
+
+			assertTrue ( "Wrong CONSTRUCT from a new cache!", expectedModel.isIsomorphicWith ( helper.construct ( construct ) ) );
+			assertEquals ( "Disk cache not reused!", 1, cache.getHits () );
+
+			// New data must change the dataset fingerprint
+			Model newData = ModelFactory.createDefaultModel ();
+			newData.add (
+				newData.createResource ( "http://example.org/snoopy" ),
+				newData.createProperty ( "http://xmlns.com/foaf/0.1/name" ),
+				"Snoopy"
+			);
+			new TDBLoadingHandler ( helper.getDataSet () ).accept ( newData );
+
+			assertEquals ( "Stale cached result!", 4, helper.processSelect ( sparql, row -> {} ) );
+			assertEquals ( "Disk cache used with new data!", 1, cache.getMisses () );
+
+			// LRU size limit
+			DiskQueryResultCache smallCache = new DiskQueryResultCache ( cacheDir.resolve ( "small" ), 1 );
+			helper.setDiskResultCache ( smallCache );
+			helper.processSelect ( sparql, row -> {} );
+			helper.construct ( construct );
+			assertEquals ( "Wrong no. of disk cache evictions!", 1, smallCache.getEvictions () );
+			try ( Stream<Path> files = Files.list ( smallCache.getCacheDir () ) ) {
+				assertEquals ( "Wrong no. of files after the disk cache eviction!", 1, files.count () );
+			}
+
+			// Concurrent queries on a small cache evict each other's results all the time, but the results
+			// that are being read must survive
+			IntStream.range ( 0, 200 ).parallel ().forEach ( i -> 
+			{
+				int limit = i % 5 + 1;
+				assertEquals ( 
+					"Wrong result with concurrent evictions!", 
+					Math.min ( limit, 4 ), 
+					helper.processSelect ( sparql + " LIMIT " + limit, row -> {} ) 
+				);
+			});
+
+			log.info ( "Disk result cache test, {}", cache );
+		}
+	}
+
+	/**
+	 * Compares the allocations and the time of the {@link RowSnapshotMode}s, on a result set that is both long and
+	 * wide.
+	 */
+	@Test @Ignore ( "Not a real test, used to compare the processSelect row snapshot modes" )
+	public void benchmarkRowSnapshotModes () throws IOException
+	{
+		final int nsubjects = 200000, nprops = 10;
+		
+		try ( var helper = createEmptyHelper ( "target/row-snapshot-benchmark-tdb" ) )
+		{
+			Dataset dataSet = helper.getDataSet ();
+			Txn.executeWrite ( dataSet, () -> 
+			{
+				Graph graph = dataSet.asDatasetGraph ().getDefaultGraph ();
+				for ( int i = 0; i < nsubjects; i++ )
+					for ( int j = 0; j < nprops; j++ )
+						graph.add ( 
+							NodeFactory.createURI ( "http://example.org/s" + i ), 
+							NodeFactory.createURI ( "http://example.org/p" + j ), 
+							NodeFactory.createLiteralString ( "Value " + i + "/" + j ) 
+						);
+			});
+
+			StringBuilder sparql = new StringBuilder ( "SELECT * {" );
+			for ( int j = 0; j < nprops; j++ )
+				sparql.append ( String.format ( " ?s <http://example.org/p%d> ?o%d.", j, j ) );
+			sparql.append ( "}" );
+
+			var threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean ();
+			long threadId = Thread.currentThread ().threadId ();
+			
+			for ( int round = 0; round < 3; round++ )
+			for ( RowSnapshotMode mode: RowSnapshotMode.values () )
+			{
+				helper.setRowSnapshotMode ( mode );
+				
+				long allocStart = threadBean.getThreadAllocatedBytes ( threadId );
+				long start = System.currentTimeMillis ();
+				AtomicLong hashes = new AtomicLong ( 0 );
+				long rows = helper.processSelect ( sparql.toString (), row -> hashes.addAndGet ( row.get ( "o0" ).hashCode () ) );
+				long time = System.currentTimeMillis () - start;
+				long allocated = threadBean.getThreadAllocatedBytes ( threadId ) - allocStart;
+				
+				log.info ( 
+					"Row snapshot benchmark, round: {}, mode: {}, rows: {}, time: {} ms, allocated: {} MB, bytes/row: {}",
+					round, mode, rows, time, allocated >> 20, allocated / rows
+				);
+			}
+		}
+	}
+	
+	
 	@Test @Ignore ( "Not a real test, used to verify the performance in rdf2pg" )
 	public void testProcessSelect() throws IOException
 	{
@@ -79,4 +422,20 @@ public class TDBEndPointHelperTest
 				proc.process ();
 		}
 	}
+
+	private TDBEndPointHelper createEmptyHelper ( String tdbPath ) throws IOException
+	{
+		FileUtils.deleteDirectory ( new File ( tdbPath ) );
+		return new TDBEndPointHelper ( tdbPath );
+	}
+	
+	private TDBEndPointHelper createFoafHelper ( String tdbPath ) throws IOException
+	{
+		var helper = createEmptyHelper ( tdbPath );
+		Dataset dataSet = helper.getDataSet ();
+		Txn.executeWrite ( dataSet, () ->
+			RDFDataMgr.read ( dataSet.getDefaultModel (), "target/test-classes/foaf_example.nt" )
+		);
+		return helper;
+	}
 }
@@ -2,24 +2,76 @@ package info.marcobrandizi.rdfutils.jena.elt;
 
 import static info.marcobrandizi.rdfutils.jena.elt.JenaIoUtils.getLangOrFormat;
 import static info.marcobrandizi.rdfutils.namespaces.NamespaceUtils.registerNs;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
 
+import javax.management.MBeanServer;
+
+import org.apache.commons.compress.compressors.CompressorStreamFactory;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
 import org.apache.jena.query.Dataset;
 import org.apache.jena.query.ReadWrite;
 import org.apache.jena.rdf.model.Model;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
 import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.shared.Lock;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.system.Txn;
 import org.apache.jena.tdb.TDBFactory;
+import org.apache.jena.tdb2.TDB2Factory;
+import org.apache.jena.vocabulary.RDF;
 import org.junit.BeforeClass;
+import org.junit.Ignore;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import info.marcobrandizi.rdfutils.jena.ModelEndPointHelper;
 import info.marcobrandizi.rdfutils.jena.SparqlBasedTester;
+import info.marcobrandizi.rdfutils.jena.SparqlQueryEvent;
 import info.marcobrandizi.rdfutils.namespaces.NamespaceUtils;
 
 /**
@@ -132,4 +184,1089 @@ public class RDFStreamLoaderTest
 			if ( dataSet != null ) dataSet.close ();
 		}
 	}
+	
+	@Test
+	public void testProcessParallel () throws Exception
+	{
+		AtomicInteger chunksCount = new AtomicInteger ( 0 );
+		Model umodel = ModelFactory.createDefaultModel ();
+		
+		RDFStreamLoader<Consumer<Model>> loader = new RDFStreamLoader<> ();
+		loader.setParserThreads ( 4 );
+		loader.getBatchCollector ().setMaxBatchSize ( 3 );
+		loader.setBatchJob ( model -> 
+		{
+			umodel.enterCriticalSection ( Lock.WRITE );
+			umodel.add ( model );
+			umodel.leaveCriticalSection ();
+			
+			chunksCount.getAndIncrement ();
+		});
+		loader.processParallel ( "target/test-classes/foaf_example.nt" );
+		
+		assertTrue ( "Chunks count < 2", chunksCount.get () > 2 );
+		assertEquals ( "Wrong no. of loaded triples!", 18, umodel.size () );
+
+		SparqlBasedTester tester = new SparqlBasedTester ( umodel, NamespaceUtils.asSPARQLProlog () );
+		tester.ask ( "No :alice!", "ASK {ex:alice a foaf:Person}" );
+		tester.ask ( "No :alice knows!", "ASK {ex:alice foaf:knows ex:bob, ex:charlie, ex:snoopy}" );
+		// The bnodes are split across chunks, they must be the same nevertheless
+		tester.ask ( "Alice's address split!", "ASK { ex:alice ex:address [ ex:city 'Paris'; ex:country 'FR' ] }" );
+		tester.ask ( "Bob's address split!", "ASK { ex:bob ex:address [ ex:city 'London'; ex:country 'UK' ] }" );
+	}
+	
+	@Test
+	public void testQuads () throws Exception
+	{
+		Dataset dataSet = TDBFactory.createDataset ();
+		try
+		{
+			AtomicInteger chunksCount = new AtomicInteger ( 0 );
+			TDBDatasetLoadingHandler handler = new TDBDatasetLoadingHandler ( dataSet ); 
+
+			RDFDatasetStreamLoader<Consumer<DatasetGraph>> loader = new RDFDatasetStreamLoader<> ();
+			loader.getBatchCollector ().setMaxBatchSize ( 3 );
+			loader.setBatchJob ( handler.andThen ( dsg -> chunksCount.getAndIncrement () ) );
+			
+			loader.process ( "target/test-classes/foaf_graphs.trig", null, Lang.TRIG );
+			assertTrue ( "Chunks count < 2", chunksCount.get () > 2 );
+			
+			dataSet.begin ( ReadWrite.READ );
+			
+			SparqlBasedTester tester = new SparqlBasedTester ( dataSet.getDefaultModel (), NamespaceUtils.asSPARQLProlog () );
+			tester.ask ( "No :alice in the default graph!", "ASK { ex:alice a foaf:Person; foaf:name 'Alice' }" );
+			
+			tester = new SparqlBasedTester ( 
+				dataSet.getNamedModel ( "http://example.org/people" ), NamespaceUtils.asSPARQLProlog () 
+			);
+			tester.ask ( "No :bob in :people!", "ASK { ex:bob a foaf:Person; foaf:name 'Bob' }" );
+			tester.ask ( "No :charlie in :people!", "ASK { ex:charlie a foaf:Person; foaf:name 'Charlie' }" );
+
+			tester = new SparqlBasedTester ( 
+				dataSet.getNamedModel ( "http://example.org/friends" ), NamespaceUtils.asSPARQLProlog () 
+			);
+			tester.ask ( "No :alice knows in :friends!", "ASK { ex:alice foaf:knows ex:bob, ex:charlie }" );
+			
+			assertEquals ( "Wrong no. of triples in :friends!", 
+				3, dataSet.getNamedModel ( "http://example.org/friends" ).size () 
+			);
+			
+			dataSet.end ();
+		}
+		finally {
+			dataSet.close ();
+		}
+	}
+	
+	/**
+	 * Named graphs are ignored by the triple loaders, they must not count as batch contents.
+	 */
+	@Test
+	public void testQuadsIgnoredByTripleLoaders () throws Exception
+	{
+		List<Long> batchSizes = Collections.synchronizedList ( new ArrayList<> () );
+		RDFStreamLoader<Consumer<Model>> loader = new RDFStreamLoader<> ();
+		loader.getBatchCollector ().setMaxBatchSize ( 1 );
+		loader.setBatchJob ( model -> batchSizes.add ( model.size () ) );
+		loader.process ( "target/test-classes/foaf_graphs.trig", null, Lang.TRIG );
+		
+		assertEquals ( "Wrong batches from the default graph!", List.of ( 1L, 1L ), batchSizes );
+		assertEquals ( "Ignored quads counted as parsed!", 2, loader.getMetrics ().getParsedTriples () );
+	}
+	
+	@Test
+	public void testInFlightLimits () throws Exception
+	{
+		AtomicInteger maxInFlight = new AtomicInteger ( 0 );
+		AtomicInteger chunksCount = new AtomicInteger ( 0 );
+		
+		RDFStreamLoader<Consumer<Model>> loader = new RDFStreamLoader<> ();
+		loader.getBatchCollector ().setMaxBatchSize ( 100 );
+		loader.getInFlightLimiter ().setMaxBatches ( 2 );
+		loader.setBatchJob ( model -> 
+		{
+			maxInFlight.accumulateAndGet ( loader.getInFlightLimiter ().getInFlightBatches (), Math::max );
+			chunksCount.incrementAndGet ();
+			try {
+				// Slower than the parser
+				Thread.sleep ( 50 );
+			}
+			catch ( InterruptedException ex ) {
+				throw new RuntimeException ( "Interrupted test job", ex );
+			}
+		});
+		loader.process ( "target/test-classes/dbpedia_berlin.rdf", null, getLangOrFormat ( "RDFXML" ).getRight () );
+
+		assertTrue ( "Chunks count < 2", chunksCount.get () > 2 );
+		assertTrue ( "In-flight batch limit not honoured!", maxInFlight.get () <= 2 );
+		assertTrue ( "The parser was never stalled!", loader.getInFlightLimiter ().getStalls () > 0 );
+		assertEquals ( "In-flight batches not released!", 0, loader.getInFlightLimiter ().getInFlightBatches () );
+	}
+	
+	@Test
+	public void testTripleBatches () throws Exception
+	{
+		Dataset dataSet = TDBFactory.createDataset ();
+		try
+		{
+			AtomicInteger chunksCount = new AtomicInteger ( 0 );
+			Model umodel = ModelFactory.createDefaultModel ();
+			TDBLoadingHandler handler = new TDBLoadingHandler ( dataSet ); 
+			
+			RDFTripleStreamLoader<Consumer<TripleBatch>> loader = new RDFTripleStreamLoader<> ();
+			loader.getBatchCollector ().setMaxBatchSize ( 1000 );
+			loader.setBatchJob ( 
+				handler.forTripleBatches ()
+				.andThen ( TripleBatch.modelJob ( model -> 
+				{
+					umodel.enterCriticalSection ( Lock.WRITE );
+					umodel.add ( model );
+					umodel.leaveCriticalSection ();
+				}))
+				.andThen ( batch -> chunksCount.getAndIncrement () ) 
+			);
+			
+			loader.process ( "target/test-classes/dbpedia_berlin.rdf", null, getLangOrFormat (  "RDFXML"  ).getRight ());
+			assertTrue ( "Chunks count < 2", chunksCount.get () > 2 );
+
+			SparqlBasedTester tester = new SparqlBasedTester ( umodel, NamespaceUtils.asSPARQLProlog () );
+			tester.ask ( "Berlin's label not found in the models!", "ASK {dbr:Berlin rdfs:label 'Berlin'@en }" );
+			
+			dataSet.begin ( ReadWrite.READ );
+			tester = new SparqlBasedTester ( dataSet.getDefaultModel (), NamespaceUtils.asSPARQLProlog () );
+			tester.ask ( "Berlin's label not found in TDB!", "ASK {dbr:Berlin rdfs:label 'Berlin'@en }" );
+			tester.ask ( 
+				"Berlin's Cuisine redirection not found in TDB!", 
+				"ASK {dbr:Cuisine_of_Berlin dbo:wikiPageRedirects dbr:Berlin}"
+			);
+			assertEquals ( "TDB and models differ!", umodel.size (), dataSet.getDefaultModel ().size () );
+			dataSet.end ();
+		}
+		finally {
+			dataSet.close ();
+		}
+	}
+	
+	@Test
+	public void testBatchBytesBudget () throws Exception
+	{
+		AtomicInteger chunksCount = new AtomicInteger ( 0 );
+		Model umodel = ModelFactory.createDefaultModel ();
+		
+		RDFStreamLoader<Consumer<Model>> loader = new RDFStreamLoader<> ();
+		// Only the byte budget matters
+		loader.getBatchCollector ().setMaxBatchSize ( Long.MAX_VALUE );
+		loader.getBatchCollector ().setMaxBatchBytes ( 100 * 1024 );
+		loader.setBatchJob ( model -> 
+		{
+			umodel.enterCriticalSection ( Lock.WRITE );
+			umodel.add ( model );
+			umodel.leaveCriticalSection ();
+			
+			chunksCount.getAndIncrement ();
+		});
+		loader.process ( "target/test-classes/dbpedia_berlin.rdf", null, getLangOrFormat (  "RDFXML"  ).getRight ());
+		
+		assertTrue ( "Byte budget not honoured!", chunksCount.get () > 2 );
+		SparqlBasedTester tester = new SparqlBasedTester ( umodel, NamespaceUtils.asSPARQLProlog () );
+		tester.ask ( "Berlin's label not found", "ASK {dbr:Berlin rdfs:label 'Berlin'@en }" );
+	}
+	
+	@Test
+	public void testAdaptiveBatchSize () throws Exception
+	{
+		AtomicInteger chunksCount = new AtomicInteger ( 0 );
+		
+		RDFStreamLoader<Consumer<Model>> loader = new RDFStreamLoader<> ();
+		ModelBatchCollector collector = loader.getBatchCollector ();
+		collector.setMaxBatchSize ( 100 );
+		
+		AdaptiveBatchSizeController controller = new AdaptiveBatchSizeController ( collector, 10, 1000 );
+		controller.setWindowSize ( 2 );
+		loader.setBatchSizeController ( controller );
+		
+		loader.setBatchJob ( model -> chunksCount.getAndIncrement () );
+		loader.process ( "target/test-classes/dbpedia_berlin.rdf", null, getLangOrFormat (  "RDFXML"  ).getRight ());
+		
+		assertTrue ( "Chunks count < 2", chunksCount.get () > 2 );
+		
+		long newSize = collector.getMaxBatchSize ();
+		assertTrue ( "Batch size wasn't adapted!", newSize != 100 );
+		assertTrue ( "Batch size out of bounds!", newSize >= 10 && newSize <= 1000 );
+		assertTrue ( "No best batch size!", controller.getBestBatchSize () > 0 );
+		
+		// The byte budget would make the size changes useless
+		collector.setMaxBatchBytes ( 100 * 1024 );
+		try {
+			new AdaptiveBatchSizeController ( collector, 10, 1000 );
+			fail ( "Adaptive batch size accepted with a byte budget!" );
+		}
+		catch ( IllegalArgumentException ex ) {
+			// Expected
+		}
+	}
+	
+	@Test
+	public void testDirectory () throws Exception
+	{
+		Model umodel = ModelFactory.createDefaultModel ();
+		
+		RDFStreamLoader<Consumer<Model>> loader = new RDFStreamLoader<> ();
+		loader.setParserThreads ( 2 );
+		loader.getBatchCollector ().setMaxBatchSize ( 1000 );
+		loader.setBatchJob ( model -> 
+		{
+			umodel.enterCriticalSection ( Lock.WRITE );
+			umodel.add ( model );
+			umodel.leaveCriticalSection ();
+		});
+		loader.process ( 
+			Path.of ( "target/test-classes" ), false, FileSystems.getDefault ().getPathMatcher ( "glob:*.{ttl,rdf}" ) 
+		);
+		
+		SparqlBasedTester tester = new SparqlBasedTester ( umodel, NamespaceUtils.asSPARQLProlog () );
+		tester.ask ( "No :alice knows!", "ASK {ex:alice foaf:knows ex:bob, ex:charlie, ex:snoopy}" );
+		tester.ask ( "Berlin's label not found", "ASK {dbr:Berlin rdfs:label 'Berlin'@en }" );
+	}
+	
+	@Test
+	public void testCompressedInput () throws Exception
+	{
+		Path ntPath = Path.of ( "target/test-classes/foaf_example.nt" );
+		byte[] ntBytes = Files.readAllBytes ( ntPath );
+		
+		Path gzPath = Path.of ( "target/foaf_example.nt.gz" );
+		try ( OutputStream out = new GZIPOutputStream ( Files.newOutputStream ( gzPath ) ) ) {
+			out.write ( ntBytes );
+		}
+		// No compression extension, it must be detected from the contents
+		Path gzNoExtPath = Path.of ( "target/foaf_example_gz.nt" );
+		Files.copy ( gzPath, gzNoExtPath, StandardCopyOption.REPLACE_EXISTING );
+		
+		Path xzPath = Path.of ( "target/foaf_example.nt.xz" );
+		try ( OutputStream out = new CompressorStreamFactory ().createCompressorOutputStream ( 
+			CompressorStreamFactory.XZ, Files.newOutputStream ( xzPath ) ) 
+		) {
+			out.write ( ntBytes );
+		}
+		
+		// Tiny blocks, to have many of them
+		Path bgzfPath = Path.of ( "target/foaf_example_bgzf.nt.gz" );
+		writeBgzf ( ntBytes, bgzfPath, 100 );
+		assertTrue ( "BGZF file not recognised!", ParallelBgzfInputStream.isBgzf ( bgzfPath ) );
+		assertFalse ( "Plain gzip file recognised as BGZF!", ParallelBgzfInputStream.isBgzf ( gzPath ) );
+		
+		for ( Path compressedPath: new Path[] { gzPath, gzNoExtPath, xzPath, bgzfPath } )
+		{
+			Model umodel = ModelFactory.createDefaultModel ();
+			
+			RDFStreamLoader<Consumer<Model>> loader = new RDFStreamLoader<> ();
+			loader.getBatchCollector ().setMaxBatchSize ( 5 );
+			loader.setBatchJob ( model -> 
+			{
+				umodel.enterCriticalSection ( Lock.WRITE );
+				umodel.add ( model );
+				umodel.leaveCriticalSection ();
+			});
+			loader.process ( compressedPath.toFile () );
+			
+			assertEquals ( "Wrong no. of loaded triples from " + compressedPath + "!", 18, umodel.size () );
+			SparqlBasedTester tester = new SparqlBasedTester ( umodel, NamespaceUtils.asSPARQLProlog () );
+			tester.ask ( "No :alice knows!", "ASK {ex:alice foaf:knows ex:bob, ex:charlie, ex:snoopy}" );
+		}
+		
+		// The parallel parsing must recognise the contents too, and not split the compressed bytes
+		assertTrue ( "Compression not detected from the contents!", JenaIoUtils.isCompressed ( gzNoExtPath ) );
+		assertFalse ( "Plain file detected as compressed!", JenaIoUtils.isCompressed ( ntPath ) );
+		AtomicLong parallelTriples = new AtomicLong ( 0 );
+		RDFStreamLoader<Consumer<Model>> loader = new RDFStreamLoader<> ();
+		loader.getBatchCollector ().setMaxBatchSize ( 5 );
+		loader.setBatchJob ( model -> parallelTriples.addAndGet ( model.size () ) );
+		loader.processParallel ( gzNoExtPath.toString () );
+		assertEquals ( "Wrong no. of triples from parallel parsing of compressed content!", 18, parallelTriples.get () );
+	}
+	
+	/**
+	 * With a slow consumer, the read-ahead queue is full when the source ends, the EOF and the errors must 
+	 * reach the consumer anyway.
+	 */
+	@Test ( timeout = 30000 )
+	public void testReadAheadSlowConsumer () throws Exception
+	{
+		byte[] data = new byte [ 1000 ];
+		ThreadLocalRandom.current ().nextBytes ( data );
+		
+		try ( var in = new ReadAheadInputStream ( new ByteArrayInputStream ( data ), 4, 2 ) )
+		{
+			// Let the reader fill up the queue
+			Thread.sleep ( 500 );
+			assertArrayEquals ( "Wrong read-ahead data!", data, in.readAllBytes () );
+		}
+		
+		InputStream failingSource = new SequenceInputStream ( 
+			new ByteArrayInputStream ( data ), 
+			new InputStream () {
+				@Override
+				public int read () throws IOException {
+					throw new IOException ( "Test error" );
+				}
+			}
+		);
+		try ( var in = new ReadAheadInputStream ( failingSource, 4, 2 ) )
+		{
+			Thread.sleep ( 500 );
+			in.readAllBytes ();
+			fail ( "Read-ahead source error not reported!" );
+		}
+		catch ( IOException ex ) {
+			assertEquals ( "Wrong read-ahead source error!", "Test error", ex.getMessage () );
+		}
+	}
+
+	/**
+	 * As above, errors from a truncated file must reach a slow consumer.
+	 */
+	@Test ( timeout = 30000 )
+	public void testBgzfSlowConsumer () throws Exception
+	{
+		byte[] ntBytes = Files.readAllBytes ( Path.of ( "target/test-classes/foaf_example.nt" ) );
+		Path bgzfPath = Path.of ( "target/foaf_example_truncated_bgzf.nt.gz" );
+		writeBgzf ( ntBytes, bgzfPath, 10 );
+		byte[] bgzfBytes = Files.readAllBytes ( bgzfPath );
+		Files.write ( bgzfPath, Arrays.copyOf ( bgzfBytes, bgzfBytes.length - 5 ) );
+		
+		// One block per segment, a queue of 2 segments
+		try ( var in = new ParallelBgzfInputStream ( bgzfPath, 1, 1 ) )
+		{
+			Thread.sleep ( 500 );
+			in.readAllBytes ();
+			fail ( "Truncated BGZF file not reported!" );
+		}
+		catch ( EOFException ex ) {
+			// Expected
+		}
+	}
+	
+	@Test
+	public void testTDBGroupCommit () throws Exception
+	{
+		Dataset dataSet = TDBFactory.createDataset ();
+		try
+		{
+			TDBLoadingHandler handler = new TDBLoadingHandler ( dataSet ); 
+			AtomicInteger chunksCount = new AtomicInteger ( 0 );
+
+			try ( TDBGroupCommitWriter<Model> writer = handler.groupCommitWriter () )
+			{
+				writer.setMaxCommitTriples ( 200 );
+				
+				RDFStreamLoader<Consumer<Model>> loader = new RDFStreamLoader<> ();
+				loader.getBatchCollector ().setMaxBatchSize ( 50 );
+				loader.setBatchJob ( writer.andThen ( m -> chunksCount.getAndIncrement () ) );
+				loader.process ( "target/test-classes/dbpedia_berlin.rdf", null, getLangOrFormat ( "RDFXML" ).getRight () );
+				
+				writer.flush ();
+				
+				assertEquals ( "Wrong no. of committed batches!", chunksCount.get (), writer.getCommittedBatches () );
+				assertTrue ( "Batches not grouped!", writer.getCommits () < chunksCount.get () );
+			}
+			
+			// With a checkpoint, the batches are recorded after their commit, and the loader flushes the writer
+			Path checkpointPath = Path.of ( "target/group-commit-checkpoint-test.properties" );
+			Files.deleteIfExists ( checkpointPath );
+			try ( TDBGroupCommitWriter<Model> writer = handler.groupCommitWriter () )
+			{
+				RDFStreamLoader<Consumer<Model>> loader = new RDFStreamLoader<> ();
+				loader.getBatchCollector ().setMaxBatchSize ( 5 );
+				loader.setBatchJob ( writer );
+				RDFLoadCheckpoint checkpoint = new RDFLoadCheckpoint ( checkpointPath );
+				loader.setCheckpoint ( checkpoint );
+				loader.process ( "target/test-classes/foaf_example.nt" );
+				
+				assertEquals ( "Batches not committed when the loader returns!", 4, writer.getCommittedBatches () );
+				assertEquals ( "Wrong checkpoint triples with group commits!", 18, checkpoint.getCommittedTriples () );
+			}
+			
+			dataSet.begin ( ReadWrite.READ );
+			SparqlBasedTester tester = new SparqlBasedTester ( dataSet.getDefaultModel (), NamespaceUtils.asSPARQLProlog () );
+			tester.ask ( "Berlin's label not found", "ASK {dbr:Berlin rdfs:label 'Berlin'@en }" );
+			dataSet.end ();
+		}
+		finally {
+			dataSet.close ();
+		}
+	}
+	
+	@Test
+	public void testTDB2BulkLoading () throws Exception
+	{
+		Dataset dataSet = TDB2Factory.createDataset ();
+		try
+		{
+			try ( TDB2BulkLoadingHandler handler = new TDB2BulkLoadingHandler ( dataSet ) )
+			{
+				RDFStreamLoader<Consumer<Model>> loader = new RDFStreamLoader<> ();
+				loader.getBatchCollector ().setMaxBatchSize ( 100 );
+				loader.setBatchJob ( handler );
+				loader.process ( "target/test-classes/dbpedia_berlin.rdf", null, getLangOrFormat ( "RDFXML" ).getRight () );
+				
+				assertTrue ( "Bulk loader not used!", handler.isBulkLoading () );
+			}
+			
+			// Now it's not empty and it must switch to transactions
+			try ( TDB2BulkLoadingHandler handler = new TDB2BulkLoadingHandler ( dataSet ) )
+			{
+				RDFStreamLoader<Consumer<Model>> loader = new RDFStreamLoader<> ();
+				loader.setBatchJob ( handler );
+				loader.process ( "target/test-classes/foaf_example.nt" );
+				
+				assertFalse ( "Bulk loader used with a non-empty dataset!", handler.isBulkLoading () );
+			}
+			
+			Txn.executeRead ( dataSet, () -> 
+			{
+				SparqlBasedTester tester = new SparqlBasedTester ( dataSet.getDefaultModel (), NamespaceUtils.asSPARQLProlog () );
+				tester.ask ( "Berlin's label not found", "ASK {dbr:Berlin rdfs:label 'Berlin'@en }" );
+				tester.ask ( "No :alice knows!", "ASK {ex:alice foaf:knows ex:bob, ex:charlie, ex:snoopy}" );
+			});
+		}
+		finally {
+			dataSet.close ();
+		}
+	}
+	
+	@Test
+	public void testCheckpoint () throws Exception
+	{
+		Path ntPath = Path.of ( "target/test-classes/foaf_example.nt" );
+		Path checkpointPath = Path.of ( "target/checkpoint-test.properties" );
+		Files.deleteIfExists ( checkpointPath );
+		
+		AtomicLong loadedTriples = new AtomicLong ( 0 );
+		RDFStreamLoader<Consumer<Model>> loader = new RDFStreamLoader<> ();
+		loader.getBatchCollector ().setMaxBatchSize ( 3 );
+		loader.setBatchJob ( model -> loadedTriples.addAndGet ( model.size () ) );
+
+		// First loading, everything is loaded and recorded
+		RDFLoadCheckpoint checkpoint = new RDFLoadCheckpoint ( checkpointPath );
+		loader.setCheckpoint ( checkpoint );
+		loader.process ( ntPath.toFile () );
+		
+		assertEquals ( "Wrong no. of loaded triples!", 18, loadedTriples.get () );
+		assertEquals ( "Wrong checkpoint triples!", 18, checkpoint.getCommittedTriples () );
+		assertEquals ( "Wrong checkpoint offset!", Files.size ( ntPath ), checkpoint.getCommittedOffset () );
+		
+		// Resuming a complete loading, nothing to do 
+		loadedTriples.set ( 0 );
+		loader.setCheckpoint ( new RDFLoadCheckpoint ( checkpointPath ) );
+		loader.process ( ntPath.toFile () );
+		assertEquals ( "Triples reloaded from a completed checkpoint!", 0, loadedTriples.get () );
+		
+		// Without the offset, the loader has to scan the lines
+		Files.writeString ( checkpointPath, "committedTriples = 10\n" );
+		loadedTriples.set ( 0 );
+		checkpoint = new RDFLoadCheckpoint ( checkpointPath );
+		loader.setCheckpoint ( checkpoint );
+		loader.process ( ntPath.toFile () );
+		assertEquals ( "Wrong no. of resumed triples!", 8, loadedTriples.get () );
+		assertEquals ( "Wrong checkpoint triples after resuming!", 18, checkpoint.getCommittedTriples () );
+
+		// Non line-based, the loaded triples are skipped
+		Path ttlPath = Path.of ( "target/test-classes/foaf_example.ttl" );
+		loadedTriples.set ( 0 );
+		loader.setCheckpoint ( null );
+		loader.process ( ttlPath.toFile () );
+		long ttlTriples = loadedTriples.get ();
+		
+		Files.writeString ( checkpointPath, "committedTriples = 5\n" );
+		loadedTriples.set ( 0 );
+		loader.setCheckpoint ( new RDFLoadCheckpoint ( checkpointPath ) );
+		loader.process ( ttlPath.toFile () );
+		assertEquals ( "Wrong no. of resumed Turtle triples!", ttlTriples - 5, loadedTriples.get () );
+		
+		// Jobs that complete their batches only when closed can't be used with a checkpoint
+		Dataset tdb2DataSet = TDB2Factory.createDataset ();
+		try
+		{
+			loader.setBatchJob ( new TDB2BulkLoadingHandler ( tdb2DataSet ) );
+			loader.process ( ttlPath.toFile () );
+			fail ( "Deferred batch job accepted with a checkpoint!" );
+		}
+		catch ( IllegalArgumentException ex ) {
+			// Expected
+		}
+		finally {
+			tdb2DataSet.close ();
+		}
+	}
+	
+	@Test
+	public void testMetrics () throws Exception
+	{
+		RDFStreamLoader<Consumer<Model>> loader = new RDFStreamLoader<> ();
+		loader.getBatchCollector ().setMaxBatchSize ( 3 );
+		loader.setBatchJob ( model -> {} );
+		
+		RDFLoaderMetrics metrics = loader.getMetrics ();
+		SimpleMeterRegistry registry = new SimpleMeterRegistry ();
+		new RDFLoaderMeterBinder ( metrics ).bindTo ( registry );
+		metrics.registerMBean ( "testMetrics" );
+		try
+		{
+			Path ntPath = Path.of ( "target/test-classes/foaf_example.nt" );
+			loader.process ( ntPath.toFile () );
+			
+			assertFalse ( "Loading not finished!", metrics.isLoading () );
+			assertEquals ( "Wrong parsed triples!", 18, metrics.getParsedTriples () );
+			assertEquals ( "Wrong bytes read!", Files.size ( ntPath ), metrics.getBytesRead () );
+			assertEquals ( "Wrong batches created!", 6, metrics.getBatchesCreated () );
+			assertEquals ( "Wrong batches completed!", 6, metrics.getBatchesCompleted () );
+			assertEquals ( "Wrong batches in flight!", 0, metrics.getBatchesInFlight () );
+			assertEquals ( "Wrong latency count!", 6, metrics.getJobLatency ().getCount () );
+			
+			MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer ();
+			assertEquals ( 
+				"Wrong JMX parsed triples!", 18L, mbeanServer.getAttribute ( metrics.getMBeanName (), "ParsedTriples" ) 
+			);
+			
+			assertEquals ( 
+				"Wrong Micrometer parsed triples!", 
+				18d, registry.get ( "rdfloader.triples.parsed" ).functionCounter ().count (), 0d 
+			);
+			
+			// A new loading restarts the per-loading values, but not the totals
+			loader.process ( ntPath.toFile () );
+			assertEquals ( "Wrong parsed triples in the second loading!", 18, metrics.getParsedTriples () );
+			assertEquals ( "Wrong batches created in the second loading!", 6, metrics.getBatchesCreated () );
+			assertEquals ( "Wrong total parsed triples!", 36, metrics.getTotalParsedTriples () );
+			assertEquals ( 
+				"Wrong JMX total parsed triples!", 
+				36L, mbeanServer.getAttribute ( metrics.getMBeanName (), "TotalParsedTriples" ) 
+			);
+			assertEquals ( 
+				"Micrometer counter not monotonic!", 
+				36d, registry.get ( "rdfloader.triples.parsed" ).functionCounter ().count (), 0d 
+			);
+		}
+		finally {
+			metrics.unregisterMBean ();
+		}
+	}
+	
+	@Test
+	public void testJFREvents () throws Exception
+	{
+		Path jfrPath = Path.of ( "target/rdf-loader-test.jfr" );
+		Model umodel = ModelFactory.createDefaultModel ();
+		
+		try ( Recording recording = new Recording () )
+		{
+			recording.enable ( RDFBatchCreationEvent.class );
+			recording.enable ( RDFBatchJobEvent.class );
+			recording.enable ( SparqlQueryEvent.class );
+			recording.start ();
+			
+			RDFStreamLoader<Consumer<Model>> loader = new RDFStreamLoader<> ();
+			loader.getBatchCollector ().setMaxBatchSize ( 3 );
+			loader.setBatchJob ( model -> 
+			{
+				umodel.enterCriticalSection ( Lock.WRITE );
+				umodel.add ( model );
+				umodel.leaveCriticalSection ();
+			});
+			loader.process ( "target/test-classes/foaf_example.nt" );
+			
+			ModelEndPointHelper sparqlHelper = new ModelEndPointHelper ( umodel );
+			long rows = sparqlHelper.processSelect ( 
+				NamespaceUtils.asSPARQLProlog () + "SELECT ?p { ?p a foaf:Person }", row -> {} 
+			);
+			
+			recording.stop ();
+			recording.dump ( jfrPath );
+			
+			List<RecordedEvent> events = RecordingFile.readAllEvents ( jfrPath );
+			
+			Function<Class<?>, Stream<RecordedEvent>> eventsOf = 
+				eventClass -> events.stream ().filter ( e -> e.getEventType ().getName ().equals ( 
+					eventClass.getAnnotation ( Name.class ).value () 
+				));
+			
+			assertEquals ( "Wrong no. of batch creation events!", 6, eventsOf.apply ( RDFBatchCreationEvent.class ).count () );
+			assertEquals ( 
+				"Wrong triples in batch job events!", 
+				18, 
+				eventsOf.apply ( RDFBatchJobEvent.class ).mapToLong ( e -> e.getLong ( "triples" ) ).sum () 
+			);
+			
+			RecordedEvent queryEvent = eventsOf.apply ( SparqlQueryEvent.class ).findFirst ().orElseThrow ();
+			assertEquals ( "Wrong SPARQL operation!", "processSelect", queryEvent.getString ( "operation" ) );
+			assertEquals ( "Wrong SPARQL results!", rows, queryEvent.getLong ( "results" ) );
+			assertTrue ( "SPARQL query not from the cache!", queryEvent.getBoolean ( "cached" ) );
+		}
+	}
+	
+	@Test
+	public void testDuplicateFilter () throws Exception
+	{
+		// The same data twice
+		Path ntPath = Path.of ( "target/test-classes/foaf_example.nt" );
+		Path dupPath = Path.of ( "target/duplicates-test.nt" );
+		String nt = Files.readString ( ntPath );
+		Files.writeString ( dupPath, nt + "\n" + nt );
+		
+		AtomicLong loadedTriples = new AtomicLong ( 0 );
+		RDFStreamLoader<Consumer<Model>> loader = new RDFStreamLoader<> ();
+		loader.getBatchCollector ().setMaxBatchSize ( 4 );
+		loader.setBatchJob ( model -> loadedTriples.addAndGet ( model.size () ) );
+		
+		for ( DuplicateTripleFilter filter: List.of ( 
+			DuplicateTripleFilter.exact ( 1 << 16 ), DuplicateTripleFilter.bloom ( 1 << 16, 1000 ) 
+		))
+		{
+			loadedTriples.set ( 0 );
+			loader.setDuplicateFilter ( filter );
+			loader.process ( dupPath.toFile () );
+			
+			log.info ( "Duplicate filter test, filter: {}", filter );
+			assertEquals ( "Wrong no. of loaded triples!", 18, loadedTriples.get () );
+			assertEquals ( "Wrong no. of checked triples!", 36, filter.getChecked () );
+			assertEquals ( "Wrong no. of dropped triples!", 18, filter.getDropped () );
+		}
+		
+		// The filter spans multiple loadings
+		loadedTriples.set ( 0 );
+		loader.process ( ntPath.toFile () );
+		assertEquals ( "Duplicates across loadings not dropped!", 0, loadedTriples.get () );
+		
+		// Dropped statements are still counted by the checkpoint
+		Path checkpointPath = Path.of ( "target/duplicates-checkpoint-test.properties" );
+		Files.deleteIfExists ( checkpointPath );
+		RDFLoadCheckpoint checkpoint = new RDFLoadCheckpoint ( checkpointPath );
+		loader.setCheckpoint ( checkpoint );
+		loader.setDuplicateFilter ( DuplicateTripleFilter.exact ( 1 << 16 ) );
+		loadedTriples.set ( 0 );
+		loader.process ( dupPath.toFile () );
+		assertEquals ( "Wrong no. of loaded triples with checkpoint!", 18, loadedTriples.get () );
+		assertEquals ( "Wrong checkpoint triples!", 36, checkpoint.getCommittedTriples () );
+		assertEquals ( "Wrong checkpoint offset!", Files.size ( dupPath ), checkpoint.getCommittedOffset () );
+	}
+	
+	@Test
+	public void testTriplePipeline () throws Exception
+	{
+		Node ex = NodeFactory.createURI ( "http://example.org/" );
+		Node knows = NodeFactory.createURI ( "http://xmlns.com/foaf/0.1/knows" );
+		Node friendOf = NodeFactory.createURI ( ex.getURI () + "friendOf" );
+		Node note = NodeFactory.createURI ( ex.getURI () + "note" );
+		Node agent = NodeFactory.createURI ( ex.getURI () + "Agent" );
+		
+		TriplePipeline pipeline = TriplePipeline.create ()
+			.filter ( t -> !note.equals ( t.getPredicate () ) )
+			.map ( t -> knows.equals ( t.getPredicate () ) 
+				? Triple.create ( t.getSubject (), friendOf, t.getObject () ) 
+				: t 
+			)
+			.flatMap ( t -> RDF.type.asNode ().equals ( t.getPredicate () ) 
+				? List.of ( t, Triple.create ( t.getSubject (), t.getPredicate (), agent ) )
+				: List.of ( t ) 
+			);
+		
+		Path ntPath = Path.of ( "target/test-classes/foaf_example.nt" );
+		for ( int pipelineThreads: new int[] { 0, 2 } )
+		{
+			Model loadedModel = ModelFactory.createDefaultModel ();
+			RDFStreamLoader<Consumer<Model>> loader = new RDFStreamLoader<> ();
+			loader.getBatchCollector ().setMaxBatchSize ( 3 );
+			loader.setBatchJob ( model -> { 
+				synchronized ( loadedModel ) { loadedModel.add ( model ); } 
+			});
+			loader.setTriplePipeline ( pipeline );
+			loader.setPipelineThreads ( pipelineThreads );
+			
+			// Checkpoints count the input statements, not the transformed ones
+			Path checkpointPath = Path.of ( "target/pipeline-checkpoint-test.properties" );
+			Files.deleteIfExists ( checkpointPath );
+			RDFLoadCheckpoint checkpoint = new RDFLoadCheckpoint ( checkpointPath );
+			loader.setCheckpoint ( checkpoint );
+
+			loader.process ( ntPath.toFile () );
+			
+			assertEquals ( "Wrong no. of transformed triples!", 19, loadedModel.size () );
+			assertEquals ( "Wrong checkpoint triples!", 18, checkpoint.getCommittedTriples () );
+			
+			SparqlBasedTester tester = new SparqlBasedTester ( loadedModel, NamespaceUtils.asSPARQLProlog () );
+			tester.ask ( "Filtered triple still there!", "ASK { FILTER NOT EXISTS { ?s ex:note ?o } }" );
+			tester.ask ( "Mapped triple still there!", "ASK { FILTER NOT EXISTS { ?s foaf:knows ?o } }" );
+			tester.ask ( "Mapped triple not there!", "ASK { ex:alice ex:friendOf ex:bob, ex:charlie, ex:snoopy }" );
+			tester.ask ( "Flat-mapped triples not there!", "ASK { ex:alice a foaf:Person, ex:Agent }" );
+		}
+	}
+	
+	@Test
+	public void testVirtualThreadJobs () throws Exception
+	{
+		AtomicInteger runningJobs = new AtomicInteger ( 0 );
+		AtomicInteger maxRunningJobs = new AtomicInteger ( 0 );
+		AtomicLong loadedTriples = new AtomicLong ( 0 );
+		
+		RDFStreamLoader<Consumer<Model>> loader = new RDFStreamLoader<> ();
+		loader.getBatchCollector ().setMaxBatchSize ( 1 );
+		loader.setVirtualThreadJobs ( 4 );
+		loader.setBatchJob ( model -> 
+		{
+			maxRunningJobs.accumulateAndGet ( runningJobs.incrementAndGet (), Math::max );
+			try {
+				Thread.sleep ( 50 );
+			}
+			catch ( InterruptedException ex ) {
+				throw new RuntimeException ( ex );
+			}
+			loadedTriples.addAndGet ( model.size () );
+			runningJobs.decrementAndGet ();
+		});
+		
+		loader.process ( "target/test-classes/foaf_example.nt" );
+		
+		assertEquals ( "Wrong no. of loaded triples!", 18, loadedTriples.get () );
+		assertTrue ( "Concurrency limit not honoured!", maxRunningJobs.get () <= 4 );
+		assertTrue ( "Jobs didn't run concurrently!", maxRunningJobs.get () > 1 );
+		
+		// Errors are propagated
+		loader.setBatchJob ( model -> { throw new IllegalStateException ( "Test error" ); } );
+		try {
+			loader.process ( "target/test-classes/foaf_example.nt" );
+			fail ( "Batch job error not propagated!" );
+		}
+		catch ( RuntimeException ex ) {
+			assertTrue ( "Wrong batch job error!", ExceptionUtils.getRootCause ( ex ).getMessage ().contains ( "Test error" ) );
+		}
+	}
+	
+	@Test
+	public void testOrderedBatchJob () throws Exception
+	{
+		Path ntPath = Path.of ( "target/test-classes/foaf_example.nt" );
+		List<String> expectedPredicates = Files.readAllLines ( ntPath ).stream ()
+			.filter ( line -> !line.isBlank () )
+			.map ( line -> line.split ( " " ) [ 1 ] )
+			.toList ();
+
+		for ( int virtualThreadJobs: new int[] { 0, 8 } )
+		{
+			List<String> outPredicates = new ArrayList<> ();
+			OrderedBatchJob<TripleBatch, List<String>> orderedJob = new OrderedBatchJob<> ( 
+				batch -> 
+				{
+					// Random delays, so that the jobs complete in a different order than the input
+					try {
+						Thread.sleep ( ThreadLocalRandom.current ().nextInt ( 30 ) );
+					}
+					catch ( InterruptedException ex ) {
+						throw new RuntimeException ( ex );
+					}
+					List<String> result = new ArrayList<> ();
+					batch.forEach ( t -> result.add ( "<" + t.getPredicate ().getURI () + ">" ) );
+					return result;
+				},
+				outPredicates::addAll,
+				3
+			);
+			
+			RDFTripleStreamLoader<OrderedBatchJob<TripleBatch, List<String>>> loader = new RDFTripleStreamLoader<> ( orderedJob );
+			loader.getBatchCollector ().setMaxBatchSize ( 2 );
+			loader.setVirtualThreadJobs ( virtualThreadJobs );
+			loader.process ( ntPath.toFile () );
+			
+			assertEquals ( "Wrong output order!", expectedPredicates, outPredicates );
+			assertEquals ( "Wrong no. of emitted results!", 9, orderedJob.getEmittedResults () );
+			assertTrue ( "Reorder buffer overflow!", orderedJob.getMaxBufferedResults () <= 3 );
+			
+			// Reusing the job for a new loading
+			outPredicates.clear ();
+			loader.process ( ntPath.toFile () );
+			assertEquals ( "Wrong output order in the second loading!", expectedPredicates, outPredicates );
+		}
+	}
+	
+	@Test
+	public void testNodeDictionary () throws Exception
+	{
+		NodeDictionary dictionary = new NodeDictionary ();
+		List<Triple> loadedTriples = Collections.synchronizedList ( new ArrayList<> () );
+		
+		RDFTripleStreamLoader<Consumer<TripleBatch>> loader = new RDFTripleStreamLoader<> ();
+		loader.getBatchCollector ().setMaxBatchSize ( 3 );
+		loader.setNodeDictionary ( dictionary );
+		loader.setBatchJob ( batch -> batch.forEach ( loadedTriples::add ) );
+		
+		// Two loadings, so that the nodes come from different parsers
+		loader.process ( "target/test-classes/foaf_example.nt" );
+		loader.process ( "target/test-classes/foaf_example.ttl" );
+		
+		Node knows = NodeFactory.createURI ( "http://xmlns.com/foaf/0.1/knows" );
+		Node internedKnows = dictionary.intern ( knows );
+		assertNotSame ( "The dictionary didn't return its own instance!", knows, internedKnows );
+		
+		List<Node> knowsNodes = loadedTriples.stream ()
+			.map ( Triple::getPredicate )
+			.filter ( knows::equals )
+			.toList ();
+		assertTrue ( "No foaf:knows loaded!", knowsNodes.size () > 4 );
+		for ( Node node: knowsNodes )
+			assertSame ( "Predicate not interned!", internedKnows, node );
+		
+		assertTrue ( "No dictionary hits!", dictionary.getHits () > 0 );
+		long id = dictionary.getId ( knows );
+		assertTrue ( "No id for foaf:knows!", id >= 0 );
+		assertSame ( "Wrong node from id!", internedKnows, dictionary.getNode ( id ) );
+		assertEquals ( "Blank nodes shouldn't be interned!", -1, dictionary.getId ( NodeFactory.createBlankNode () ) );
+		
+		// Bounded dictionary
+		NodeDictionary smallDictionary = new NodeDictionary ( 2 );
+		for ( int i = 0; i < 5; i++ ) smallDictionary.intern ( NodeFactory.createURI ( "http://example.org/" + i ) );
+		assertEquals ( "Dictionary capacity not honoured!", 2, smallDictionary.size () );
+		assertEquals ( "Wrong no. of rejected nodes!", 3, smallDictionary.getRejected () );
+		assertEquals ( "Rejected node has an id!", -1, smallDictionary.getId ( NodeFactory.createURI ( "http://example.org/4" ) ) );
+	}
+	
+	@Test
+	public void testOffHeapBatches () throws Exception
+	{
+		OffHeapBufferPool bufferPool = new OffHeapBufferPool ( 256, 4 );
+		NodeDictionary dictionary = new NodeDictionary ();
+		OffHeapTripleBatchCollector collector = new OffHeapTripleBatchCollector ( 5, bufferPool, dictionary );
+		
+		Model loadedModel = ModelFactory.createDefaultModel ();
+		List<OffHeapTripleBatch> batches = Collections.synchronizedList ( new ArrayList<> () );
+		RDFOffHeapStreamLoader<Consumer<OffHeapTripleBatch>> loader = new RDFOffHeapStreamLoader<> ( batch -> 
+		{
+			batches.add ( batch );
+			assertTrue ( "Wrong off-heap batch size!", batch.size () <= 5 );
+			synchronized ( loadedModel ) { batch.addTo ( loadedModel.getGraph () ); }
+		}, collector );
+		
+		String ntPath = "target/test-classes/foaf_example.nt";
+		loader.process ( ntPath );
+		
+		Model expectedModel = RDFDataMgr.loadModel ( ntPath );
+		assertTrue ( "Off-heap batches don't reproduce the input!", expectedModel.isIsomorphicWith ( loadedModel ) );
+		assertEquals ( "Wrong no. of batches!", 4, batches.size () );
+		for ( OffHeapTripleBatch batch: batches )
+			assertTrue ( "Off-heap batch not released!", batch.isClosed () );
+		
+		assertTrue ( "No dictionary encoding!", dictionary.size () > 0 );
+		assertTrue ( "Off-heap buffers not returned to the pool!", bufferPool.getPooledBuffers () > 0 );
+		log.info ( "Off-heap batches test, {}", bufferPool );
+		
+		// A triple that fails half-way must not leave garbage in the buffers
+		Node alice = NodeFactory.createURI ( "http://example.org/alice" );
+		Node name = NodeFactory.createURI ( "http://xmlns.com/foaf/0.1/name" );
+		Triple before = Triple.create ( alice, name, NodeFactory.createLiteralString ( "Alice" ) );
+		Triple after = Triple.create ( alice, name, NodeFactory.createLiteralString ( "Alicia" ) );
+		try ( OffHeapTripleBatch batch = new OffHeapTripleBatch ( bufferPool, null ) )
+		{
+			batch.add ( before );
+			try {
+				batch.add ( Triple.create ( alice, name, NodeFactory.createTripleNode ( before ) ) );
+				fail ( "Unsupported node encoded!" );
+			}
+			catch ( IllegalArgumentException ex ) {
+				// Expected
+			}
+			batch.add ( after );
+			
+			List<Triple> decoded = new ArrayList<> ();
+			batch.forEach ( decoded::add );
+			assertEquals ( "Wrong off-heap triples after a failed encoding!", List.of ( before, after ), decoded );
+		}
+	}
+
+	@Test
+	public void testExternalTripleSorter () throws Exception
+	{
+		String ntPath = "target/test-classes/foaf_example.nt";
+		Path tempDir = Files.createDirectories ( Path.of ( "target/external-sorter-test" ) );
+		Triple extraTriple = Triple.create (
+			NodeFactory.createURI ( "http://example.org/zed" ),
+			NodeFactory.createURI ( "http://xmlns.com/foaf/0.1/name" ),
+			NodeFactory.createLiteralString ( "Zed" )
+		);
+
+		List<Triple> sortedTriples = new ArrayList<> ();
+		List<Integer> batchSizes = new ArrayList<> ();
+		ExternalTripleSorter sorter = new ExternalTripleSorter ( batch ->
+		{
+			batchSizes.add ( batch.size () );
+			batch.forEach ( sortedTriples::add );
+		}, tempDir );
+		sorter.setRunSize ( 4 );
+		sorter.setOutputBatchSize ( 5 );
+
+		try ( sorter )
+		{
+			RDFTripleStreamLoader<Consumer<TripleBatch>> loader = new RDFTripleStreamLoader<> ( sorter );
+			loader.getBatchCollector ().setMaxBatchSize ( 3 );
+			loader.process ( ntPath );
+
+			// Plus a duplicate, which should be dropped
+			TripleBatch dupsBatch = new TripleBatch ();
+			dupsBatch.add ( extraTriple );
+			dupsBatch.add ( extraTriple );
+			sorter.accept ( dupsBatch );
+
+			assertTrue ( "Sorted triples sent before closing!", sortedTriples.isEmpty () );
+		}
+
+		assertEquals ( "Wrong no. of input triples!", 20, sorter.getInputTriples () );
+		assertEquals ( "Wrong no. of sorted runs!", 5, sorter.getRuns () );
+		assertEquals ( "Duplicates not removed!", 19, sorter.getOutputTriples () );
+		assertEquals ( "Wrong no. of output triples!", 19, sortedTriples.size () );
+		assertEquals ( "Wrong output batches!", List.of ( 5, 5, 5, 4 ), batchSizes );
+		for ( int i = 1; i < sortedTriples.size (); i++ )
+			assertTrue ( "Triples not sorted at #" + i + "!",
+				ExternalTripleSorter.TRIPLE_ORDER.compare ( sortedTriples.get ( i - 1 ), sortedTriples.get ( i ) ) < 0
+			);
+
+		Model sortedModel = ModelFactory.createDefaultModel ();
+		sortedTriples.forEach ( sortedModel.getGraph ()::add );
+		Model expectedModel = RDFDataMgr.loadModel ( ntPath );
+		expectedModel.getGraph ().add ( extraTriple );
+		assertTrue ( "Sorted triples don't reproduce the input!", expectedModel.isIsomorphicWith ( sortedModel ) );
+
+		try ( Stream<Path> runs = Files.list ( tempDir ) ) {
+			assertEquals ( "Sorted runs not deleted!", 0, runs.count () );
+		}
+
+		// And now with TDB
+		Dataset dataSet = TDB2Factory.createDataset ();
+		try
+		{
+			try ( ExternalTripleSorter tdbSorter = new TDBLoadingHandler ( dataSet ).sortingWriter ( tempDir ) )
+			{
+				tdbSorter.setRunSize ( 10 );
+				RDFTripleStreamLoader<Consumer<TripleBatch>> loader = new RDFTripleStreamLoader<> ( tdbSorter );
+				loader.process ( ntPath );
+			}
+
+			Txn.executeRead ( dataSet, () ->
+			{
+				assertEquals ( "Wrong no. of TDB triples!", 18, dataSet.getDefaultModel ().size () );
+				SparqlBasedTester tester = new SparqlBasedTester ( dataSet.getDefaultModel (), NamespaceUtils.asSPARQLProlog () );
+				tester.ask ( "No :alice knows!", "ASK {ex:alice foaf:knows ex:bob, ex:charlie, ex:snoopy}" );
+			});
+		}
+		finally {
+			dataSet.close ();
+		}
+	}
+	
+	/**
+	 * More runs than the max fan-in, they need intermediate merges.
+	 */
+	@Test
+	public void testExternalTripleSorterMultiPass () throws Exception
+	{
+		String ntPath = "target/test-classes/foaf_example.nt";
+		Path tempDir = Files.createDirectories ( Path.of ( "target/external-sorter-multipass-test" ) );
+
+		List<Triple> sortedTriples = new ArrayList<> ();
+		ExternalTripleSorter sorter = new ExternalTripleSorter ( batch -> batch.forEach ( sortedTriples::add ), tempDir );
+		sorter.setRunSize ( 2 );
+		sorter.setMaxFanIn ( 2 );
+
+		Model inputModel = RDFDataMgr.loadModel ( ntPath );
+		try ( sorter )
+		{
+			TripleBatch batch = new TripleBatch ();
+			inputModel.getGraph ().find ().forEachRemaining ( batch::add );
+			sorter.accept ( batch );
+		}
+
+		// 9 runs -> 5 -> 3 -> 2, then the final merge
+		assertEquals ( "Wrong no. of sorted runs!", 9, sorter.getRuns () );
+		assertEquals ( "Wrong no. of merge passes!", 3, sorter.getMergePasses () );
+		assertEquals ( "Wrong no. of output triples!", 18, sortedTriples.size () );
+		for ( int i = 1; i < sortedTriples.size (); i++ )
+			assertTrue ( "Triples not sorted at #" + i + "!",
+				ExternalTripleSorter.TRIPLE_ORDER.compare ( sortedTriples.get ( i - 1 ), sortedTriples.get ( i ) ) < 0
+			);
+
+		Model sortedModel = ModelFactory.createDefaultModel ();
+		sortedTriples.forEach ( sortedModel.getGraph ()::add );
+		assertTrue ( "Sorted triples don't reproduce the input!", inputModel.isIsomorphicWith ( sortedModel ) );
+
+		try ( Stream<Path> runs = Files.list ( tempDir ) ) {
+			assertEquals ( "Sorted runs not deleted!", 0, runs.count () );
+		}
+	}
+	
+	/**
+	 * Compares the inherited executor with virtual threads, using jobs that simulate I/O by sleeping.
+	 */
+	@Test @Ignore ( "Not a real test, used to compare the loader executors" )
+	public void benchmarkVirtualThreadJobs () throws Exception
+	{
+		// Make it a big enough input
+		Path ntPath = Path.of ( "target/virtual-threads-benchmark.nt" );
+		String nt = Files.readString ( Path.of ( "target/test-classes/foaf_example.nt" ) );
+		try ( var out = Files.newBufferedWriter ( ntPath ) ) {
+			for ( int i = 0; i < 500; i++ ) out.write ( nt.replace ( "http://example.org/", "http://example.org/" + i + "/" ) );
+		}
+		
+		for ( int virtualThreadJobs: new int[] { 0, 50, 500 } )
+		{
+			RDFStreamLoader<Consumer<Model>> loader = new RDFStreamLoader<> ();
+			loader.getBatchCollector ().setMaxBatchSize ( 10 );
+			loader.setVirtualThreadJobs ( virtualThreadJobs );
+			loader.setBatchJob ( model -> 
+			{
+				try {
+					Thread.sleep ( 20 );
+				}
+				catch ( InterruptedException ex ) {
+					throw new RuntimeException ( ex );
+				}
+			});
+			
+			long start = System.currentTimeMillis ();
+			loader.process ( ntPath.toFile () );
+			log.info ( 
+				"Virtual thread benchmark, virtual thread jobs: {}, time: {} ms", 
+				virtualThreadJobs, System.currentTimeMillis () - start 
+			);
+		}
+	}
+	
+	/**
+	 * Writes data as BGZF, ie, gzip members of blockSize bytes, each having the 'BC' extra field with its 
+	 * compressed size.
+	 */
+	private static void writeBgzf ( byte[] data, Path outPath, int blockSize ) throws IOException
+	{
+		try ( OutputStream out = Files.newOutputStream ( outPath ) )
+		{
+			for ( int off = 0; off < data.length; off += blockSize )
+			{
+				int len = Math.min ( blockSize, data.length - off );
+				
+				Deflater deflater = new Deflater ( Deflater.DEFAULT_COMPRESSION, true );
+				deflater.setInput ( data, off, len );
+				deflater.finish ();
+				byte[] cdata = new byte [ len * 2 + 64 ];
+				int clen = deflater.deflate ( cdata );
+				deflater.end ();
+				
+				CRC32 crc = new CRC32 ();
+				crc.update ( data, off, len );
+				
+				ByteBuffer block = ByteBuffer.allocate ( 18 + clen + 8 ).order ( ByteOrder.LITTLE_ENDIAN );
+				block.put ( new byte[] { 0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff } );
+				block.putShort ( (short) 6 ).put ( (byte) 'B' ).put ( (byte) 'C' ).putShort ( (short) 2 );
+				block.putShort ( (short) ( 18 + clen + 8 - 1 ) );
+				block.put ( cdata, 0, clen );
+				block.putInt ( (int) crc.getValue () ).putInt ( len );
+				out.write ( block.array () );
+			}
+		}
+	}
 }